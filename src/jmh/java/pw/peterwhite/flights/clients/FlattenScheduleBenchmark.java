@@ -0,0 +1,66 @@
+package pw.peterwhite.flights.clients;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pw.peterwhite.flights.dto.Schedule;
+import pw.peterwhite.flights.dto.Schedule.DayFlights;
+import pw.peterwhite.flights.helpers.BenchmarkFixtures;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of RyanairApiClient.flattenSchedule over a full month of the Schedules API, against flattening it with a
+ * LocalDate per day and LocalTime.parse per time as it used to. Run with the gc profiler for the bytes allocated per
+ * month (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlattenScheduleBenchmark {
+    @Param({"2", "8"})
+    public int flightsPerDay;
+
+    private Schedule schedule;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        schedule = BenchmarkFixtures.schedule(1, flightsPerDay, new Random(BenchmarkFixtures.SEED));
+    }
+
+    @Benchmark
+    public Timetable flattenSchedule() {
+        return RyanairApiClient.flattenSchedule("DUB", "SXF", BenchmarkFixtures.YEAR, schedule);
+    }
+
+    @Benchmark
+    public Timetable flattenScheduleWithLocalTimeParse() {
+        Timetable.Builder flights = new Timetable.Builder();
+        for (DayFlights flightsDay : schedule.getDays()) {
+            int dayStart = (int) TimeUnit.DAYS.toMinutes(LocalDate.of(BenchmarkFixtures.YEAR, schedule.getMonth(), flightsDay.getDay()).toEpochDay());
+            for (Schedule.FlightDetails details : flightsDay.getFlights()) {
+                flights.add("DUB",
+                        "SXF",
+                        dayStart + LocalTime.parse(details.getDepartureTime()).toSecondOfDay() / 60,
+                        dayStart + LocalTime.parse(details.getArrivalTime()).toSecondOfDay() / 60);
+            }
+        }
+        return flights.build();
+    }
+}
@@ -0,0 +1,102 @@
+package pw.peterwhite.flights.clients;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import pw.peterwhite.flights.config.FlightConfigProperties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a Schedules API call through each transport UpstreamRequestFactory builds, pooled keep-alive
+ * connections (Apache HttpClient) against the JDK HttpURLConnection, from 16 threads against a local stub server that
+ * answers after 1ms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class UpstreamRequestFactoryBenchmark {
+    private static final byte[] BODY = "{\"month\":1,\"days\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    // Connections of the pooled transport, 0 for HttpURLConnection
+    @Param({"16", "0"})
+    public int maxConnections;
+
+    private HttpServer server;
+    private URI stubApi;
+    private ClientHttpRequestFactory requestFactory;
+    private RestTemplate restTemplate;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", UpstreamRequestFactoryBenchmark::respond);
+        server.setExecutor(Executors.newFixedThreadPool(32));
+        server.start();
+        stubApi = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/timtbl/3/schedules/DUB/SXF/years/2030/months/1");
+
+        FlightConfigProperties flightConfigProperties = new FlightConfigProperties();
+        flightConfigProperties.setUpstreamMaxConnections(maxConnections);
+        flightConfigProperties.setUpstreamMaxConnectionsPerRoute(0);
+        flightConfigProperties.setUpstreamIdleConnectionTimeoutMs(30000L);
+        flightConfigProperties.setUpstreamConnectTimeoutMs(0L);
+        flightConfigProperties.setUpstreamReadTimeoutMs(0L);
+        flightConfigProperties.setUpstreamCompressionEnabled(false);
+        requestFactory = UpstreamRequestFactory.create(flightConfigProperties);
+        restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        if (requestFactory instanceof DisposableBean) {
+            ((DisposableBean) requestFactory).destroy();
+        }
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    @Benchmark
+    public String getSchedule() {
+        return restTemplate.getForObject(stubApi, String.class);
+    }
+
+    private static void respond(HttpExchange exchange) throws IOException {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, BODY.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(BODY);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package pw.peterwhite.flights.dto;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.helpers.BenchmarkFixtures;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the JSON the service reads and writes, with the ObjectMapper Spring configures: deserializing a
+ * Routes API network of 5000 routes and a Schedules API month, and serializing an interconnections response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    private ObjectReader routesReader;
+    private ObjectReader scheduleReader;
+    private ObjectWriter journeysWriter;
+
+    private byte[] routesJson;
+    private byte[] scheduleJson;
+    private List<Journey> journeys;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(BenchmarkFixtures.SEED);
+        ObjectMapper objectMapper = BenchmarkFixtures.objectMapper();
+        routesReader = objectMapper.readerFor(new TypeReference<List<Route>>() {
+        });
+        scheduleReader = objectMapper.readerFor(Schedule.class);
+        journeysWriter = objectMapper.writerFor(new TypeReference<List<Journey>>() {
+        });
+
+        routesJson = objectMapper.writeValueAsBytes(BenchmarkFixtures.routes(BenchmarkFixtures.airports(200), 25, random));
+        Schedule schedule = BenchmarkFixtures.schedule(1, 4, random);
+        scheduleJson = objectMapper.writeValueAsBytes(schedule);
+
+        // A response of the size a busy airport pair gets: the direct flights and a few hubs of one stop journeys
+        List<Leg> firstLegs = BenchmarkFixtures.legs("DUB", "BCN", schedule);
+        List<Leg> secondLegs = BenchmarkFixtures.legs("BCN", "SXF", schedule);
+        journeys = new ArrayList<>();
+        for (Leg leg : BenchmarkFixtures.legs("DUB", "SXF", schedule)) {
+            journeys.add(new Journey(0, Arrays.asList(leg)));
+        }
+        for (int i = 0; i < firstLegs.size(); i += 4) {
+            for (int j = i + 4; j < Math.min(secondLegs.size(), i + 40); j++) {
+                journeys.add(new Journey(1, Arrays.asList(firstLegs.get(i), secondLegs.get(j))));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Route> deserializeRoutes() throws IOException {
+        return routesReader.readValue(routesJson);
+    }
+
+    @Benchmark
+    public Schedule deserializeSchedule() throws IOException {
+        return scheduleReader.readValue(scheduleJson);
+    }
+
+    @Benchmark
+    public byte[] serializeJourneys() throws IOException {
+        return journeysWriter.writeValueAsBytes(journeys);
+    }
+}
@@ -0,0 +1,117 @@
+package pw.peterwhite.flights.helpers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.dto.Schedule;
+import pw.peterwhite.flights.dto.Schedule.DayFlights;
+import pw.peterwhite.flights.dto.Schedule.FlightDetails;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * BenchmarkFixtures: Synthetic Routes and Schedules API data for the benchmarks, built as the same DTOs TestHelper
+ * reads from its json files, only bigger. Everything is generated from a fixed seed so each run measures the same data.
+ */
+public final class BenchmarkFixtures {
+    public static final long SEED = 42;
+    public static final String OPERATOR = "RYANAIR";
+    public static final int YEAR = 2030;
+
+    private static final DateTimeFormatter HH_MM = DateTimeFormatter.ofPattern("HH:mm");
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * @return the ObjectMapper Spring configures for RestTemplate and the controllers
+     */
+    public static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    /**
+     * @return IATA-like codes AAA, AAB, ... for the given number of airports
+     */
+    public static List<String> airports(int count) {
+        List<String> airports = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            airports.add(new String(new char[]{
+                    (char) ('A' + i / (26 * 26) % 26),
+                    (char) ('A' + i / 26 % 26),
+                    (char) ('A' + i % 26)}));
+        }
+        return airports;
+    }
+
+    /**
+     * A route network of routesPerAirport searchable routes out of every airport, to random destinations. Like the
+     * real Routes API, one route in ten is noise the search filters out (connecting or another operator's).
+     */
+    public static List<Route> routes(List<String> airports, int routesPerAirport, Random random) {
+        List<Route> routes = new ArrayList<>();
+        for (String airportFrom : airports) {
+            Set<String> destinations = new HashSet<>();
+            while (destinations.size() < routesPerAirport) {
+                String airportTo = airports.get(random.nextInt(airports.size()));
+                if (!airportTo.equals(airportFrom) && destinations.add(airportTo)) {
+                    routes.add(new Route(airportFrom, airportTo, null, OPERATOR));
+                    if (random.nextInt(10) == 0) {
+                        routes.add(random.nextBoolean()
+                                ? new Route(airportFrom, airportTo, airports.get(random.nextInt(airports.size())), OPERATOR)
+                                : new Route(airportFrom, airportTo, null, "OTHER"));
+                    }
+                }
+            }
+        }
+        Collections.shuffle(routes, random);
+        return routes;
+    }
+
+    /**
+     * A Schedules API month with flightsPerDay flights every day, departing between 06:00 and 21:00 in departure order
+     * and landing 1-3 hours later on the same day.
+     */
+    public static Schedule schedule(int month, int flightsPerDay, Random random) {
+        int daysInMonth = YearMonth.of(YEAR, month).lengthOfMonth();
+        List<DayFlights> days = new ArrayList<>(daysInMonth);
+        for (int day = 1; day <= daysInMonth; day++) {
+            List<FlightDetails> flights = new ArrayList<>(flightsPerDay);
+            int slotMinutes = 15 * 60 / flightsPerDay;
+            for (int i = 0; i < flightsPerDay; i++) {
+                LocalTime departure = LocalTime.of(6, 0).plusMinutes(i * slotMinutes + random.nextInt(slotMinutes));
+                LocalTime arrival = departure.plusMinutes(60 + random.nextInt(120));
+                flights.add(new FlightDetails(departure.format(HH_MM), arrival.format(HH_MM)));
+            }
+            days.add(new DayFlights(day, flights));
+        }
+        return new Schedule(month, days);
+    }
+
+    /**
+     * @return the flights of a schedule month as Legs, as RyanairApiClient flattens them
+     */
+    public static List<Leg> legs(String airportFrom, String airportTo, Schedule schedule) {
+        List<Leg> legs = new ArrayList<>();
+        for (DayFlights day : schedule.getDays()) {
+            LocalDate date = LocalDate.of(YEAR, schedule.getMonth(), day.getDay());
+            for (FlightDetails flight : day.getFlights()) {
+                legs.add(new Leg(airportFrom, airportTo,
+                        LocalDateTime.of(date, LocalTime.parse(flight.getDepartureTime())),
+                        LocalDateTime.of(date, LocalTime.parse(flight.getArrivalTime()))));
+            }
+        }
+        return legs;
+    }
+}
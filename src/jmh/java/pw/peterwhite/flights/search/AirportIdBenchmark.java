@@ -0,0 +1,128 @@
+package pw.peterwhite.flights.search;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.helpers.BenchmarkFixtures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of matching the intermediate airports of an airport pair by interned airport ids, against the same match
+ * over String-keyed sorted maps as RouteIndex used to do it, and of looking up an airport code in the
+ * AirportDictionary against a HashMap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AirportIdBenchmark {
+    @Param({"200"})
+    public int airports;
+
+    @Param({"25"})
+    public int routesPerAirport;
+
+    private RouteIndex routeIndex;
+    private Map<String, NavigableMap<String, Route>> outgoing;
+    private Map<String, NavigableMap<String, Route>> incoming;
+    private Map<String, Integer> codeIds;
+    // Searched in turn, as codes and as ids
+    private String[][] airportPairs;
+    private int[][] airportIdPairs;
+    private int nextPair;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(BenchmarkFixtures.SEED);
+        List<String> airportCodes = BenchmarkFixtures.airports(airports);
+        List<Route> routeNetwork = BenchmarkFixtures.routes(airportCodes, routesPerAirport, random);
+        routeIndex = RouteIndex.of(routeNetwork, BenchmarkFixtures.OPERATOR);
+
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
+        for (Route route : routeNetwork) {
+            if (route.getConnectingAirport() == null && BenchmarkFixtures.OPERATOR.equals(route.getOperator())) {
+                outgoing.computeIfAbsent(route.getAirportFrom(), airport -> new TreeMap<>()).putIfAbsent(route.getAirportTo(), route);
+                incoming.computeIfAbsent(route.getAirportTo(), airport -> new TreeMap<>()).putIfAbsent(route.getAirportFrom(), route);
+            }
+        }
+        codeIds = new HashMap<>();
+        for (String code : airportCodes) {
+            codeIds.put(code, routeIndex.getAirports().getId(code));
+        }
+
+        List<String[]> pairs = new ArrayList<>();
+        while (pairs.size() < 64) {
+            String departure = airportCodes.get(random.nextInt(airports));
+            String arrival = airportCodes.get(random.nextInt(airports));
+            if (!departure.equals(arrival)) {
+                // Copies, as codes come in fresh from each request
+                pairs.add(new String[]{new String(departure), new String(arrival)});
+            }
+        }
+        airportPairs = pairs.toArray(new String[0][]);
+        airportIdPairs = new int[airportPairs.length][];
+        for (int i = 0; i < airportPairs.length; i++) {
+            AirportDictionary dictionary = routeIndex.getAirports();
+            airportIdPairs[i] = new int[]{dictionary.getId(airportPairs[i][0]), dictionary.getId(airportPairs[i][1])};
+        }
+    }
+
+    @Benchmark
+    public List<String> intermediateAirportsByCode() {
+        String[] pair = airportPairs[nextPair()];
+        NavigableMap<String, Route> destinations = outgoing.getOrDefault(pair[0], new TreeMap<>());
+        NavigableMap<String, Route> origins = incoming.getOrDefault(pair[1], new TreeMap<>());
+        NavigableMap<String, Route> smaller = destinations.size() <= origins.size() ? destinations : origins;
+        NavigableMap<String, Route> larger = smaller == destinations ? origins : destinations;
+        List<String> intermediateAirports = new ArrayList<>();
+        for (String airport : smaller.keySet()) {
+            if (larger.containsKey(airport)) {
+                intermediateAirports.add(airport);
+            }
+        }
+        return intermediateAirports;
+    }
+
+    @Benchmark
+    public int[] intermediateAirportsById() {
+        int[] pair = airportIdPairs[nextPair()];
+        return routeIndex.getIntermediateAirports(pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public Integer lookupCodeInHashMap() {
+        return codeIds.get(airportPairs[nextPair()][0]);
+    }
+
+    @Benchmark
+    public int lookupCodeInDictionary() {
+        return routeIndex.getAirports().getId(airportPairs[nextPair()][0]);
+    }
+
+    private int nextPair() {
+        int pair = nextPair;
+        nextPair = (nextPair + 1) % airportPairs.length;
+        return pair;
+    }
+}
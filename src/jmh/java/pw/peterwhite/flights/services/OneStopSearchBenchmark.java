@@ -0,0 +1,117 @@
+package pw.peterwhite.flights.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.helpers.BenchmarkFixtures;
+import pw.peterwhite.flights.search.RouteIndex;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the CPU-bound part of a one stop search in FlightService, with the upstream calls taken out:
+ * indexing the route network, matching the intermediate airports of an airport pair, and joining the legs of each hub.
+ * Every route flies the same synthetic month of schedules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OneStopSearchBenchmark {
+    // 200 airports with 25 routes each is a network of 5000 searchable routes
+    @Param({"200"})
+    public int airports;
+
+    @Param({"25"})
+    public int routesPerAirport;
+
+    @Param({"4"})
+    public int flightsPerDay;
+
+    private List<Route> routeNetwork;
+    private RouteIndex routeIndex;
+    // Searched in turn, so the benchmark isn't tuned to one pair's hubs
+    private String[][] airportPairs;
+    // Keyed by the Route instances the index hands back
+    private Map<Route, List<Leg>> legsByRoute;
+    private int nextPair;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(BenchmarkFixtures.SEED);
+        List<String> airportCodes = BenchmarkFixtures.airports(airports);
+        routeNetwork = BenchmarkFixtures.routes(airportCodes, routesPerAirport, random);
+        routeIndex = RouteIndex.of(routeNetwork, BenchmarkFixtures.OPERATOR);
+
+        List<Leg> monthLegs = BenchmarkFixtures.legs("", "", BenchmarkFixtures.schedule(1, flightsPerDay, random));
+        legsByRoute = new IdentityHashMap<>();
+        for (Route route : routeNetwork) {
+            List<Leg> legs = new ArrayList<>(monthLegs.size());
+            for (Leg leg : monthLegs) {
+                legs.add(new Leg(route.getAirportFrom(), route.getAirportTo(), leg.getDepartureTime(), leg.getArrivalTime()));
+            }
+            legsByRoute.put(route, legs);
+        }
+
+        // Pairs with at least one intermediate airport, as those are the searches that do any joining
+        List<String[]> pairs = new ArrayList<>();
+        while (pairs.size() < 64) {
+            String departure = airportCodes.get(random.nextInt(airports));
+            String arrival = airportCodes.get(random.nextInt(airports));
+            if (!departure.equals(arrival) && !routeIndex.getIntermediateAirports(departure, arrival).isEmpty()) {
+                pairs.add(new String[]{departure, arrival});
+            }
+        }
+        airportPairs = pairs.toArray(new String[0][]);
+    }
+
+    @Benchmark
+    public RouteIndex buildRouteIndex() {
+        return RouteIndex.of(routeNetwork, BenchmarkFixtures.OPERATOR);
+    }
+
+    @Benchmark
+    public List<Route> matchHubs() {
+        // RoutePlan is package-private, return something the generated benchmark code can see
+        String[] pair = nextPair();
+        return RoutePlan.of(routeIndex, pair[0], pair[1]).getDepartureRoutes();
+    }
+
+    @Benchmark
+    public void matchHubsAndJoinLegs(Blackhole blackhole) {
+        String[] pair = nextPair();
+        RoutePlan routePlan = RoutePlan.of(routeIndex, pair[0], pair[1]);
+        List<Route> departureRoutes = routePlan.getDepartureRoutes();
+        List<Route> arrivalRoutes = routePlan.getArrivalRoutes();
+        for (int i = 0; i < departureRoutes.size(); i++) {
+            List<Journey> journeys = Connections.joinOneStop(legsByRoute.get(departureRoutes.get(i)), legsByRoute.get(arrivalRoutes.get(i)));
+            blackhole.consume(journeys);
+        }
+    }
+
+    private String[] nextPair() {
+        String[] pair = airportPairs[nextPair];
+        nextPair = (nextPair + 1) % airportPairs.length;
+        return pair;
+    }
+}
@@ -0,0 +1,362 @@
+package pw.peterwhite.flights.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * <b>DiskCache</b>: Second cache tier behind the in-memory ones, persisting the route snapshot and flattened schedule
+ * months to a directory so a restarted node starts warm. Each entry is its own compact binary file: a header with its
+ * expiry, then the routes or the columns of the month's {@link Timetable}.
+ * <p>
+ * Nothing is read at startup. An entry's file is only memory-mapped when that entry is looked up, its header checked,
+ * and its payload decoded if it is still usable, so the store is never deserialized as a whole. Writes are done
+ * behind the caller's back by one background thread, to a temporary file moved into place, so readers never see a
+ * partial entry. A newer write of an entry still waiting to be written replaces it.
+ * Entries are kept maxStalenessMillis past their expiry for stale serving and deleted when read after that.
+ * I/O errors and unreadable files are logged and count as misses.
+ */
+public class DiskCache {
+    private static final Log logger = LogFactory.getLog(DiskCache.class);
+
+    // "FLT1"
+    private static final int MAGIC = 0x464C5431;
+    private static final byte ROUTES = 1;
+    private static final byte SCHEDULE_MONTH = 2;
+    // Magic, type, expiresAtMillis
+    private static final int HEADER_BYTES = 4 + 1 + 8;
+    private static final String ROUTES_FILE = "routes.bin";
+
+    private final Path directory;
+    private final long maxStalenessMillis;
+    private final LongSupplier clock;
+
+    // Encoded payload of each entry waiting to be written, by file
+    private final Map<Path, Supplier<ByteBuffer>> pendingWrites = new ConcurrentHashMap<>();
+    private final ExecutorService writer;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    public DiskCache(Path directory, long maxStalenessMillis) throws IOException {
+        this(directory, maxStalenessMillis, System::currentTimeMillis);
+    }
+
+    DiskCache(Path directory, long maxStalenessMillis, LongSupplier clock) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxStalenessMillis = Math.max(0, maxStalenessMillis);
+        this.clock = clock;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "disk-cache-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the persisted route snapshot, with the time it was loaded from the Routes API, or null if there is none
+     *          or it expired more than maxStalenessMillis ago
+     */
+    public RouteSnapshot getRoutes() {
+        ByteBuffer payload = read(directory.resolve(ROUTES_FILE), ROUTES);
+        if (payload == null) {
+            return null;
+        }
+        long loadedAtMillis = payload.getLong();
+        int count = payload.getInt();
+        List<Route> routes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            routes.add(new Route(getString(payload), getString(payload), getString(payload), getString(payload)));
+        }
+        return new RouteSnapshot(routes, loadedAtMillis);
+    }
+
+    /**
+     * Persists the route snapshot in the background, to be used until expiresAtMillis (plus maxStalenessMillis for
+     * stale serving).
+     */
+    public void putRoutes(RouteSnapshot snapshot, long expiresAtMillis) {
+        write(directory.resolve(ROUTES_FILE), ROUTES, expiresAtMillis, () -> {
+            List<Route> routes = snapshot.getRoutes();
+            ByteBuffer payload = ByteBuffer.allocate(8 + 4 + routes.size() * 4 * 16);
+            payload.putLong(snapshot.getLoadedAtMillis());
+            payload.putInt(routes.size());
+            for (Route route : routes) {
+                payload = putString(payload, route.getAirportFrom());
+                payload = putString(payload, route.getAirportTo());
+                payload = putString(payload, route.getConnectingAirport());
+                payload = putString(payload, route.getOperator());
+            }
+            return payload;
+        });
+    }
+
+    /**
+     * @return the persisted month with its expiry, or null if it is not persisted or expired more than
+     *          maxStalenessMillis ago. Callers tell fresh from stale with {@link Entry#getExpiresAtMillis}
+     */
+    public Entry<Timetable> getScheduleMonth(ScheduleMonthKey key) {
+        Path file = scheduleMonthFile(key);
+        if (file == null) {
+            return null;
+        }
+        ByteBuffer payload = read(file, SCHEDULE_MONTH);
+        if (payload == null) {
+            return null;
+        }
+        long expiresAtMillis = payload.getLong(HEADER_BYTES - 8);
+        int flightCount = payload.getInt();
+        Timetable.Builder flights = new Timetable.Builder();
+        for (int i = 0; i < flightCount; i++) {
+            flights.add(key.getAirportFrom(), key.getAirportTo(), payload.getInt(), payload.getInt());
+        }
+        return new Entry<>(flights.build(), expiresAtMillis);
+    }
+
+    /**
+     * Persists the month in the background, to be used until expiresAtMillis (plus maxStalenessMillis for stale
+     * serving). The month must only hold flights of the key's route.
+     */
+    public void putScheduleMonth(ScheduleMonthKey key, Timetable month, long expiresAtMillis) {
+        Path file = scheduleMonthFile(key);
+        if (file == null) {
+            return;
+        }
+        write(file, SCHEDULE_MONTH, expiresAtMillis, () -> {
+            ByteBuffer payload = ByteBuffer.allocate(4 + month.getFlightCount() * 8);
+            payload.putInt(month.getFlightCount());
+            for (int flight = 0; flight < month.getFlightCount(); flight++) {
+                payload.putInt(month.getDeparture(flight));
+                payload.putInt(month.getArrival(flight));
+            }
+            return payload;
+        });
+    }
+
+    /**
+     * Writes out the entries still waiting, then stops the writer thread.
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Gave up waiting for " + pendingWrites.size() + " disk cache writes");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getWriteFailures() {
+        return writeFailures.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DiskCache{" +
+                "directory=" + directory +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", writes=" + getWrites() +
+                '}';
+    }
+
+    /**
+     * Maps the file and checks its header.
+     *
+     * @return the payload of the file, after the header, or null if there is no usable entry
+     */
+    private ByteBuffer read(Path file, byte type) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.get() != type) {
+                logger.warn("Deleting unreadable disk cache entry " + file);
+                delete(file);
+                misses.incrementAndGet();
+                return null;
+            }
+            long expiresAtMillis = buffer.getLong();
+            if (expiresAtMillis + maxStalenessMillis <= clock.getAsLong()) {
+                // Too old to serve even when the upstream APIs fail
+                delete(file);
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return buffer;
+        } catch (NoSuchFileException ex) {
+            misses.incrementAndGet();
+            return null;
+        } catch (IOException | BufferUnderflowException ex) {
+            logger.warn("Failed to read disk cache entry " + file + ": " + ex.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    private void write(Path file, byte type, long expiresAtMillis, Supplier<ByteBuffer> payload) {
+        Supplier<ByteBuffer> entry = () -> {
+            ByteBuffer body = payload.get();
+            body.flip();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).put(type).putLong(expiresAtMillis).flip();
+            ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + body.remaining());
+            return (ByteBuffer) bytes.put(header).put(body).flip();
+        };
+        if (pendingWrites.put(file, entry) != null) {
+            // Already queued, the writer will pick up this newer entry
+            return;
+        }
+        try {
+            writer.execute(() -> flush(file));
+        } catch (RuntimeException ex) {
+            // Writer already shut down
+            pendingWrites.remove(file);
+        }
+    }
+
+    private void flush(Path file) {
+        Supplier<ByteBuffer> entry = pendingWrites.remove(file);
+        if (entry == null) {
+            return;
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = entry.get();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("Failed to write disk cache entry " + file + ": " + ex.getMessage());
+            writeFailures.incrementAndGet();
+            delete(temporary);
+            return;
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writes.incrementAndGet();
+        } catch (IOException ex) {
+            logger.warn("Failed to write disk cache entry " + file + ": " + ex.getMessage());
+            writeFailures.incrementAndGet();
+            delete(temporary);
+        }
+    }
+
+    /**
+     * @return the month's file, or null for airport codes that can't safely be used in a file name
+     */
+    private Path scheduleMonthFile(ScheduleMonthKey key) {
+        if (!isFileNameSafe(key.getAirportFrom()) || !isFileNameSafe(key.getAirportTo())) {
+            return null;
+        }
+        return directory.resolve(String.format("schedule-%s-%s-%d-%02d.bin",
+                key.getAirportFrom(), key.getAirportTo(), key.getYear(), key.getMonth()));
+    }
+
+    private static boolean isFileNameSafe(String airport) {
+        if (airport.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < airport.length(); i++) {
+            if (!Character.isLetterOrDigit(airport.charAt(i)) || airport.charAt(i) > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            logger.warn("Failed to delete disk cache entry " + file + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Strings are written as their UTF-8 length (-1 for null) then bytes. Grows the buffer if needed.
+     */
+    private static ByteBuffer putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < 4 + bytes.length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + 4 + bytes.length));
+            buffer.flip();
+            buffer = larger.put(buffer);
+        }
+        buffer.putInt(value == null ? -1 : bytes.length);
+        return buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A value read back from disk, with the time it stops being fresh.
+     */
+    public static final class Entry<T> {
+        private final T value;
+        private final long expiresAtMillis;
+
+        Entry(T value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+        public boolean isFresh(long nowMillis) {
+            return nowMillis < expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package pw.peterwhite.flights.cache;
+
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * <b>QueryResultCache</b>: Size-bounded LRU cache of the journeys found by interconnections searches, so identical
+ * searches from many users, or refreshes of the same page, don't search again.
+ * Searches are normalized to a bucket: the departure date-time is rounded down and the arrival date-time up to
+ * granularityMillis, the bucket's journeys are searched and cached once, and each search in it gets those of its own
+ * window. A journey is in a window if every leg is, so this is the same as searching the window itself.
+ * Entries expire with the earliest of the schedule months they were searched from, and no later than ttlMillis (the
+ * schedule cache's TTL) after they were stored, so a result is never served past the freshness of its months. They are
+ * dropped earlier when the route network, or a schedule month of their airports and months, is found to have changed.
+ */
+public class QueryResultCache {
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final int granularityMinutes;
+    private final LongSupplier clock;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    // Bumped on every invalidation, so a search that read data from before one does not cache its journeys
+    private final AtomicLong version = new AtomicLong();
+
+    // Access-ordered, so the eldest entry is the least recently used one. Guarded by "this"
+    private final LinkedHashMap<Key, Entry> entries;
+
+    public QueryResultCache(int maxEntries, long ttlMillis, long granularityMillis) {
+        this(maxEntries, ttlMillis, granularityMillis, System::currentTimeMillis);
+    }
+
+    QueryResultCache(int maxEntries, long ttlMillis, long granularityMillis, LongSupplier clock) {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("maxEntries and ttlMillis must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.granularityMinutes = (int) Math.max(1, TimeUnit.MILLISECONDS.toMinutes(granularityMillis));
+        this.clock = clock;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > QueryResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the start of the bucket of a departure date-time, the earliest departure its search is made with. Never
+     *          before the month of the departure date-time, so the bucket's search fetches no schedule month the
+     *          search itself would not
+     */
+    public LocalDateTime getBucketStart(LocalDateTime departureDateTime) {
+        int minutes = Timetable.toMinutes(departureDateTime);
+        LocalDateTime bucketStart = Timetable.toDateTime(Math.floorDiv(minutes, granularityMinutes) * granularityMinutes);
+        LocalDateTime monthStart = YearMonth.from(departureDateTime).atDay(1).atStartOfDay();
+        return bucketStart.isBefore(monthStart) ? monthStart : bucketStart;
+    }
+
+    /**
+     * @return the end of the bucket of an arrival date-time, the latest arrival its search is made with. Never after
+     *          the last minute of the month of the arrival date-time, so the bucket's search fetches no schedule month
+     *          the search itself would not
+     */
+    public LocalDateTime getBucketEnd(LocalDateTime arrivalDateTime) {
+        int minutes = Timetable.toMinutes(arrivalDateTime.plusMinutes(1).minusNanos(1));
+        LocalDateTime bucketEnd = Timetable.toDateTime(-Math.floorDiv(-minutes, granularityMinutes) * granularityMinutes);
+        LocalDateTime monthEnd = YearMonth.from(arrivalDateTime).atEndOfMonth().atTime(23, 59);
+        return bucketEnd.isAfter(monthEnd) ? monthEnd : bucketEnd;
+    }
+
+    /**
+     * @return the journeys of the cached bucket departing at or after departureDateTime and arriving at or before
+     *          arrivalDateTime, in the order they were found, or null if the bucket is not cached or has expired
+     */
+    public List<Journey> get(String departure, String arrival, LocalDateTime departureDateTime, LocalDateTime arrivalDateTime) {
+        Key key = new Key(departure, arrival, getBucketStart(departureDateTime), getBucketEnd(arrivalDateTime));
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null || entry.expiresAtMillis <= clock.getAsLong()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return within(entry.journeys, departureDateTime, arrivalDateTime);
+    }
+
+    /**
+     * @return the journeys every leg of which departs at or after departureDateTime and arrives at or before
+     *          arrivalDateTime, in the order given. Picks the journeys of a search out of those of its bucket
+     */
+    public static List<Journey> within(List<Journey> journeys, LocalDateTime departureDateTime, LocalDateTime arrivalDateTime) {
+        List<Journey> journeysWithin = new ArrayList<>();
+        for (Journey journey : journeys) {
+            if (isWithin(journey, departureDateTime, arrivalDateTime)) {
+                journeysWithin.add(journey);
+            }
+        }
+        return journeysWithin;
+    }
+
+    /**
+     * @return the current version, to be taken before a search and handed to {@link #put} with its journeys
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Stores the journeys of a bucket, unless the cache was invalidated since the search started, as they may have
+     * been found in data that has since changed.
+     *
+     * @param bucketStart: departure date-time of the search, from {@link #getBucketStart}
+     * @param bucketEnd: arrival date-time of the search, from {@link #getBucketEnd}
+     * @param searchVersion: {@link #getVersion} from before the search started
+     */
+    public void put(String departure, String arrival, LocalDateTime bucketStart, LocalDateTime bucketEnd,
+                    List<Journey> journeys, long searchVersion) {
+        put(departure, arrival, bucketStart, bucketEnd, journeys, searchVersion, Long.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #put(String, String, LocalDateTime, LocalDateTime, List, long)}, for journeys searched from schedule
+     * months the earliest of which expires at monthsExpireAtMillis. The entry expires then if that is before ttlMillis
+     * from now.
+     */
+    public void put(String departure, String arrival, LocalDateTime bucketStart, LocalDateTime bucketEnd,
+                    List<Journey> journeys, long searchVersion, long monthsExpireAtMillis) {
+        long expiresAtMillis = Math.min(clock.getAsLong() + ttlMillis, monthsExpireAtMillis);
+        Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<>(journeys)), expiresAtMillis);
+        synchronized (this) {
+            if (version.get() == searchVersion) {
+                entries.put(new Key(departure, arrival, bucketStart, bucketEnd), entry);
+            }
+        }
+    }
+
+    /**
+     * Drops every entry, as any of them may have been searched on routes that are gone, or be missing new ones.
+     */
+    public void invalidateRoutes() {
+        int dropped;
+        synchronized (this) {
+            version.incrementAndGet();
+            dropped = entries.size();
+            entries.clear();
+        }
+        invalidations.addAndGet(dropped);
+    }
+
+    /**
+     * Drops the entries that may have used the schedule month: a direct or first leg from its departure airport, or a
+     * direct or second leg to its arrival airport, in a bucket overlapping the month.
+     */
+    public void invalidateScheduleMonth(ScheduleMonthKey month) {
+        YearMonth yearMonth = YearMonth.of(month.getYear(), month.getMonth());
+        int dropped = 0;
+        synchronized (this) {
+            version.incrementAndGet();
+            Iterator<Key> keys = entries.keySet().iterator();
+            while (keys.hasNext()) {
+                Key key = keys.next();
+                if ((key.departure.equals(month.getAirportFrom()) || key.arrival.equals(month.getAirportTo()))
+                        && !yearMonth.isBefore(YearMonth.from(key.bucketStart))
+                        && !yearMonth.isAfter(YearMonth.from(key.bucketEnd))) {
+                    keys.remove();
+                    dropped++;
+                }
+            }
+        }
+        invalidations.addAndGet(dropped);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of entries dropped because the data they were searched in changed
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResultCache{" +
+                "size=" + size() +
+                ", maxEntries=" + maxEntries +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", invalidations=" + getInvalidations() +
+                '}';
+    }
+
+    private static boolean isWithin(Journey journey, LocalDateTime departureDateTime, LocalDateTime arrivalDateTime) {
+        for (Leg leg : journey.getLegs()) {
+            if (leg.getDepartureTime().isBefore(departureDateTime) || leg.getArrivalTime().isAfter(arrivalDateTime)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Key {
+        private final String departure;
+        private final String arrival;
+        private final LocalDateTime bucketStart;
+        private final LocalDateTime bucketEnd;
+
+        private Key(String departure, String arrival, LocalDateTime bucketStart, LocalDateTime bucketEnd) {
+            this.departure = departure;
+            this.arrival = arrival;
+            this.bucketStart = bucketStart;
+            this.bucketEnd = bucketEnd;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return departure.equals(key.departure) &&
+                    arrival.equals(key.arrival) &&
+                    bucketStart.equals(key.bucketStart) &&
+                    bucketEnd.equals(key.bucketEnd);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(departure, arrival, bucketStart, bucketEnd);
+        }
+    }
+
+    private static final class Entry {
+        private final List<Journey> journeys;
+        private final long expiresAtMillis;
+
+        private Entry(List<Journey> journeys, long expiresAtMillis) {
+            this.journeys = journeys;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package pw.peterwhite.flights.cache;
+
+import pw.peterwhite.flights.dto.Route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <b>RouteSnapshot</b>: Immutable copy of the route network as returned by the Routes API at a point in time, with
+ * the {@link Validators} it was answered with.
+ * A new snapshot is created on every successful refresh, so readers can hold on to one without locking. A refresh that
+ * finds the routes unchanged shares the previous snapshot's list, so whatever was built from that list can be kept.
+ */
+public final class RouteSnapshot {
+    private final List<Route> routes;
+    private final long loadedAtMillis;
+    private final Validators validators;
+
+    public RouteSnapshot(List<Route> routes, long loadedAtMillis) {
+        this(routes, loadedAtMillis, Validators.NONE);
+    }
+
+    public RouteSnapshot(List<Route> routes, long loadedAtMillis, Validators validators) {
+        this.routes = Collections.unmodifiableList(new ArrayList<>(routes));
+        this.loadedAtMillis = loadedAtMillis;
+        this.validators = validators;
+    }
+
+    private RouteSnapshot(RouteSnapshot reloaded, long loadedAtMillis, Validators validators) {
+        this.routes = reloaded.routes;
+        this.loadedAtMillis = loadedAtMillis;
+        this.validators = validators;
+    }
+
+    /**
+     * @return a snapshot of the same routes, sharing this one's list, loaded at the given time
+     */
+    public RouteSnapshot reloaded(long loadedAtMillis, Validators validators) {
+        return new RouteSnapshot(this, loadedAtMillis, validators);
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    public long getLoadedAtMillis() {
+        return loadedAtMillis;
+    }
+
+    public Validators getValidators() {
+        return validators;
+    }
+
+    public boolean isOlderThan(long maxAgeMillis, long nowMillis) {
+        return nowMillis - loadedAtMillis > maxAgeMillis;
+    }
+
+    /**
+     * @return true if the other snapshot has the same routes, in the same order, whenever they were loaded
+     */
+    public boolean hasSameRoutes(RouteSnapshot other) {
+        if (routes == other.routes) {
+            return true;
+        }
+        if (routes.size() != other.routes.size()) {
+            return false;
+        }
+        for (int i = 0; i < routes.size(); i++) {
+            Route route = routes.get(i);
+            Route otherRoute = other.routes.get(i);
+            if (!Objects.equals(route.getAirportFrom(), otherRoute.getAirportFrom())
+                    || !Objects.equals(route.getAirportTo(), otherRoute.getAirportTo())
+                    || !Objects.equals(route.getConnectingAirport(), otherRoute.getConnectingAirport())
+                    || !Objects.equals(route.getOperator(), otherRoute.getOperator())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteSnapshot{" +
+                "routes=" + routes.size() +
+                ", loadedAtMillis=" + loadedAtMillis +
+                '}';
+    }
+}
@@ -0,0 +1,140 @@
+package pw.peterwhite.flights.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import pw.peterwhite.flights.dto.Route;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <b>RouteSnapshotCache</b>: Keeps the route network in memory as an immutable {@link RouteSnapshot} and refreshes it
+ * in the background every refreshPeriodMillis.
+ * Readers never wait for a background refresh. They only block when there is no snapshot yet, or when the current
+ * one is older than maxStalenessMillis (ie. refreshes have been failing for a while), in which case the load is done
+ * on the calling thread and any error is propagated to it.
+ * A failed background refresh is logged and the previous snapshot is kept.
+ */
+public class RouteSnapshotCache {
+    private static final Log logger = LogFactory.getLog(RouteSnapshotCache.class);
+
+    private final Supplier<RouteSnapshot> loader;
+    private final long refreshPeriodMillis;
+    private final long maxStalenessMillis;
+
+    private volatile RouteSnapshot snapshot;
+    private ScheduledExecutorService scheduler;
+
+    public RouteSnapshotCache(Supplier<List<Route>> loader, long refreshPeriodMillis, long maxStalenessMillis) {
+        this(refreshPeriodMillis, maxStalenessMillis, () -> new RouteSnapshot(loader.get(), System.currentTimeMillis()));
+    }
+
+    /**
+     * @param loader: loads whole snapshots, eg. to hand back a {@link RouteSnapshot#reloaded} one when the routes have
+     *              not changed, so the list stays the same
+     */
+    public static RouteSnapshotCache ofSnapshots(Supplier<RouteSnapshot> loader, long refreshPeriodMillis, long maxStalenessMillis) {
+        return new RouteSnapshotCache(refreshPeriodMillis, maxStalenessMillis, loader);
+    }
+
+    private RouteSnapshotCache(long refreshPeriodMillis, long maxStalenessMillis, Supplier<RouteSnapshot> loader) {
+        if (refreshPeriodMillis <= 0) {
+            throw new IllegalArgumentException("refreshPeriodMillis must be positive");
+        }
+        this.loader = loader;
+        this.refreshPeriodMillis = refreshPeriodMillis;
+        // Staleness limit can never be less than the refresh period, otherwise every read between refreshes would block
+        this.maxStalenessMillis = Math.max(maxStalenessMillis, refreshPeriodMillis);
+    }
+
+    /**
+     * @return the routes of the current snapshot, loading them on the calling thread if there is no usable snapshot
+     */
+    public List<Route> get() {
+        return getSnapshot().getRoutes();
+    }
+
+    public RouteSnapshot getSnapshot() {
+        RouteSnapshot current = snapshot;
+        if (current != null && !current.isOlderThan(maxStalenessMillis, System.currentTimeMillis())) {
+            return current;
+        }
+        return loadIfStale();
+    }
+
+    /**
+     * @return the last snapshot loaded however old it is, or null if none has been loaded yet. Never loads
+     */
+    public RouteSnapshot getLastSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Starts from a snapshot loaded elsewhere, such as the {@link DiskCache}, if none has been loaded yet. It is used
+     * like any other snapshot, so one older than maxStalenessMillis is reloaded by the first reader.
+     */
+    public synchronized void seed(RouteSnapshot seed) {
+        if (snapshot == null) {
+            snapshot = seed;
+            logger.info("Route snapshot seeded: " + seed);
+        }
+    }
+
+    /**
+     * @return how long a snapshot is used before readers reload it, never less than refreshPeriodMillis
+     */
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    /**
+     * Reloads the snapshot, keeping the previous one if the loader fails. Called from the background scheduler.
+     */
+    public void refresh() {
+        try {
+            load();
+        } catch (RuntimeException ex) {
+            logger.warn("Refreshing route snapshot failed, keeping previous snapshot " + snapshot + ": " + ex.getMessage());
+        }
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "route-snapshot-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The first snapshot is loaded by the first reader, so the scheduler only takes over after one period
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshPeriodMillis, refreshPeriodMillis, TimeUnit.MILLISECONDS);
+        logger.info("Route snapshot refresh scheduled every " + refreshPeriodMillis + "ms, max staleness " + maxStalenessMillis + "ms");
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private synchronized RouteSnapshot loadIfStale() {
+        // Another reader (or the scheduler) may have loaded a snapshot while we were waiting for the lock
+        RouteSnapshot current = snapshot;
+        if (current != null && !current.isOlderThan(maxStalenessMillis, System.currentTimeMillis())) {
+            return current;
+        }
+        return load();
+    }
+
+    private synchronized RouteSnapshot load() {
+        RouteSnapshot loaded = loader.get();
+        snapshot = loaded;
+        logger.info("Route snapshot loaded: " + loaded);
+        return loaded;
+    }
+}
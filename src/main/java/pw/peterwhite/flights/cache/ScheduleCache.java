@@ -0,0 +1,227 @@
+package pw.peterwhite.flights.cache;
+
+import pw.peterwhite.flights.search.Timetable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * <b>ScheduleCache</b>: Size-bounded LRU cache of flattened Schedules API months, keyed by {@link ScheduleMonthKey}.
+ * Entries hold the whole month of flights (before any departure/arrival filtering) so flattening is only done once per
+ * fetch, and expire ttlMillis after they were stored. An empty month is cached too, as the API 404s for months with
+ * no schedule and asking again would give the same answer. Each entry also keeps the {@link Validators} its month was
+ * answered with, to revalidate it once expired. Months are held as {@link Timetable}s, at 8 bytes per flight.
+ */
+public class ScheduleCache {
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // Sum of the cached timetables' getMemoryBytes, kept up to date under "this" so the gauge reads it without locking
+    private final AtomicLong memoryBytes = new AtomicLong();
+
+    // Access-ordered, so the eldest entry is the least recently used one. Guarded by "this"
+    private final LinkedHashMap<ScheduleMonthKey, Entry> entries;
+
+    public ScheduleCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, System::currentTimeMillis);
+    }
+
+    ScheduleCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("maxEntries and ttlMillis must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<ScheduleMonthKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ScheduleMonthKey, Entry> eldest) {
+                if (size() > ScheduleCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    memoryBytes.addAndGet(-eldest.getValue().timetable.getMemoryBytes());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached flights of the month, or null if the month is not cached or its entry has expired
+     */
+    public Timetable get(ScheduleMonthKey key) {
+        Entry entry = getEntry(key);
+        return entry == null ? null : entry.timetable;
+    }
+
+    /**
+     * Same lookup as {@link #get}, for callers that also need the entry's expiry.
+     *
+     * @return the entry of the month, or null if it is not cached or has expired
+     */
+    public Entry getEntry(ScheduleMonthKey key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null || entry.expiresAtMillis <= clock.getAsLong()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Looks up a month past its expiry, for when the Schedules API cannot give a fresh one. Does not count as a hit or
+     * miss, but does make the entry recently used, so months being served during an outage are kept.
+     *
+     * @return the cached flights of the month if they expired no more than maxStalenessMillis ago, otherwise null
+     */
+    public Timetable getStale(ScheduleMonthKey key, long maxStalenessMillis) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null || entry.expiresAtMillis + maxStalenessMillis <= clock.getAsLong()) {
+            return null;
+        }
+        return entry.timetable;
+    }
+
+    /**
+     * Looks up a month however long ago it expired, eg. to revalidate it. Does not count as a hit or miss, but does
+     * make the entry recently used.
+     *
+     * @return the cached entry of the month, or null if it is not cached
+     */
+    public synchronized Entry peek(ScheduleMonthKey key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Does not count as a hit or miss, but does make the entry recently used, so months checked by the
+     * {@link SchedulePrefetcher} are kept.
+     *
+     * @return when the cached month expires, or 0 if it is not cached
+     */
+    public long getExpiresAtMillis(ScheduleMonthKey key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        return entry == null ? 0 : entry.expiresAtMillis;
+    }
+
+    /**
+     * Stores the flights of a month, replacing any previous entry.
+     *
+     * @return the timetable that was cached, to be handed out to the caller that fetched it
+     */
+    public Timetable put(ScheduleMonthKey key, Timetable timetable) {
+        return put(key, timetable, clock.getAsLong() + ttlMillis);
+    }
+
+    /**
+     * Stores the flights of a month until the given time rather than for ttlMillis, for months that were already
+     * cached elsewhere, such as the {@link DiskCache}.
+     *
+     * @return the timetable that was cached
+     */
+    public Timetable put(ScheduleMonthKey key, Timetable timetable, long expiresAtMillis) {
+        return put(key, timetable, expiresAtMillis, Validators.NONE);
+    }
+
+    /**
+     * Stores the flights of a month until the given time, with the validators the Schedules API answered with.
+     *
+     * @return the timetable that was cached
+     */
+    public Timetable put(ScheduleMonthKey key, Timetable timetable, long expiresAtMillis, Validators validators) {
+        Entry entry = new Entry(timetable, expiresAtMillis, validators);
+        long entryBytes = timetable.getMemoryBytes();
+        synchronized (this) {
+            Entry replaced = entries.put(key, entry);
+            memoryBytes.addAndGet(replaced == null ? entryBytes : entryBytes - replaced.timetable.getMemoryBytes());
+        }
+        return entry.timetable;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        memoryBytes.set(0);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return approximate heap size of the cached timetables, see {@link Timetable#getMemoryBytes}. Expired entries
+     *          count until they are replaced or evicted, as they are kept for stale serving
+     */
+    public long getMemoryBytes() {
+        return memoryBytes.get();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduleCache{" +
+                "size=" + size() +
+                ", maxEntries=" + maxEntries +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() +
+                '}';
+    }
+
+    public static final class Entry {
+        private final Timetable timetable;
+        private final long expiresAtMillis;
+        private final Validators validators;
+
+        private Entry(Timetable timetable, long expiresAtMillis, Validators validators) {
+            this.timetable = timetable;
+            this.expiresAtMillis = expiresAtMillis;
+            this.validators = validators;
+        }
+
+        public Timetable getTimetable() {
+            return timetable;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+        public Validators getValidators() {
+            return validators;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package pw.peterwhite.flights.cache;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <b>ScheduleMonthKey</b>: Identifies one month of the Schedules API for a route, ie. the
+ * {airportFrom}/{airportTo}/years/{year}/months/{month} part of the request path.
+ */
+public final class ScheduleMonthKey {
+    private final String airportFrom;
+    private final String airportTo;
+    private final int year;
+    private final int month;
+
+    public ScheduleMonthKey(String airportFrom, String airportTo, int year, int month) {
+        this.airportFrom = airportFrom;
+        this.airportTo = airportTo;
+        this.year = year;
+        this.month = month;
+    }
+
+    /**
+     * @return the months of the route a departure-arrival time range needs, in month order
+     */
+    public static List<ScheduleMonthKey> between(String airportFrom, String airportTo, LocalDateTime departureDateTime, LocalDateTime arrivalDateTime) {
+        List<ScheduleMonthKey> months = new ArrayList<>();
+        for (YearMonth month = YearMonth.from(departureDateTime);
+             !month.isAfter(YearMonth.from(arrivalDateTime));
+             month = month.plusMonths(1)) {
+            months.add(new ScheduleMonthKey(airportFrom, airportTo, month.getYear(), month.getMonthValue()));
+        }
+        return months;
+    }
+
+    public String getAirportFrom() {
+        return airportFrom;
+    }
+
+    public String getAirportTo() {
+        return airportTo;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ScheduleMonthKey that = (ScheduleMonthKey) o;
+        return year == that.year &&
+                month == that.month &&
+                airportFrom.equals(that.airportFrom) &&
+                airportTo.equals(that.airportTo);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(airportFrom, airportTo, year, month);
+    }
+
+    @Override
+    public String toString() {
+        return airportFrom + "-" + airportTo + "/" + year + "/" + month;
+    }
+}
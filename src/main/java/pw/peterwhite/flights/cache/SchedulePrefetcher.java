@@ -0,0 +1,160 @@
+package pw.peterwhite.flights.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * <b>SchedulePrefetcher</b>: Keeps the schedule months of hot routes in the {@link ScheduleCache}, so requests for
+ * them never wait for the Schedules API. Every periodMillis, each hot month that is not cached, or would expire before
+ * the next pass ends, is fetched again. The first pass starts straight away and {@link #isWarmedUp} is false until it
+ * has finished.
+ * Months are fetched one at a time, at least minIntervalMillis apart, so prefetching only takes a share of the
+ * upstream rate limit and requests keep the rest. A failed fetch is logged and retried on the next pass.
+ */
+public class SchedulePrefetcher {
+    private static final Log logger = LogFactory.getLog(SchedulePrefetcher.class);
+
+    private final Supplier<List<ScheduleMonthKey>> hotMonths;
+    private final ScheduleCache scheduleCache;
+    private final Consumer<ScheduleMonthKey> fetcher;
+    private final long periodMillis;
+    private final long minIntervalMillis;
+    private final LongSupplier clock;
+
+    private volatile boolean warmedUp;
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param hotMonths: the months to keep cached, asked for on every pass so they follow the route network and calendar
+     * @param fetcher: fetches a month from the Schedules API and puts it in the scheduleCache, whether it is cached or not
+     */
+    public SchedulePrefetcher(Supplier<List<ScheduleMonthKey>> hotMonths, ScheduleCache scheduleCache, Consumer<ScheduleMonthKey> fetcher,
+                              long periodMillis, long minIntervalMillis) {
+        this(hotMonths, scheduleCache, fetcher, periodMillis, minIntervalMillis, System::currentTimeMillis);
+    }
+
+    SchedulePrefetcher(Supplier<List<ScheduleMonthKey>> hotMonths, ScheduleCache scheduleCache, Consumer<ScheduleMonthKey> fetcher,
+                       long periodMillis, long minIntervalMillis, LongSupplier clock) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis must be positive");
+        }
+        this.hotMonths = hotMonths;
+        this.scheduleCache = scheduleCache;
+        this.fetcher = fetcher;
+        this.periodMillis = periodMillis;
+        this.minIntervalMillis = Math.max(0, minIntervalMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Fetches the hot months that are missing or expire within two periods, ie. before the next pass is done with
+     * them. Called from the background scheduler.
+     *
+     * @return number of months fetched, successfully or not
+     */
+    public int prefetch() {
+        List<ScheduleMonthKey> months;
+        try {
+            months = hotMonths.get();
+        } catch (RuntimeException ex) {
+            logger.warn("Prefetching schedules failed, cannot list the hot routes: " + ex.getMessage());
+            return 0;
+        }
+        int fetched = 0;
+        for (ScheduleMonthKey month : months) {
+            if (scheduleCache.getExpiresAtMillis(month) > clock.getAsLong() + 2 * periodMillis) {
+                continue;
+            }
+            if (fetched > 0 && !pause()) {
+                break;
+            }
+            fetched++;
+            try {
+                fetcher.accept(month);
+                fetches.incrementAndGet();
+            } catch (RuntimeException ex) {
+                logger.warn("Prefetching schedules of " + month + " failed, retrying next pass: " + ex.getMessage());
+                failures.incrementAndGet();
+            }
+        }
+        logger.info("Prefetched " + fetched + " of " + months.size() + " hot schedule months");
+        return fetched;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "schedule-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(() -> {
+            prefetch();
+            warmedUp = true;
+            logger.info("Schedule warm-up done: " + this);
+        });
+        scheduler.scheduleWithFixedDelay(this::prefetch, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        logger.info("Schedule prefetch scheduled every " + periodMillis + "ms");
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return true once the first pass has fetched every hot month, or given up on those that failed
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    public long getFetches() {
+        return fetches.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SchedulePrefetcher{" +
+                "warmedUp=" + warmedUp +
+                ", fetches=" + getFetches() +
+                ", failures=" + getFailures() +
+                '}';
+    }
+
+    /**
+     * @return false if interrupted, ie. the prefetcher is stopping
+     */
+    private boolean pause() {
+        if (minIntervalMillis == 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(minIntervalMillis);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package pw.peterwhite.flights.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <b>SingleFlight</b>: Deduplicates concurrent loads of the same key. The first caller for a key runs the loader and
+ * every caller arriving while it is in flight waits for it and gets the same result, or the same exception. Nothing is
+ * kept once the load completes, so later callers load again (caching is left to the caller).
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @return the loader's result for the key, shared with any concurrent callers for the same key
+     * @throws RuntimeException thrown by the loader, rethrown to every caller that shared the load
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+
+        loads.incrementAndGet();
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @return number of calls that ran the loader themselves
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * @return number of calls that shared another caller's in-flight load instead of running the loader
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,87 @@
+package pw.peterwhite.flights.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>UpstreamUsage</b>: Records how one request used the upstream APIs: how many calls it made, when the earliest of
+ * the schedule months it used expires, and whether it was answered with cached data kept past its freshness because an
+ * API could not be reached, so the response can say so.
+ * The controller opens one per request with {@link #begin} on the request thread. Anything working for the request on
+ * other threads must be handed the instance explicitly, as {@link #current} is only set on the request thread.
+ */
+public final class UpstreamUsage {
+    private static final ThreadLocal<UpstreamUsage> CURRENT = new ThreadLocal<>();
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicLong earliestExpiryMillis = new AtomicLong(Long.MAX_VALUE);
+    private volatile boolean stale;
+
+    /**
+     * A standalone UpstreamUsage, not set on any thread. For recording a search run outside of {@link #begin}.
+     */
+    public UpstreamUsage() {
+    }
+
+    /**
+     * Opens an UpstreamUsage for the request being handled on this thread. Must be followed by {@link #end} in a finally.
+     */
+    public static UpstreamUsage begin() {
+        UpstreamUsage upstreamUsage = new UpstreamUsage();
+        CURRENT.set(upstreamUsage);
+        return upstreamUsage;
+    }
+
+    /**
+     * @return the UpstreamUsage opened on this thread, or null when there is none (eg. on a background thread)
+     */
+    public static UpstreamUsage current() {
+        return CURRENT.get();
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Counts a call made to an upstream API, retries included. Does nothing when upstreamUsage is null.
+     */
+    public static void recordCall(UpstreamUsage upstreamUsage) {
+        if (upstreamUsage != null) {
+            upstreamUsage.calls.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the expiry of a schedule month the request used. Does nothing when upstreamUsage is null.
+     */
+    public static void recordExpiry(UpstreamUsage upstreamUsage, long expiresAtMillis) {
+        if (upstreamUsage != null) {
+            upstreamUsage.earliestExpiryMillis.accumulateAndGet(expiresAtMillis, Math::min);
+        }
+    }
+
+    /**
+     * Marks the request as served with stale data. Does nothing when upstreamUsage is null.
+     */
+    public static void markStale(UpstreamUsage upstreamUsage) {
+        if (upstreamUsage != null) {
+            upstreamUsage.stale = true;
+        }
+    }
+
+    public int getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return the earliest expiry recorded with {@link #recordExpiry}, Long.MAX_VALUE if there is none
+     */
+    public long getEarliestExpiryMillis() {
+        return earliestExpiryMillis.get();
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+}
@@ -0,0 +1,49 @@
+package pw.peterwhite.flights.cache;
+
+/**
+ * <b>Validators</b>: The ETag and Last-Modified an upstream API answered with for a cached resource, sent back as
+ * If-None-Match and If-Modified-Since when it is fetched again, so an unchanged resource is answered with a bodiless
+ * 304 Not Modified. Either can be null, as the API may give neither.
+ */
+public final class Validators {
+    public static final Validators NONE = new Validators(null, null);
+
+    private final String eTag;
+    private final String lastModified;
+
+    public Validators(String eTag, String lastModified) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return these validators with any the 304 Not Modified answer gave instead, as it may send new ones
+     */
+    public Validators updatedWith(Validators notModified) {
+        return new Validators(notModified.eTag != null ? notModified.eTag : eTag,
+                notModified.lastModified != null ? notModified.lastModified : lastModified);
+    }
+
+    /**
+     * @return true if there is nothing to revalidate with, in which case a plain request is made
+     */
+    public boolean isEmpty() {
+        return eTag == null && lastModified == null;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String toString() {
+        return "Validators{" +
+                "eTag=" + eTag +
+                ", lastModified=" + lastModified +
+                '}';
+    }
+}
@@ -0,0 +1,112 @@
+package pw.peterwhite.flights.clients;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>CircuitBreaker</b>: Stops calls to an upstream API endpoint after failureThreshold consecutive failures (5xx or
+ * no response), so requests fail fast or fall back to cached data instead of waiting on an API that is down.
+ * While open, the last failed call is probed in the background every probeIntervalMillis, and the first probe that
+ * gets an answer closes the breaker again. Requests themselves never probe.
+ */
+public class CircuitBreaker {
+    private static final Log logger = LogFactory.getLog(CircuitBreaker.class);
+
+    private final String name;
+    private final int failureThreshold;
+    private final long probeIntervalMillis;
+
+    private final AtomicLong opened = new AtomicLong();
+
+    // Guarded by "this"
+    private int consecutiveFailures;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> probeTask;
+
+    // Read without locking on every call
+    private volatile boolean open;
+
+    public CircuitBreaker(String name, int failureThreshold, long probeIntervalMillis) {
+        if (failureThreshold <= 0 || probeIntervalMillis <= 0) {
+            throw new IllegalArgumentException("failureThreshold and probeIntervalMillis must be positive");
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.probeIntervalMillis = probeIntervalMillis;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * The endpoint answered, even if with a 4xx. Resets the count of consecutive failures.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * The endpoint failed. Opens the breaker once failureThreshold failures in a row are reached.
+     *
+     * @param probe repeats the failed call, throwing if the endpoint is still failing. Run in the background while open
+     */
+    public synchronized void recordFailure(Runnable probe) {
+        consecutiveFailures++;
+        if (open || consecutiveFailures < failureThreshold) {
+            return;
+        }
+        open = true;
+        opened.incrementAndGet();
+        logger.warn("Circuit breaker for " + name + " opened after " + consecutiveFailures + " consecutive failures");
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "circuit-breaker-probe-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        probeTask = scheduler.scheduleWithFixedDelay(() -> probe(probe), probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe(Runnable probe) {
+        try {
+            probe.run();
+        } catch (RuntimeException ex) {
+            logger.info("Circuit breaker for " + name + " still open, probe failed: " + ex.getMessage());
+            return;
+        }
+        close();
+    }
+
+    private synchronized void close() {
+        open = false;
+        consecutiveFailures = 0;
+        if (probeTask != null) {
+            probeTask.cancel(false);
+            probeTask = null;
+        }
+        logger.info("Circuit breaker for " + name + " closed");
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            probeTask = null;
+        }
+    }
+
+    /**
+     * @return number of times the breaker has opened
+     */
+    public long getOpened() {
+        return opened.get();
+    }
+}
@@ -0,0 +1,113 @@
+package pw.peterwhite.flights.clients;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import pw.peterwhite.flights.cache.RouteSnapshot;
+import pw.peterwhite.flights.cache.RouteSnapshotCache;
+import pw.peterwhite.flights.cache.ScheduleCache;
+import pw.peterwhite.flights.cache.ScheduleMonthKey;
+import pw.peterwhite.flights.config.FlightConfigProperties;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.search.Timetable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <b>ReactiveRyanairApiClient</b>: Non-blocking front of {@link RyanairApiClient}. Routes and Schedules months already
+ * in its RouteSnapshotCache and ScheduleCache are answered without holding a thread. On a miss the blocking client
+ * loads them on a boundedElastic thread, so they go through the same request coalescing, rate limiting, 429 retries,
+ * circuit breakers, disk cache, stale serving and metrics, and are cached for the next request.
+ */
+public class ReactiveRyanairApiClient extends Client {
+    private static final Log logger = LogFactory.getLog(ReactiveRyanairApiClient.class);
+
+    @Autowired
+    private RyanairApiClient ryanairApiClient;
+
+    // Months of one route requested at the same time
+    private final int monthFetchConcurrency;
+
+    @Autowired
+    public ReactiveRyanairApiClient(FlightConfigProperties flightConfigProperties) {
+        this.baseUrl = flightConfigProperties.getRyanairApiClientBaseUrl();
+        this.monthFetchConcurrency = Math.max(1, flightConfigProperties.getMonthFetchConcurrency());
+        logger.info("ReactiveRyanairApiClient instantiated with baseUrl: " + baseUrl);
+    }
+
+    /**
+     * <b>getRoutes</b>: Gives the cached routes if they are fresh, otherwise loads them with
+     * {@link RyanairApiClient#getRoutes()}.
+     *
+     * @return Mono of all routes from external API. Can be empty if none found (404 from Routes API)
+     *          Errors with ResponseStatusException, see {@link RyanairApiClient#getRoutes}
+     */
+    public Mono<List<Route>> getRoutes() {
+        RouteSnapshotCache routeSnapshotCache = ryanairApiClient.getRouteSnapshotCache();
+        RouteSnapshot cachedRoutes = routeSnapshotCache != null ? routeSnapshotCache.getLastSnapshot() : null;
+        if (cachedRoutes != null
+                && !cachedRoutes.isOlderThan(routeSnapshotCache.getMaxStalenessMillis(), System.currentTimeMillis())) {
+            return Mono.just(cachedRoutes.getRoutes());
+        }
+        return Mono.fromCallable(() -> ryanairApiClient.getRoutes(null))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * <b>getSchedules</b>: Gives the Schedules API months of the route in the given time-frame as Legs and filters out
+     * the flights that are not in the specified time range. Months are loaded up to monthFetchConcurrency at a time
+     * but the legs are emitted in month order.
+     *
+     * @return Flux of the available flights for the route. Errors with ResponseStatusException, see
+     *          {@link RyanairApiClient#getSchedules}
+     */
+    public Flux<Leg> getSchedules(Route route, LocalDateTime departureDateTime, LocalDateTime arrivalDateTime) {
+        String airportFrom = route.getAirportFrom();
+        String airportTo = route.getAirportTo();
+        if (airportFrom == null || airportTo == null) {
+            logger.warn("Malformed route");
+            return Flux.empty();
+        }
+
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth month = YearMonth.from(departureDateTime);
+             !month.isAfter(YearMonth.from(arrivalDateTime));
+             month = month.plusMonths(1)) {
+            months.add(month);
+        }
+
+        return Flux.fromIterable(months)
+                .flatMapSequential(month -> getScheduleMonth(airportFrom, airportTo, month), monthFetchConcurrency)
+                .flatMapIterable(Timetable::toLegs)
+                .filter(flight -> !flight.getDepartureTime().isBefore(departureDateTime)
+                        && !flight.getArrivalTime().isAfter(arrivalDateTime));
+    }
+
+    /**
+     * Gives the cached month if it is fresh, otherwise loads it with
+     * {@link RyanairApiClient#getScheduleMonth(String, String, int, int, UpstreamUsage)}.
+     */
+    private Mono<Timetable> getScheduleMonth(String airportFrom, String airportTo, YearMonth month) {
+        ScheduleCache scheduleCache = ryanairApiClient.getScheduleCache();
+        if (scheduleCache != null) {
+            ScheduleMonthKey key = new ScheduleMonthKey(airportFrom, airportTo, month.getYear(), month.getMonthValue());
+            // Peeked first so a miss is only counted once, by the blocking client
+            ScheduleCache.Entry cachedEntry = scheduleCache.peek(key);
+            if (cachedEntry != null && cachedEntry.getExpiresAtMillis() > System.currentTimeMillis()) {
+                cachedEntry = scheduleCache.getEntry(key);
+                if (cachedEntry != null) {
+                    return Mono.just(cachedEntry.getTimetable());
+                }
+            }
+        }
+        return Mono.fromCallable(() -> ryanairApiClient.getScheduleMonth(airportFrom, airportTo, month.getYear(), month.getMonthValue(), null))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
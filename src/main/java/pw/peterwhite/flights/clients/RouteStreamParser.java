@@ -0,0 +1,198 @@
+package pw.peterwhite.flights.clients;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import pw.peterwhite.flights.dto.Route;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <b>RouteStreamParser</b>: Reads a Routes API response token by token as it comes off the connection, keeping only
+ * the routes that can be searched: routes of the given operator with no connectingAirport and both airports, the same
+ * ones {@link pw.peterwhite.flights.search.RouteIndex} indexes. Other routes, and fields other than those four, are
+ * skipped without their values being decoded into Strings. Each airport code is created once per response and shared
+ * by all of its routes, and kept routes share the configured operator String.
+ * Binding the whole response instead creates a Route, with four Strings, for each of the tens of thousands of routes
+ * the API returns, most of which are then dropped.
+ */
+public final class RouteStreamParser {
+    private final JsonFactory jsonFactory;
+    private final String routeOperator;
+
+    public RouteStreamParser(JsonFactory jsonFactory, String routeOperator) {
+        this.jsonFactory = jsonFactory;
+        this.routeOperator = routeOperator;
+    }
+
+    /**
+     * @return the searchable routes, in the order they were returned, or null if the body is empty (eg. 304 Not
+     *          Modified) or a JSON null
+     * @throws JsonParseException if the body is not a JSON array of routes
+     */
+    public List<Route> parse(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of routes, got " + token);
+            }
+
+            AirportCodes airportCodes = new AirportCodes();
+            List<Route> routes = new ArrayList<>();
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new JsonParseException(parser, "Unexpected end of routes");
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    // Nulls are dropped, as they are after binding
+                    parser.skipChildren();
+                    continue;
+                }
+                Route route = parseRoute(parser, airportCodes);
+                if (route != null) {
+                    routes.add(route);
+                }
+            }
+            return routes;
+        }
+    }
+
+    /**
+     * Reads a route object up to its END_OBJECT.
+     *
+     * @return the route, or null if it cannot be searched
+     */
+    private Route parseRoute(JsonParser parser, AirportCodes airportCodes) throws IOException {
+        String airportFrom = null;
+        String airportTo = null;
+        boolean ofOperator = false;
+        boolean searchable = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            // Field names are canonicalized by the parser, so getting one does not create a String
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (!searchable) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "airportFrom":
+                    airportFrom = airportCodes.get(parser, value);
+                    break;
+                case "airportTo":
+                    airportTo = airportCodes.get(parser, value);
+                    break;
+                case "connectingAirport":
+                    searchable = value == JsonToken.VALUE_NULL;
+                    break;
+                case "operator":
+                    ofOperator = value == JsonToken.VALUE_STRING && textEquals(parser, routeOperator);
+                    searchable = ofOperator;
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        // A route without an operator is not one of routeOperator's
+        if (!searchable || !ofOperator || airportFrom == null || airportTo == null) {
+            return null;
+        }
+        return new Route(airportFrom, airportTo, null, routeOperator);
+    }
+
+    private static boolean textEquals(JsonParser parser, String text) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        if (length != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open-addressed set of the airport codes of one response, looked up by the parser's character buffer so a code
+     * seen before is not created again.
+     */
+    private static final class AirportCodes {
+        private String[] codes = new String[512];
+        private int size;
+
+        /**
+         * @return the code of the current scalar value, or null if it is not one
+         */
+        String get(JsonParser parser, JsonToken value) throws IOException {
+            if (value == JsonToken.VALUE_NULL || !value.isScalarValue()) {
+                parser.skipChildren();
+                return null;
+            }
+            char[] chars = parser.getTextCharacters();
+            int offset = parser.getTextOffset();
+            int length = parser.getTextLength();
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[offset + i];
+            }
+
+            int mask = codes.length - 1;
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+                String code = codes[slot];
+                if (code == null) {
+                    code = new String(chars, offset, length);
+                    codes[slot] = code;
+                    if (++size * 2 > codes.length) {
+                        grow();
+                    }
+                    return code;
+                }
+                if (code.hashCode() == hash && matches(code, chars, offset, length)) {
+                    return code;
+                }
+            }
+        }
+
+        private void grow() {
+            String[] oldCodes = codes;
+            codes = new String[oldCodes.length * 2];
+            int mask = codes.length - 1;
+            for (String code : oldCodes) {
+                if (code == null) {
+                    continue;
+                }
+                int slot = spread(code.hashCode()) & mask;
+                while (codes[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                codes[slot] = code;
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(String code, char[] chars, int offset, int length) {
+            if (code.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (code.charAt(i) != chars[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,34 +1,76 @@
 package pw.peterwhite.flights.clients;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.UnknownHttpStatusCodeException;
 import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.cache.DiskCache;
+import pw.peterwhite.flights.cache.QueryResultCache;
+import pw.peterwhite.flights.cache.RouteSnapshot;
+import pw.peterwhite.flights.cache.RouteSnapshotCache;
+import pw.peterwhite.flights.cache.ScheduleCache;
+import pw.peterwhite.flights.cache.ScheduleMonthKey;
+import pw.peterwhite.flights.cache.SchedulePrefetcher;
+import pw.peterwhite.flights.cache.SingleFlight;
+import pw.peterwhite.flights.cache.UpstreamUsage;
+import pw.peterwhite.flights.cache.Validators;
 import pw.peterwhite.flights.config.FlightConfigProperties;
 import pw.peterwhite.flights.dto.Journey.Leg;
 import pw.peterwhite.flights.dto.Route;
 import pw.peterwhite.flights.dto.Schedule;
 import pw.peterwhite.flights.dto.Schedule.DayFlights;
+import pw.peterwhite.flights.metrics.FlightMetrics;
+import pw.peterwhite.flights.search.Timetable;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.net.URI;
-import java.time.LocalDate;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
 
 public class RyanairApiClient extends Client {
     private static final Log logger = LogFactory.getLog(RyanairApiClient.class);
@@ -36,34 +78,305 @@ public class RyanairApiClient extends Client {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    @Qualifier("monthFetchExecutor")
+    private Executor monthFetchExecutor;
+
+    @Autowired
+    private FlightMetrics flightMetrics;
+
+    // Null when routesRefreshPeriodMs is not configured, in which case every call goes to the Routes API
+    private RouteSnapshotCache routeSnapshotCache;
+    // Null when scheduleCacheMaxEntries or scheduleCacheTtlMs is not configured
+    private ScheduleCache scheduleCache;
+    // Maximum number of months of one route fetched at the same time. 1 or less fetches them one after the other
+    private final int monthFetchConcurrency;
+
+    // Concurrent requests for the same upstream URI share one call to the API
+    private final SingleFlight<URI, RouteSnapshot> routesInFlight = new SingleFlight<>();
+    private final SingleFlight<URI, FetchedMonth> schedulesInFlight = new SingleFlight<>();
+    // Null when routesStreamingParseEnabled is false, in which case the Routes API response is bound to List<Route>
+    private RouteStreamParser routeStreamParser;
+
+    // Null when upstreamRequestsPerSecond is not configured, in which case calls are not paced
+    private TokenBucket rateLimiter;
+    // Times a call rate-limited with a 429 is retried, and the base of its exponential backoff
+    private final int maxRetries;
+    private final long retryBackoffMs;
+    // Rate limit waits and retries of one call give up once they would take longer than this. 0 means no limit
+    private final long requestTimeoutMs;
+
+    private final AtomicLong throttledResponses = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong notModifiedResponses = new AtomicLong();
+
+    // Null when upstreamCircuitFailureThreshold is not configured, in which case calls are always made
+    private CircuitBreaker routesCircuitBreaker;
+    private CircuitBreaker schedulesCircuitBreaker;
+    // How long past their freshness cached routes and schedule months may be served when the APIs fail. 0 never serves them
+    private final long maxStalenessMs;
+    // Last routes fetched, kept for stale serving when the route cache is disabled
+    private volatile RouteSnapshot lastGoodRoutes;
+
+    private final AtomicLong staleServes = new AtomicLong();
+
+    // Null when diskCacheDir is not configured, in which case nothing survives a restart
+    private DiskCache diskCache;
+    // Null when prefetchRoutes is not configured or the schedule cache is disabled
+    private SchedulePrefetcher schedulePrefetcher;
+    // Null when queryCacheMaxEntries is not configured or the schedule cache is disabled
+    private QueryResultCache queryResultCache;
+    // Last routes loaded from the Routes API, to tell whether the next ones have changed
+    private volatile RouteSnapshot lastLoadedRoutes;
+
     @Autowired
     public RyanairApiClient(FlightConfigProperties flightConfigProperties) {
         this.baseUrl = flightConfigProperties.getRyanairApiClientBaseUrl();
+        long routesRefreshPeriodMs = flightConfigProperties.getRoutesRefreshPeriodMs();
+        if (routesRefreshPeriodMs > 0) {
+            this.routeSnapshotCache = RouteSnapshotCache.ofSnapshots(() -> persistRoutes(routesLoaded(fetchRoutes(null))),
+                    routesRefreshPeriodMs,
+                    flightConfigProperties.getRoutesMaxStalenessMs());
+        }
+        if (flightConfigProperties.getRoutesStreamingParseEnabled()) {
+            this.routeStreamParser = new RouteStreamParser(new JsonFactory(), flightConfigProperties.getRouteOperator());
+        }
+        int scheduleCacheMaxEntries = flightConfigProperties.getScheduleCacheMaxEntries();
+        long scheduleCacheTtlMs = flightConfigProperties.getScheduleCacheTtlMs();
+        if (scheduleCacheMaxEntries > 0 && scheduleCacheTtlMs > 0) {
+            this.scheduleCache = new ScheduleCache(scheduleCacheMaxEntries, scheduleCacheTtlMs);
+            int queryCacheMaxEntries = flightConfigProperties.getQueryCacheMaxEntries();
+            if (queryCacheMaxEntries > 0) {
+                // Results live as long as the schedule months they are searched from
+                this.queryResultCache = new QueryResultCache(queryCacheMaxEntries, scheduleCacheTtlMs,
+                        flightConfigProperties.getQueryCacheGranularityMs());
+            }
+        }
+        this.monthFetchConcurrency = flightConfigProperties.getMonthFetchConcurrency();
+        int requestsPerSecond = flightConfigProperties.getUpstreamRequestsPerSecond();
+        if (requestsPerSecond > 0) {
+            int requestBurst = flightConfigProperties.getUpstreamRequestBurst();
+            this.rateLimiter = new TokenBucket(requestsPerSecond, requestBurst > 0 ? requestBurst : requestsPerSecond);
+        }
+        this.maxRetries = flightConfigProperties.getUpstreamMaxRetries();
+        this.retryBackoffMs = Math.max(0, flightConfigProperties.getUpstreamRetryBackoffMs());
+        this.requestTimeoutMs = flightConfigProperties.getRequestTimeoutMs();
+        int circuitFailureThreshold = flightConfigProperties.getUpstreamCircuitFailureThreshold();
+        if (circuitFailureThreshold > 0) {
+            long circuitProbeIntervalMs = flightConfigProperties.getUpstreamCircuitProbeIntervalMs();
+            this.routesCircuitBreaker = new CircuitBreaker("Routes", circuitFailureThreshold, circuitProbeIntervalMs);
+            this.schedulesCircuitBreaker = new CircuitBreaker("Schedules", circuitFailureThreshold, circuitProbeIntervalMs);
+        }
+        this.maxStalenessMs = flightConfigProperties.getUpstreamMaxStalenessMs();
+        String diskCacheDir = flightConfigProperties.getDiskCacheDir();
+        if (!diskCacheDir.isEmpty()) {
+            try {
+                this.diskCache = new DiskCache(Paths.get(diskCacheDir), Math.max(0, maxStalenessMs));
+            } catch (IOException ex) {
+                logger.warn("Disk cache disabled, cannot use directory " + diskCacheDir + ": " + ex.getMessage());
+            }
+        }
+        String prefetchRoutes = flightConfigProperties.getPrefetchRoutes().trim();
+        if (scheduleCache != null && !prefetchRoutes.isEmpty()) {
+            Set<String> hotRoutes = new HashSet<>(Arrays.asList(prefetchRoutes.split("\\s*,\\s*")));
+            String routeOperator = flightConfigProperties.getRouteOperator();
+            int prefetchMonths = flightConfigProperties.getPrefetchMonths();
+            // Prefetching takes at most half of the upstream rate limit, leaving the rest to requests
+            long minIntervalMs = requestsPerSecond > 0 ? 2000L / requestsPerSecond : 0;
+            this.schedulePrefetcher = new SchedulePrefetcher(() -> getHotMonths(hotRoutes, routeOperator, prefetchMonths),
+                    scheduleCache,
+                    this::prefetchScheduleMonth,
+                    flightConfigProperties.getPrefetchPeriodMs(),
+                    minIntervalMs);
+        }
         logger.info("RyanairApiClient instantiated with baseUrl: " + baseUrl);
     }
 
     /**
-     * <b>getRoutes</b>: This method crafts a URI to the Routes API baseUrl/locate/3/routes/ and performs a HTTP GET to
-     * the API. It transforms the response into List\<Route\> and removes any null entries.
+     * Starts from the routes persisted by a previous run, if any, so the first requests don't wait for the Routes API.
+     * They keep the time they were loaded at, so they are refreshed, and served stale, as if there had been no restart.
+     */
+    @PostConstruct
+    public void loadPersistedRoutes() {
+        if (diskCache == null) {
+            return;
+        }
+        RouteSnapshot persistedRoutes = diskCache.getRoutes();
+        if (persistedRoutes == null) {
+            return;
+        }
+        logger.info("Persisted route snapshot found: " + persistedRoutes);
+        lastLoadedRoutes = persistedRoutes;
+        if (routeSnapshotCache != null) {
+            routeSnapshotCache.seed(persistedRoutes);
+        } else {
+            lastGoodRoutes = persistedRoutes;
+        }
+    }
+
+    @PostConstruct
+    public void startRouteRefresh() {
+        if (routeSnapshotCache != null) {
+            routeSnapshotCache.start();
+        }
+    }
+
+    @PreDestroy
+    public void stopRouteRefresh() {
+        if (routeSnapshotCache != null) {
+            routeSnapshotCache.stop();
+        }
+    }
+
+    @PostConstruct
+    public void startSchedulePrefetch() {
+        if (schedulePrefetcher != null) {
+            schedulePrefetcher.start();
+        }
+    }
+
+    @PreDestroy
+    public void stopSchedulePrefetch() {
+        if (schedulePrefetcher != null) {
+            schedulePrefetcher.stop();
+        }
+    }
+
+    @PreDestroy
+    public void closeDiskCache() {
+        if (diskCache != null) {
+            diskCache.close();
+        }
+    }
+
+    @PreDestroy
+    public void stopCircuitBreakerProbes() {
+        if (routesCircuitBreaker != null) {
+            routesCircuitBreaker.stop();
+            schedulesCircuitBreaker.stop();
+        }
+    }
+
+    /**
+     * <b>getRoutes</b>: Returns the route network. If the route cache is enabled, this is the current immutable
+     * snapshot, which is refreshed in the background and only loaded on the calling thread if there is no snapshot
+     * yet or it is older than the configured maximum staleness. Otherwise the Routes API is called directly.
+     * If the Routes API fails (or its circuit breaker is open), the last routes fetched are served instead as long as
+     * they are no older than upstreamMaxStalenessMs, and the request's {@link UpstreamUsage} is marked.
      *
-     * @return List of all routes from external API. Can be empty if none found (404 from Routes API)
+     * @return Unmodifiable list of all routes from external API. Can be empty if none found (404 from Routes API)
      * @throws ResponseStatusException:
-     *          * 500 if the API returns a 429 Too Many Requests (rate-limited)
+     *          * 500 if the API still returns a 429 Too Many Requests (rate-limited) after retrying, see {@link #exchange}
      *          * 500 if unexpected error occurs from the request to external API (such as UnknownHostException)
      *          * 502 if the API returns a 5xx or unknown status code
+     *          * 504 if the rate limiter has no call available before requestTimeoutMs
      */
     public List<Route> getRoutes() {
+        return getRoutes(UpstreamUsage.current());
+    }
+
+    /**
+     * <b>getRoutes</b>: See {@link #getRoutes()}, recording on the given UpstreamUsage (can be null).
+     */
+    public List<Route> getRoutes(UpstreamUsage upstreamUsage) {
+        try {
+            if (routeSnapshotCache != null) {
+                // Loads made by the background refresh are not counted against any request
+                return routeSnapshotCache.get();
+            }
+            if (maxStalenessMs <= 0) {
+                return routesLoaded(fetchRoutes(upstreamUsage)).getRoutes();
+            }
+            RouteSnapshot routes = persistRoutes(routesLoaded(fetchRoutes(upstreamUsage)));
+            lastGoodRoutes = routes;
+            return routes.getRoutes();
+        } catch (ResponseStatusException ex) {
+            RouteSnapshot staleRoutes = routeSnapshotCache != null ? routeSnapshotCache.getLastSnapshot() : lastGoodRoutes;
+            // A cached snapshot is only reloaded once past the cache's max staleness, so it is stale from then on
+            long freshMillis = routeSnapshotCache != null ? routeSnapshotCache.getMaxStalenessMillis() : 0;
+            if (maxStalenessMs <= 0 || staleRoutes == null
+                    || staleRoutes.isOlderThan(freshMillis + maxStalenessMs, System.currentTimeMillis())) {
+                throw ex;
+            }
+            logger.warn("Serving stale " + staleRoutes + " as the Routes API failed: " + ex.getMessage());
+            staleServes.incrementAndGet();
+            UpstreamUsage.markStale(upstreamUsage);
+            return staleRoutes.getRoutes();
+        }
+    }
+
+    /**
+     * Called with every route network loaded from the Routes API. If it is the same as the previous one (or was
+     * answered 304 Not Modified), the previous list is kept so the route index built on it is not rebuilt. Otherwise
+     * the query cache is invalidated.
+     *
+     * @return the snapshot to use from now on
+     */
+    private RouteSnapshot routesLoaded(RouteSnapshot routes) {
+        RouteSnapshot previousRoutes = lastLoadedRoutes;
+        if (previousRoutes != null && previousRoutes.hasSameRoutes(routes)) {
+            routes = previousRoutes.reloaded(routes.getLoadedAtMillis(), routes.getValidators());
+        } else if (queryResultCache != null && previousRoutes != null) {
+            logger.info("Route network changed, invalidating query cache: " + routes);
+            queryResultCache.invalidateRoutes();
+        }
+        lastLoadedRoutes = routes;
+        return routes;
+    }
+
+    /**
+     * Writes the routes to the disk cache, if enabled, fresh for as long as the route cache would use them without
+     * reloading (not at all when it is disabled) and usable for upstreamMaxStalenessMs after that.
+     */
+    private RouteSnapshot persistRoutes(RouteSnapshot routes) {
+        if (diskCache != null) {
+            long freshMillis = routeSnapshotCache != null ? routeSnapshotCache.getMaxStalenessMillis() : 0;
+            diskCache.putRoutes(routes, routes.getLoadedAtMillis() + freshMillis);
+        }
+        return routes;
+    }
+
+    /**
+     * <b>fetchRoutes</b>: This method crafts a URI to the Routes API baseUrl/locate/3/routes/ and performs a HTTP GET to
+     * the API, unless the same request is already in flight, in which case its result is shared.
+     * It transforms the response into List\<Route\> and removes any null entries. With routesStreamingParseEnabled the
+     * response is instead streamed through a {@link RouteStreamParser}, which only keeps the routes that can be
+     * searched.
+     * The request is conditional on the validators of the last routes loaded, if any, and a 304 Not Modified answer
+     * gives those routes again without a body to parse.
+     * Calls made are counted on upstreamUsage (can be null), calls shared with another request are not.
+     */
+    private RouteSnapshot fetchRoutes(UpstreamUsage upstreamUsage) {
         String routesApiPath = "/locate/3/routes/";
         final URI routesApi = URI.create(baseUrl + routesApiPath);
+        RouteSnapshot previousRoutes = lastLoadedRoutes;
+        return routesInFlight.load(routesApi, () -> requestRoutes(routesApiPath, routesApi, previousRoutes, upstreamUsage));
+    }
+
+    private RouteSnapshot requestRoutes(String routesApiPath, URI routesApi, RouteSnapshot previousRoutes, UpstreamUsage upstreamUsage) {
         logger.info("Making request to Routes API: " + routesApiPath);
+        HttpEntity<Void> request = conditionalRequest(previousRoutes != null ? previousRoutes.getValidators() : Validators.NONE);
         ResponseEntity<List<Route>> result;
         try {
-            // Make call to Routes API using restTemplate.exchange(url, httpMethod, requestEntity, responseType)
-            result = restTemplate.exchange(routesApi,
-                    HttpMethod.GET,
-                    null,
-                    new ParameterizedTypeReference<List<Route>>() {
-                    });
+            if (routeStreamParser != null) {
+                // Make call to Routes API using restTemplate.execute(url, httpMethod, requestCallback, responseExtractor)
+                result = exchange("Routes", routesCircuitBreaker, routesApi, upstreamUsage, () -> restTemplate.execute(routesApi,
+                        HttpMethod.GET,
+                        clientRequest -> {
+                            clientRequest.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+                            if (request != null) {
+                                clientRequest.getHeaders().putAll(request.getHeaders());
+                            }
+                        },
+                        this::parseRoutes));
+            } else {
+                // Make call to Routes API using restTemplate.exchange(url, httpMethod, requestEntity, responseType)
+                result = exchange("Routes", routesCircuitBreaker, routesApi, upstreamUsage, () -> restTemplate.exchange(routesApi,
+                        HttpMethod.GET,
+                        request,
+                        new ParameterizedTypeReference<List<Route>>() {
+                        }));
+            }
         } catch (HttpClientErrorException ex) {
             // API returned 4xx
             switch (ex.getRawStatusCode()) {
@@ -74,13 +387,13 @@ public class RyanairApiClient extends Client {
                     logger.info("No data found from Routes API");
                     break;
                 case 429:
-                    // Should implement retry mechanism for this, but for now, just throw a 500 error
+                    // Still rate-limited after any retries, give up on the request
                     logger.info("Rate-limited by Routes API");
                     throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server has been rate-limited by Upstream API");
                 default:
                     logger.warn("Routes API returned an unexpected 4xx: " + ex.getMessage());
             }
-            return Collections.emptyList();
+            return new RouteSnapshot(Collections.emptyList(), System.currentTimeMillis());
         } catch (HttpServerErrorException ex) {
             // API returned 5xx
             logger.error("Routes API Server error: " + ex.getMessage());
@@ -89,146 +402,709 @@ public class RyanairApiClient extends Client {
             // API returned unknown status code
             logger.error("Routes API returned unknown HTTP status: " + ex.getMessage());
             throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream Routes API error");
+        } catch (ResponseStatusException ex) {
+            // From the rate limiter or an open circuit breaker, already has its status code
+            throw ex;
         } catch (Exception ex) {
             // All other errors eg UnknownHostException. Code reachable if the network is down, cannot resolve baseURL host, etc
             logger.error("Unexpected error when communicating with Routes API: " + ex.getMessage());
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Upstream Routes API error");
         }
 
+        if (result.getStatusCode() == HttpStatus.NOT_MODIFIED && previousRoutes != null) {
+            notModifiedResponses.incrementAndGet();
+            logger.info("Routes not modified since " + previousRoutes);
+            return previousRoutes.reloaded(System.currentTimeMillis(), previousRoutes.getValidators().updatedWith(validators(result)));
+        }
         List<Route> routes = result.getBody();
-        if (routes != null) {
-            routes.removeIf(Objects::isNull);
+        if (routes == null) {
+            return new RouteSnapshot(Collections.emptyList(), System.currentTimeMillis());
         }
-        return routes;
+        routes.removeIf(Objects::isNull);
+        return new RouteSnapshot(routes, System.currentTimeMillis(), validators(result));
+    }
+
+    /**
+     * Streams a Routes API response, that did not fail, through the {@link RouteStreamParser}.
+     *
+     * @throws RestClientException if the response is not a JSON array of routes, as it is when binding it fails
+     */
+    private ResponseEntity<List<Route>> parseRoutes(ClientHttpResponse response) throws IOException {
+        List<Route> routes;
+        try {
+            routes = routeStreamParser.parse(response.getBody());
+        } catch (JsonProcessingException ex) {
+            throw new RestClientException("Error while extracting routes from Routes API response", ex);
+        }
+        return new ResponseEntity<>(routes, response.getHeaders(), response.getStatusCode());
     }
 
     /**
-     * <b>getSchedules</b>: This method crafts a URI to the Schedules API - baseUrl/timtbl/3/{departure}/{arrival}/years/{year}/months/{month}
-     * It does this for the given Route multiple times for each year and month in the given time-frame, and collects them into a Schedule object.
-     * It flattens this structure to a Leg DTO and filters out the flight date-times that are not in the specified time range.
+     * <b>getSchedules</b>: Collects the flights of the given Route for each year and month in the given time-frame, from
+     * the Schedules API (see {@link #getScheduleMonth}) or the schedule cache if enabled.
+     * It filters out the flight date-times that are not in the specified time range.
      * If no Schedule is found for a given route/year/month (404 from the API), it simply continues to the next month.
+     * Stale months served instead of failing are recorded on the calling thread's {@link UpstreamUsage}.
      *
      * @param route: The route to check. Consists of departure airport and arrival airport in IATA code format
      * @param departureDateTime: departure date-time in the timezone of departure airport
      * @param arrivalDateTime: arrival date-time in the timezone of arrival airport
-     * @return List of all available flights in the specified time range for the given route. Represented as a Leg (see DTO for details)
+     * @return List of all available flights in the specified time range for the given route. Represented as a Leg (see DTO for details).
+     *          Sorted by departure, rather than in the order the API lists them, as the months are held as Timetables
      * @throws  ResponseStatusException:
-     *          * 500 if the API returns a 429 Too Many Requests (rate-limited)
+     *          * 500 if the API still returns a 429 Too Many Requests (rate-limited) after retrying, see {@link #exchange}
      *          * 500 if unexpected error occurs from the request to external API (such as UnknownHostException)
      *          * 502 if the API returns a 5xx or unknown status code
+     *          * 504 if the rate limiter has no call available before requestTimeoutMs
      */
     public List<Leg> getSchedules(Route route, LocalDateTime departureDateTime, LocalDateTime arrivalDateTime) {
+        return getSchedules(route, departureDateTime, arrivalDateTime, UpstreamUsage.current());
+    }
+
+    /**
+     * <b>getSchedules</b>: See {@link #getSchedules(Route, LocalDateTime, LocalDateTime)}. For callers running on
+     * another thread than the request's, with the request's UpstreamUsage (can be null).
+     */
+    public List<Leg> getSchedules(Route route, LocalDateTime departureDateTime, LocalDateTime arrivalDateTime, UpstreamUsage upstreamUsage) {
+        return getTimetable(route, departureDateTime, arrivalDateTime, upstreamUsage).toLegs();
+    }
+
+    /**
+     * <b>getTimetable</b>: Same flights as {@link #getSchedules(Route, LocalDateTime, LocalDateTime, UpstreamUsage)},
+     * left as a {@link Timetable} for callers that only need Legs for some of them.
+     */
+    public Timetable getTimetable(Route route, LocalDateTime departureDateTime, LocalDateTime arrivalDateTime, UpstreamUsage upstreamUsage) {
         String airportFrom = route.getAirportFrom();
         String airportTo = route.getAirportTo();
         if (airportFrom == null || airportTo == null) {
             logger.warn("Malformed route");
-            return Collections.emptyList();
+            return Timetable.EMPTY;
         }
 
-        List<Leg> availableLegs = new ArrayList<>();
-
-        String scheduleApiPath = "/timtbl/3/schedules/%s/%s/years/%s/months/%s";
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth month = YearMonth.from(departureDateTime);
+             !month.isAfter(YearMonth.from(arrivalDateTime));
+             month = month.plusMonths(1)) {
+            months.add(month);
+        }
 
-        // For each month, get the schedules for our Route. Flatten the response to a dto.Journey.Leg format and
-        // filter to those which fit within our departure-arrival date-times.
+        // For each month, get the schedules for our Route and filter to those which fit within our departure-arrival date-times.
         // Assumption is made here that there are no departing flights that arrive the day before in a
         // different timezone. Edge case scenario could cause this loop to fail where a flight departs on 12:01AM on 1/1/2020
         // but arrives at 11:59PM on 31/12/2019. All flights must depart and land on the same day in their local times.
-        for (LocalDateTime dateTime = departureDateTime;
-             !YearMonth.from(dateTime).isAfter(YearMonth.from(arrivalDateTime));
-             dateTime = dateTime.plusMonths(1)) {
+        List<Timetable> monthlySchedules = monthFetchConcurrency > 1 && months.size() > 1
+                ? getScheduleMonthsConcurrently(airportFrom, airportTo, months, upstreamUsage)
+                : getScheduleMonthsSerially(airportFrom, airportTo, months, upstreamUsage);
+
+        // Flight departure is at or after our specified departure date-time, and arrival at or before our specified
+        // arrival date-time
+        return Timetable.within(monthlySchedules, departureDateTime, arrivalDateTime);
+    }
+
+    private List<Timetable> getScheduleMonthsSerially(String airportFrom, String airportTo, List<YearMonth> months, UpstreamUsage upstreamUsage) {
+        List<Timetable> monthlySchedules = new ArrayList<>(months.size());
+        for (YearMonth month : months) {
+            monthlySchedules.add(getScheduleMonth(airportFrom, airportTo, month.getYear(), month.getMonthValue(), upstreamUsage));
+        }
+        return monthlySchedules;
+    }
+
+    /**
+     * Fetches the months of a route on the month fetch executor, with at most monthFetchConcurrency requests in flight.
+     * Each of the monthFetchConcurrency lanes walks every n-th month in turn, and results are put back in month order.
+     * The first month to fail stops the lanes from starting any more requests, and its error is thrown for the route.
+     */
+    private List<Timetable> getScheduleMonthsConcurrently(String airportFrom, String airportTo, List<YearMonth> months, UpstreamUsage upstreamUsage) {
+        int lanes = Math.min(monthFetchConcurrency, months.size());
+        AtomicReferenceArray<Timetable> monthlySchedules = new AtomicReferenceArray<>(months.size());
+        AtomicBoolean failed = new AtomicBoolean();
+
+        CompletableFuture<?>[] laneFutures = new CompletableFuture<?>[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            int firstMonth = lane;
+            laneFutures[lane] = CompletableFuture.runAsync(() -> {
+                for (int i = firstMonth; i < months.size() && !failed.get(); i += lanes) {
+                    YearMonth month = months.get(i);
+                    try {
+                        monthlySchedules.set(i, getScheduleMonth(airportFrom, airportTo, month.getYear(), month.getMonthValue(), upstreamUsage));
+                    } catch (RuntimeException ex) {
+                        failed.set(true);
+                        throw ex;
+                    }
+                }
+            }, monthFetchExecutor);
+        }
 
-            int year = dateTime.getYear();
-            int month = dateTime.getMonthValue();
+        try {
+            CompletableFuture.allOf(laneFutures).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                // ResponseStatusException from getScheduleMonth, keep its status code
+                throw (RuntimeException) ex.getCause();
+            }
+            logger.error("Unexpected error when fetching Schedules concurrently: " + ex.getMessage());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Upstream Schedules API error");
+        }
 
-            String apiPath = String.format(scheduleApiPath, airportFrom, airportTo, year, month);
-            URI schedulesApi = URI.create(baseUrl + apiPath);
+        List<Timetable> orderedSchedules = new ArrayList<>(months.size());
+        for (int i = 0; i < months.size(); i++) {
+            orderedSchedules.add(monthlySchedules.get(i));
+        }
+        return orderedSchedules;
+    }
 
-            logger.info("Making request to Schedules API: " + apiPath);
+    /**
+     * <b>getScheduleMonth</b>: Returns every flight of the route in the given month, flattened to a Timetable. Served from the
+     * schedule cache when enabled and the month is cached, then from the disk cache when enabled and the month was
+     * persisted and has not expired, otherwise fetched from the Schedules API (and then cached and persisted).
+     * If the fetch fails (or the circuit breaker is open), an expired cached or persisted month no older than
+     * upstreamMaxStalenessMs past its expiry is served instead.
+     *
+     * @return the month's flights. Empty if the API has no Schedule for it (404)
+     * @throws ResponseStatusException: see {@link #getSchedules}
+     */
+    public Timetable getScheduleMonth(String airportFrom, String airportTo, int year, int month) {
+        return getScheduleMonth(airportFrom, airportTo, year, month, UpstreamUsage.current());
+    }
 
-            ResponseEntity<Schedule> result;
+    /**
+     * <b>getScheduleMonth</b>: See {@link #getScheduleMonth(String, String, int, int)}. For callers running on another
+     * thread than the request's, with the request's UpstreamUsage (can be null).
+     */
+    public Timetable getScheduleMonth(String airportFrom, String airportTo, int year, int month, UpstreamUsage upstreamUsage) {
+        if (scheduleCache == null) {
+            FetchedMonth fetched = fetchScheduleMonth(airportFrom, airportTo, year, month, null, upstreamUsage);
+            return fetched == null ? Timetable.EMPTY : fetched.flights;
+        }
+
+        ScheduleMonthKey key = new ScheduleMonthKey(airportFrom, airportTo, year, month);
+        ScheduleCache.Entry cachedEntry = scheduleCache.getEntry(key);
+        if (cachedEntry != null) {
+            UpstreamUsage.recordExpiry(upstreamUsage, cachedEntry.getExpiresAtMillis());
+            return cachedEntry.getTimetable();
+        }
+
+        // Persisted months keep their original expiry, they are not made fresh again by the restart
+        DiskCache.Entry<Timetable> persistedFlights = diskCache != null ? diskCache.getScheduleMonth(key) : null;
+        if (persistedFlights != null && persistedFlights.isFresh(System.currentTimeMillis())) {
+            UpstreamUsage.recordExpiry(upstreamUsage, persistedFlights.getExpiresAtMillis());
+            return scheduleCache.put(key, persistedFlights.getValue(), persistedFlights.getExpiresAtMillis());
+        }
+
+        FetchedMonth fetched;
+        try {
+            // Revalidates the expired month if it is still cached
+            fetched = fetchScheduleMonth(airportFrom, airportTo, year, month, scheduleCache.peek(key), upstreamUsage);
+        } catch (ResponseStatusException ex) {
+            Timetable staleFlights = maxStalenessMs > 0 ? scheduleCache.getStale(key, maxStalenessMs) : null;
+            if (staleFlights == null && maxStalenessMs > 0 && persistedFlights != null) {
+                // The disk cache only hands out months no older than upstreamMaxStalenessMs past their expiry
+                staleFlights = persistedFlights.getValue();
+            }
+            if (staleFlights == null) {
+                throw ex;
+            }
+            logger.warn("Serving stale Schedules for " + key + " as the Schedules API failed: " + ex.getMessage());
+            staleServes.incrementAndGet();
+            UpstreamUsage.markStale(upstreamUsage);
+            return staleFlights;
+        }
+        if (fetched == null) {
+            // Not a definitive answer from the API (eg. 400), so don't cache it
+            return Timetable.EMPTY;
+        }
+        return cacheScheduleMonth(key, fetched, upstreamUsage);
+    }
+
+    /**
+     * Caches and persists a month fetched from the Schedules API, or makes the cached one fresh again if it was not
+     * modified. If a previous fetch of it is still cached and had other flights, the query results that may have used
+     * it are invalidated. Its expiry is recorded on upstreamUsage (can be null).
+     */
+    private Timetable cacheScheduleMonth(ScheduleMonthKey key, FetchedMonth fetched, UpstreamUsage upstreamUsage) {
+        Timetable flights = fetched.flights;
+        long expiresAtMillis = System.currentTimeMillis() + scheduleCache.getTtlMillis();
+        UpstreamUsage.recordExpiry(upstreamUsage, expiresAtMillis);
+        if (diskCache != null) {
+            diskCache.putScheduleMonth(key, flights, expiresAtMillis);
+        }
+        ScheduleCache.Entry previousEntry = queryResultCache != null ? scheduleCache.peek(key) : null;
+        Timetable previousFlights = previousEntry != null ? previousEntry.getTimetable() : null;
+        Timetable cachedFlights = scheduleCache.put(key, flights, expiresAtMillis, fetched.validators);
+        if (previousFlights != null && !previousFlights.hasSameFlights(flights)) {
+            logger.info("Schedules of " + key + " changed, invalidating query cache");
+            queryResultCache.invalidateScheduleMonth(key);
+        }
+        return cachedFlights;
+    }
+
+    /**
+     * <b>getHotMonths</b>: The months the schedule prefetcher keeps cached: this month and the next prefetchMonths - 1 of
+     * every route of the network that is one of the hot routes (as "DUB-SXF"), or from or to one of the hot airports
+     * (as "DUB"). Earliest months come first, as they are the most searched.
+     */
+    private List<ScheduleMonthKey> getHotMonths(Set<String> hotRoutes, String routeOperator, int prefetchMonths) {
+        List<Route> routes = new ArrayList<>();
+        for (Route route : getRoutes(null)) {
+            if (route.getConnectingAirport() != null || !routeOperator.equals(route.getOperator())
+                    || route.getAirportFrom() == null || route.getAirportTo() == null) {
+                continue;
+            }
+            if (hotRoutes.contains(route.getAirportFrom()) || hotRoutes.contains(route.getAirportTo())
+                    || hotRoutes.contains(route.getAirportFrom() + "-" + route.getAirportTo())) {
+                routes.add(route);
+            }
+        }
+
+        Set<ScheduleMonthKey> hotMonths = new LinkedHashSet<>();
+        YearMonth month = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i < prefetchMonths; i++, month = month.plusMonths(1)) {
+            for (Route route : routes) {
+                hotMonths.add(new ScheduleMonthKey(route.getAirportFrom(), route.getAirportTo(), month.getYear(), month.getMonthValue()));
+            }
+        }
+        return new ArrayList<>(hotMonths);
+    }
+
+    /**
+     * Fetches a hot month for the schedule prefetcher. One that is not cached yet is looked up like any other, so the
+     * disk cache is used if it has the month. One that is cached is revalidated with the Schedules API, as it is
+     * about to expire. Not counted against any request.
+     */
+    private void prefetchScheduleMonth(ScheduleMonthKey key) {
+        ScheduleCache.Entry cachedEntry = scheduleCache.peek(key);
+        if (cachedEntry == null) {
+            getScheduleMonth(key.getAirportFrom(), key.getAirportTo(), key.getYear(), key.getMonth(), null);
+            return;
+        }
+        FetchedMonth fetched = fetchScheduleMonth(key.getAirportFrom(), key.getAirportTo(), key.getYear(), key.getMonth(), cachedEntry, null);
+        if (fetched != null) {
+            cacheScheduleMonth(key, fetched, null);
+        }
+    }
+
+    /**
+     * @return the route snapshot cache, or null if it is disabled
+     */
+    public RouteSnapshotCache getRouteSnapshotCache() {
+        return routeSnapshotCache;
+    }
+
+    /**
+     * @return the schedule cache, or null if it is disabled. Exposes the hit, miss and eviction counters
+     */
+    public ScheduleCache getScheduleCache() {
+        return scheduleCache;
+    }
+
+    /**
+     * @return the disk cache, or null if it is disabled. Exposes the hit, miss and write counters
+     */
+    public DiskCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * @return the query result cache, or null if it is disabled. Exposes the hit, miss and invalidation counters
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * @return the schedule prefetcher, or null if it is disabled. Exposes whether the warm-up is done
+     */
+    public SchedulePrefetcher getSchedulePrefetcher() {
+        return schedulePrefetcher;
+    }
+
+    /**
+     * @return number of Routes and Schedules API calls saved by sharing an identical request that was already in flight
+     */
+    public long getCoalescedCalls() {
+        return routesInFlight.getCoalesced() + schedulesInFlight.getCoalesced();
+    }
+
+    /**
+     * @return the rate limiter, or null if it is disabled. Exposes how often and how long calls waited for it
+     */
+    public TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return number of 429 Too Many Requests responses from the Routes and Schedules APIs, retried or not
+     */
+    public long getThrottledResponses() {
+        return throttledResponses.get();
+    }
+
+    /**
+     * @return number of rate-limited calls that were retried
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return upstream calls answered 304 Not Modified, whose cached routes or schedule month were used again
+     */
+    public long getNotModifiedResponses() {
+        return notModifiedResponses.get();
+    }
+
+    /**
+     * @return the circuit breaker of the Routes API, or null if circuit breakers are disabled
+     */
+    public CircuitBreaker getRoutesCircuitBreaker() {
+        return routesCircuitBreaker;
+    }
+
+    /**
+     * @return the circuit breaker of the Schedules API, or null if circuit breakers are disabled
+     */
+    public CircuitBreaker getSchedulesCircuitBreaker() {
+        return schedulesCircuitBreaker;
+    }
+
+    /**
+     * @return number of times stale routes or a stale schedule month were served because an API failed
+     */
+    public long getStaleServes() {
+        return staleServes.get();
+    }
+
+    /**
+     * <b>fetchScheduleMonth</b>: This method crafts a URI to the Schedules API - baseUrl/timtbl/3/{departure}/{arrival}/years/{year}/months/{month}
+     * and performs a HTTP GET to the API, unless the same request is already in flight, in which case its result is
+     * shared. It flattens the returned Schedule to a Timetable.
+     * The request is conditional on the validators of the cached entry, if any, and a 304 Not Modified answer gives
+     * its flights again without a body to parse.
+     *
+     * @param cachedEntry: the month as cached, however old, or null if it is not cached
+     * @return the month's flights and validators, an empty Timetable if there is no Schedule for the month (404 or
+     *          empty body), or null for any other 4xx the month is skipped for
+     */
+    private FetchedMonth fetchScheduleMonth(String airportFrom, String airportTo, int year, int month, ScheduleCache.Entry cachedEntry,
+                                            UpstreamUsage upstreamUsage) {
+        String scheduleApiPath = "/timtbl/3/schedules/%s/%s/years/%s/months/%s";
+        String apiPath = String.format(scheduleApiPath, airportFrom, airportTo, year, month);
+        URI schedulesApi = URI.create(baseUrl + apiPath);
+        return schedulesInFlight.load(schedulesApi, () -> requestScheduleMonth(airportFrom, airportTo, year, apiPath, schedulesApi, cachedEntry, upstreamUsage));
+    }
+
+    private FetchedMonth requestScheduleMonth(String airportFrom, String airportTo, int year, String apiPath, URI schedulesApi,
+                                              ScheduleCache.Entry cachedEntry, UpstreamUsage upstreamUsage) {
+        logger.info("Making request to Schedules API: " + apiPath);
+
+        HttpEntity<Void> request = conditionalRequest(cachedEntry != null ? cachedEntry.getValidators() : Validators.NONE);
+        ResponseEntity<Schedule> result;
+        try {
+            // Make call to Schedules API using restTemplate.exchange(url, httpMethod, requestEntity, responseType)
+            result = exchange("Schedules", schedulesCircuitBreaker, schedulesApi, upstreamUsage, () -> restTemplate.exchange(schedulesApi,
+                    HttpMethod.GET,
+                    request,
+                    Schedule.class));
+        } catch (HttpClientErrorException ex) {
+            // API returned 4xx
+            switch (ex.getRawStatusCode()) {
+                case 400:
+                    logger.info("Bad params supplied to Schedules API: " + ex.getMessage());
+                    break;
+                case 404:
+                    logger.info("No data found from Schedules API");
+                    return new FetchedMonth(Timetable.EMPTY, Validators.NONE);
+                case 429:
+                    // Still rate-limited after any retries, give up on the request
+                    logger.info("Rate-limited by Schedules API");
+                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server has been rate-limited by Upstream API");
+                default:
+                    logger.warn("Schedules API returned an unexpected 4xx: " + ex.getMessage());
+            }
+            return null;
+        } catch (HttpServerErrorException ex) {
+            // API returned 5xx. Return to user instead of continuing as may return incomplete results.
+            logger.error("Schedules API Response error: " + ex.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream Schedules API error");
+        } catch (UnknownHttpStatusCodeException ex) {
+            logger.error("Schedules API returned unknown HTTP status: " + ex.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream Schedules API error");
+        } catch (ResponseStatusException ex) {
+            // From the rate limiter or an open circuit breaker, already has its status code
+            throw ex;
+        } catch (Exception ex) {
+            // All other errors eg UnknownHostException. Code reachable if the network is down, cannot resolve baseURL host, etc
+            logger.error("Unexpected error when communicating with Schedules API: " + ex.getMessage());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Upstream Schedules API error");
+        }
+
+        if (result.getStatusCode() == HttpStatus.NOT_MODIFIED && cachedEntry != null) {
+            notModifiedResponses.incrementAndGet();
+            logger.info("Schedules not modified: " + apiPath);
+            return new FetchedMonth(cachedEntry.getTimetable(), cachedEntry.getValidators().updatedWith(validators(result)));
+        }
+        Schedule schedule = result.getBody();
+        if (schedule == null) {
+            return new FetchedMonth(Timetable.EMPTY, Validators.NONE);
+        }
+
+        return new FetchedMonth(flattenSchedule(airportFrom, airportTo, year, schedule), validators(result));
+    }
+
+    /**
+     * @return a request conditional on the validators, or null (no headers) if there are none
+     */
+    private static HttpEntity<Void> conditionalRequest(Validators validators) {
+        if (validators.isEmpty()) {
+            return null;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (validators.getETag() != null) {
+            headers.setIfNoneMatch(validators.getETag());
+        }
+        if (validators.getLastModified() != null) {
+            // Sent back exactly as the API gave it, rather than reformatted
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified());
+        }
+        return new HttpEntity<>(headers);
+    }
+
+    private static Validators validators(ResponseEntity<?> response) {
+        HttpHeaders headers = response.getHeaders();
+        return new Validators(headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED));
+    }
+
+    /**
+     * <b>exchange</b>: Makes an upstream call once the rate limiter (if enabled) allows it. A call rate-limited with a
+     * 429 is retried up to upstreamMaxRetries times, after the Retry-After the API asked for, or otherwise a jittered
+     * exponential backoff. The rate limiter is paused for that long too, so other calls back off with it.
+     * Waiting is bounded by requestTimeoutMs from the first attempt.
+     * 5xx and failures to get a response count against the circuit breaker (if enabled), and no call is made while it
+     * is open.
+     * Each attempt is timed by status on {@link FlightMetrics} and counted on upstreamUsage (can be null).
+     *
+     * @throws HttpClientErrorException the last 429 once retries are used up or the next one would be too late
+     * @throws ResponseStatusException 502 if the circuit breaker is open, 504 if the rate limiter has no call available
+     *          in time, 500 if interrupted
+     */
+    private <T> ResponseEntity<T> exchange(String api, CircuitBreaker circuitBreaker, URI uri, UpstreamUsage upstreamUsage,
+                                           Supplier<ResponseEntity<T>> call) {
+        if (circuitBreaker != null && circuitBreaker.isOpen()) {
+            logger.info(api + " API circuit breaker is open, not calling " + uri.getPath());
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream " + api + " API unavailable");
+        }
+
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs);
+        for (int attempt = 0; ; attempt++) {
+            if (rateLimiter != null) {
+                long waitNanos = rateLimiter.reserve(remainingNanos(deadlineNanos));
+                if (waitNanos < 0) {
+                    logger.error("No " + api + " API call available from the rate limiter in time");
+                    throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Upstream " + api + " API rate limit reached");
+                }
+                sleep(waitNanos);
+            }
+
+            ResponseEntity<T> response;
             try {
-                // Make call to Schedules API using restTemplate.exchange(url, httpMethod, requestEntity, responseType)
-                result = restTemplate.exchange(schedulesApi,
-                        HttpMethod.GET,
-                        null,
-                        Schedule.class);
+                UpstreamUsage.recordCall(upstreamUsage);
+                response = timedCall(api, call);
+            } catch (HttpServerErrorException | UnknownHttpStatusCodeException | ResourceAccessException ex) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.recordFailure(() -> probe(uri));
+                }
+                throw ex;
             } catch (HttpClientErrorException ex) {
-                // API returned 4xx
-                switch (ex.getRawStatusCode()) {
-                    case 400:
-                        logger.info("Bad params supplied to Schedules API: " + ex.getMessage());
-                        break;
-                    case 404:
-                        logger.info("No data found from Schedules API");
-                        break;
-                    case 429:
-                        // Should implement retry mechanism for this, but for now, just throw a 500 error
-                        logger.info("Rate-limited by Schedules API");
-                        throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server has been rate-limited by Upstream API");
-                    default:
-                        logger.warn("Schedules API returned an unexpected 4xx: " + ex.getMessage());
+                if (circuitBreaker != null) {
+                    // The API is up, it just didn't like the request
+                    circuitBreaker.recordSuccess();
                 }
+                if (ex.getRawStatusCode() != 429) {
+                    throw ex;
+                }
+                throttledResponses.incrementAndGet();
+                long delayNanos = TimeUnit.MILLISECONDS.toNanos(retryDelayMs(ex.getResponseHeaders(), attempt));
+                if (rateLimiter != null) {
+                    rateLimiter.pause(delayNanos);
+                }
+                if (attempt >= maxRetries || delayNanos > remainingNanos(deadlineNanos)) {
+                    throw ex;
+                }
+                retries.incrementAndGet();
+                logger.info("Rate-limited by " + api + " API, retrying in " + TimeUnit.NANOSECONDS.toMillis(delayNanos) + "ms");
+                sleep(delayNanos);
                 continue;
-            } catch (HttpServerErrorException ex) {
-                // API returned 5xx. Return to user instead of continuing as may return incomplete results.
-                logger.error("Schedules API Response error: " + ex.getMessage());
-                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream Schedules API error");
-            } catch (UnknownHttpStatusCodeException ex) {
-                logger.error("Schedules API returned unknown HTTP status: " + ex.getMessage());
-                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream Schedules API error");
-            } catch (Exception ex) {
-                // All other errors eg UnknownHostException. Code reachable if the network is down, cannot resolve baseURL host, etc
-                logger.error("Unexpected error when communicating with Schedules API: " + ex.getMessage());
-                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Upstream Schedules API error");
-            }
-
-            Schedule schedule = result.getBody();
-            if (schedule == null) {
-                continue;
             }
+            if (circuitBreaker != null) {
+                circuitBreaker.recordSuccess();
+            }
+            return response;
+        }
+    }
 
-            List<Leg> schedules = flattenSchedule(airportFrom, airportTo, year, schedule);
+    /**
+     * Makes the call, timing it on {@link FlightMetrics} with the status it was answered with, IO_ERROR if none.
+     */
+    private <T> ResponseEntity<T> timedCall(String api, Supplier<ResponseEntity<T>> call) {
+        long startNanos = System.nanoTime();
+        String status = FlightMetrics.IO_ERROR;
+        try {
+            ResponseEntity<T> response = call.get();
+            status = String.valueOf(response.getStatusCodeValue());
+            return response;
+        } catch (RestClientResponseException ex) {
+            status = String.valueOf(ex.getRawStatusCode());
+            throw ex;
+        } finally {
+            flightMetrics.recordUpstreamCall(api, status, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Repeats a failed call for an open circuit breaker, bypassing the breaker and rate limiter. Any 4xx means the API
+     * is answering again. The body is not parsed.
+     */
+    private void probe(URI uri) {
+        try {
+            restTemplate.exchange(uri, HttpMethod.GET, null, String.class);
+        } catch (HttpClientErrorException ex) {
+            logger.debug("Probe of " + uri.getPath() + " answered " + ex.getRawStatusCode());
+        }
+    }
 
-            // Flight departure is at or after our specified departure date-time ie
-            Predicate<Leg> departurePredicate = flight -> flight.getDepartureTime().isAfter(departureDateTime) ||
-                    flight.getDepartureTime().isEqual(departureDateTime);
+    private long remainingNanos(long deadlineNanos) {
+        return requestTimeoutMs > 0 ? Math.max(0, deadlineNanos - System.nanoTime()) : Long.MAX_VALUE;
+    }
 
-            // Flight arrival is at or after our specified arrival date-time
-            Predicate<Leg> arrivalPredicate = flight -> flight.getArrivalTime().isBefore(arrivalDateTime) ||
-                    flight.getArrivalTime().isEqual(arrivalDateTime);
+    /**
+     * @return the Retry-After of the 429 if it has one, otherwise a random delay of up to retryBackoffMs doubled for
+     *          each attempt. A little jitter is added to Retry-After too, so waiting calls don't all retry at once
+     */
+    long retryDelayMs(HttpHeaders headers, int attempt) {
+        long jitterMs = ThreadLocalRandom.current().nextLong(retryBackoffMs + 1);
+        Long retryAfterMs = parseRetryAfterMs(headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER));
+        if (retryAfterMs != null) {
+            return retryAfterMs + jitterMs;
+        }
+        long backoffMs = retryBackoffMs << Math.min(attempt, 16);
+        return ThreadLocalRandom.current().nextLong(backoffMs + 1);
+    }
 
-            List<Leg> filteredSchedules = schedules.stream()
-                    .filter(departurePredicate.and(arrivalPredicate))
-                    .collect(Collectors.toList());
+    /**
+     * @return the Retry-After header in milliseconds from now, given either as seconds or as a HTTP date, or null if
+     *          there is none or it cannot be parsed
+     */
+    static Long parseRetryAfterMs(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return null;
+        }
+        String value = retryAfter.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ex) {
+            // Not delay-seconds, try the HTTP-date form
+        }
+        try {
+            ZonedDateTime retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt).toMillis());
+        } catch (DateTimeParseException ex) {
+            logger.warn("Ignoring unparseable Retry-After: " + value);
+            return null;
+        }
+    }
 
-            availableLegs.addAll(filteredSchedules);
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
         }
-        return availableLegs;
     }
 
-    private List<Leg> flattenSchedule(String airportFrom, String airportTo, int year, Schedule schedule) {
+    /**
+     * Flattens a Schedules API month to a Timetable. Times are parsed straight into minutes, so no object is created
+     * per day or per flight. Missing days or flights arrays have no flights. Both times of a flight are on its day in
+     * local time, so a flight to a timezone behind can arrive at an earlier clock time than it departs.
+     *
+     * @throws DateTimeException if a day is not in the month or a time is not a valid HH:mm
+     */
+    static Timetable flattenSchedule(String airportFrom, String airportTo, int year, Schedule schedule) {
         // Response from Schedules API is messy with month, day, and times all separated and no year.
-        // Flatten it to dto.Journey.Leg format with LocalDateTime for the departure and arrival date-times.
+        // Flatten it to a Timetable with the departure and arrival date-times in minutes since the epoch.
         // Also have access to the route information at this scope, so include it now.
-        List<Leg> legs = new ArrayList<>();
+        YearMonth month = YearMonth.of(year, schedule.getMonth());
+        int monthStart = (int) TimeUnit.DAYS.toMinutes(month.atDay(1).toEpochDay());
+        int lengthOfMonth = month.lengthOfMonth();
+        List<DayFlights> days = schedule.getDays() != null ? schedule.getDays() : Collections.emptyList();
 
-        int month = schedule.getMonth();
+        int flightCount = 0;
+        for (DayFlights flightsDay : days) {
+            if (flightsDay.getFlights() != null) {
+                flightCount += flightsDay.getFlights().size();
+            }
+        }
+        Timetable.Builder flights = new Timetable.Builder(flightCount);
 
-        for (DayFlights flightsDay : schedule.getDays()) {
-            LocalDate date = LocalDate.of(year, month, flightsDay.getDay());
+        for (DayFlights flightsDay : days) {
+            if (flightsDay.getFlights() == null) {
+                continue;
+            }
+            int day = flightsDay.getDay();
+            if (day < 1 || day > lengthOfMonth) {
+                throw new DateTimeException("Invalid day " + day + " of " + month);
+            }
+            int dayStart = monthStart + (int) TimeUnit.DAYS.toMinutes(day - 1);
 
             for (Schedule.FlightDetails details : flightsDay.getFlights()) {
-                LocalTime departureTime = LocalTime.parse(details.getDepartureTime());
-                LocalTime arrivalTime = LocalTime.parse(details.getArrivalTime());
-
-                legs.add(new Leg(airportFrom,
+                flights.add(airportFrom,
                         airportTo,
-                        LocalDateTime.of(date, departureTime),
-                        LocalDateTime.of(date, arrivalTime)
-                ));
+                        dayStart + parseMinuteOfDay(details.getDepartureTime()),
+                        dayStart + parseMinuteOfDay(details.getArrivalTime())
+                );
             }
         }
-        return legs;
+        return flights.build();
+    }
+
+    /**
+     * @return the minutes since midnight of a time as the Schedules API gives it, "HH:mm". Any other form is left to
+     *          {@link LocalTime#parse}, which also accepts seconds
+     * @throws DateTimeParseException if it is not a valid time, or null
+     */
+    static int parseMinuteOfDay(String time) {
+        if (time == null) {
+            throw new DateTimeParseException("Missing time", "", 0);
+        }
+        if (time.length() == 5 && time.charAt(2) == ':'
+                && isDigit(time, 0) && isDigit(time, 1) && isDigit(time, 3) && isDigit(time, 4)) {
+            int hour = (time.charAt(0) - '0') * 10 + (time.charAt(1) - '0');
+            int minute = (time.charAt(3) - '0') * 10 + (time.charAt(4) - '0');
+            if (hour < 24 && minute < 60) {
+                return hour * 60 + minute;
+            }
+        }
+        return LocalTime.parse(time).toSecondOfDay() / 60;
+    }
+
+    private static boolean isDigit(String text, int index) {
+        char c = text.charAt(index);
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * The flights of a month as fetched, or revalidated, from the Schedules API, with the validators to cache them with
+     */
+    private static final class FetchedMonth {
+        private final Timetable flights;
+        private final Validators validators;
+
+        private FetchedMonth(Timetable flights, Validators validators) {
+            this.flights = flights;
+            this.validators = validators;
+        }
     }
-}
\ No newline at end of file
+}
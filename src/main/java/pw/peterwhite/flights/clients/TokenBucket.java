@@ -0,0 +1,110 @@
+package pw.peterwhite.flights.clients;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * <b>TokenBucket</b>: Paces calls to an upstream API to permitsPerSecond, allowing bursts of up to burst calls after
+ * a quiet period. A caller reserves a permit and is told how long to wait for it, so waiting happens outside the lock
+ * and callers are served in the order they reserved. {@link #pause} stops handing out permits for a while, eg. when
+ * the API answers 429 with a Retry-After.
+ */
+public class TokenBucket {
+    private final double nanosPerPermit;
+    private final double burst;
+    private final LongSupplier nanoClock;
+
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    // Guarded by "this". Permits can go negative, each permit owed is a caller already waiting for a later slot
+    private double permits;
+    // Time up to which permits have been added. Ahead of the clock while paused
+    private long refilledUpToNanos;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.burst = burst;
+        this.nanoClock = nanoClock;
+        this.permits = burst;
+        this.refilledUpToNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes a permit if one is available within maxWaitNanos.
+     *
+     * @return nanoseconds the caller must wait before making its call, or -1 if that would be longer than maxWaitNanos,
+     *          in which case no permit is taken
+     */
+    public long reserve(long maxWaitNanos) {
+        long waitForPermitNanos;
+        synchronized (this) {
+            long now = nanoClock.getAsLong();
+            refill(now);
+            waitForPermitNanos = Math.max(0, refilledUpToNanos - now);
+            if (permits < 1) {
+                waitForPermitNanos += (long) Math.ceil((1 - permits) * nanosPerPermit);
+            }
+            if (waitForPermitNanos > maxWaitNanos) {
+                rejections.incrementAndGet();
+                return -1;
+            }
+            permits -= 1;
+        }
+        if (waitForPermitNanos > 0) {
+            waits.incrementAndGet();
+            waitNanos.addAndGet(waitForPermitNanos);
+        }
+        return waitForPermitNanos;
+    }
+
+    /**
+     * Hands out no permits for the next pauseNanos, and no burst straight after. Callers already waiting keep their slot.
+     */
+    public synchronized void pause(long pauseNanos) {
+        long now = nanoClock.getAsLong();
+        refill(now);
+        long pausedUntilNanos = now + pauseNanos;
+        if (pausedUntilNanos - refilledUpToNanos > 0) {
+            refilledUpToNanos = pausedUntilNanos;
+            permits = Math.min(permits, 0);
+        }
+    }
+
+    private void refill(long now) {
+        if (now - refilledUpToNanos > 0) {
+            permits = Math.min(burst, permits + (now - refilledUpToNanos) / nanosPerPermit);
+            refilledUpToNanos = now;
+        }
+    }
+
+    /**
+     * @return number of calls that had to wait for a permit
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+    /**
+     * @return total time calls have been told to wait for a permit, in nanoseconds
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    /**
+     * @return number of calls that could not get a permit in the time they had left
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+}
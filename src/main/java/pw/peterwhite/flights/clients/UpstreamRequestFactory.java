@@ -0,0 +1,65 @@
+package pw.peterwhite.flights.clients;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import pw.peterwhite.flights.config.FlightConfigProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>UpstreamRequestFactory</b>: Builds the HTTP transport behind the RestTemplate used for the Ryanair APIs.
+ * With upstreamMaxConnections configured, requests go through a pool of keep-alive connections (Apache HttpClient)
+ * with per-route and total limits, idle connection eviction and gzip responses. Otherwise the JDK HttpURLConnection is
+ * used, as a bare RestTemplate does. Connect and read timeouts apply to both.
+ */
+public final class UpstreamRequestFactory {
+    private UpstreamRequestFactory() {
+    }
+
+    public static ClientHttpRequestFactory create(FlightConfigProperties flightConfigProperties) {
+        int connectTimeoutMs = Math.toIntExact(flightConfigProperties.getUpstreamConnectTimeoutMs());
+        int readTimeoutMs = Math.toIntExact(flightConfigProperties.getUpstreamReadTimeoutMs());
+        int maxConnections = flightConfigProperties.getUpstreamMaxConnections();
+
+        if (maxConnections <= 0) {
+            SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+            requestFactory.setConnectTimeout(connectTimeoutMs);
+            requestFactory.setReadTimeout(readTimeoutMs);
+            return requestFactory;
+        }
+
+        int maxConnectionsPerRoute = flightConfigProperties.getUpstreamMaxConnectionsPerRoute();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        // Every call goes to the one API host, so by default a single route may use the whole pool
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute > 0 ? Math.min(maxConnectionsPerRoute, maxConnections) : maxConnections);
+
+        HttpClientBuilder httpClientBuilder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        // Waiting for a free pooled connection counts against the connect timeout
+                        .setConnectionRequestTimeout(connectTimeoutMs)
+                        .setConnectTimeout(connectTimeoutMs)
+                        .setSocketTimeout(readTimeoutMs)
+                        .build());
+
+        long idleConnectionTimeoutMs = flightConfigProperties.getUpstreamIdleConnectionTimeoutMs();
+        if (idleConnectionTimeoutMs > 0) {
+            // Close connections the server is likely to have dropped already, rather than fail on reusing them
+            httpClientBuilder.evictIdleConnections(idleConnectionTimeoutMs, TimeUnit.MILLISECONDS)
+                    .evictExpiredConnections();
+        }
+        if (!flightConfigProperties.getUpstreamCompressionEnabled()) {
+            // Otherwise "Accept-Encoding: gzip,deflate" is sent and compressed responses are decoded transparently
+            httpClientBuilder.disableContentCompression();
+        }
+
+        // Closes the HttpClient, its pool and eviction thread when the factory bean is destroyed
+        return new HttpComponentsClientHttpRequestFactory(httpClientBuilder.build());
+    }
+}
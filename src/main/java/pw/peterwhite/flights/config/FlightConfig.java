@@ -1,13 +1,30 @@
 package pw.peterwhite.flights.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
+import pw.peterwhite.flights.cache.SchedulePrefetcher;
 import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.clients.UpstreamRequestFactory;
+import pw.peterwhite.flights.metrics.FlightMetrics;
+import pw.peterwhite.flights.metrics.RyanairApiClientMeters;
+import pw.peterwhite.flights.metrics.TimedJackson2HttpMessageConverter;
 import pw.peterwhite.flights.services.FlightService;
 
+import java.util.concurrent.ThreadPoolExecutor;
+
 @Configuration
 @ComponentScan(basePackages = "pw.peterwhite.flights")
 public class FlightConfig {
@@ -27,8 +44,100 @@ public class FlightConfig {
         return new RyanairApiClient(flightConfigProperties());
     }
 
+    /**
+     * Meters of the interconnections hot path, on the registry Actuator exposes at /actuator/metrics and /actuator/prometheus
+     */
+    @Bean
+    public FlightMetrics flightMetrics(MeterRegistry meterRegistry) {
+        return new FlightMetrics(meterRegistry);
+    }
+
+    /**
+     * Replaces Spring Boot's JSON converter, on the same ObjectMapper, so the serialization of search results is timed
+     */
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper, FlightMetrics flightMetrics) {
+        return new TimedJackson2HttpMessageConverter(objectMapper, flightMetrics);
+    }
+
+    /**
+     * Publishes the counters kept by RyanairApiClient. Bound to the registry by Spring Boot
+     */
+    @Bean
+    public MeterBinder ryanairApiClientMeters() {
+        return new RyanairApiClientMeters(ryanairApiClient());
+    }
+
+    /**
+     * Reports on /actuator/health whether the schedule prefetcher is still warming the cache with its first pass.
+     * Always UP: Spring Boot 2.2 has no separate readiness group, so anything else would fail liveness probes too
+     */
+    @Bean
+    public HealthIndicator schedulePrefetchHealthIndicator() {
+        return () -> {
+            SchedulePrefetcher schedulePrefetcher = ryanairApiClient().getSchedulePrefetcher();
+            if (schedulePrefetcher == null) {
+                return Health.up().build();
+            }
+            return Health.up()
+                    .withDetail("warming", !schedulePrefetcher.isWarmedUp())
+                    .withDetail("fetches", schedulePrefetcher.getFetches())
+                    .withDetail("failures", schedulePrefetcher.getFailures())
+                    .build();
+        };
+    }
+
+    /**
+     * Transport for the Routes and Schedules API calls, pooled when upstreamMaxConnections is configured.
+     * A bean so the pooled HttpClient is closed on shutdown.
+     */
+    @Bean
+    public ClientHttpRequestFactory upstreamRequestFactory() {
+        return UpstreamRequestFactory.create(flightConfigProperties());
+    }
+
     @Bean
     public RestTemplate restTemplate() {
-        return new RestTemplate();
+        return new RestTemplate(upstreamRequestFactory());
+    }
+
+    /**
+     * Bounded pool used by FlightService to fetch the schedules of intermediate airports concurrently.
+     * When the queue is full, the request thread runs the fetch itself rather than failing the request.
+     * With no scheduleFetchPoolSize configured, schedules are fetched serially on the request thread.
+     */
+    @Bean
+    public TaskExecutor scheduleFetchExecutor() {
+        int poolSize = flightConfigProperties().getScheduleFetchPoolSize();
+        if (poolSize <= 0) {
+            return new SyncTaskExecutor();
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(flightConfigProperties().getScheduleFetchQueueCapacity());
+        executor.setThreadNamePrefix("schedule-fetch-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    /**
+     * Pool used by RyanairApiClient to fetch several months of a route at once, kept separate from the schedule fetch
+     * pool as its threads block waiting on these fetches. With no monthFetchPoolSize configured, months are fetched
+     * on the calling thread.
+     */
+    @Bean
+    public TaskExecutor monthFetchExecutor() {
+        int poolSize = flightConfigProperties().getMonthFetchPoolSize();
+        if (poolSize <= 0) {
+            return new SyncTaskExecutor();
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("month-fetch-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
     }
 }
\ No newline at end of file
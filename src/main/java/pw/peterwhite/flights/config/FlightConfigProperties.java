@@ -11,6 +11,37 @@ public class FlightConfigProperties {
 
     private String ryanairApiClientBaseUrl;
     private String routeOperator;
+    private Long routesRefreshPeriodMs;
+    private Long routesMaxStalenessMs;
+    private Boolean routesStreamingParseEnabled;
+    private Integer scheduleCacheMaxEntries;
+    private Long scheduleCacheTtlMs;
+    private Integer scheduleFetchPoolSize;
+    private Integer scheduleFetchQueueCapacity;
+    private Long requestTimeoutMs;
+    private Integer monthFetchConcurrency;
+    private Integer monthFetchPoolSize;
+    private Integer upstreamMaxConnections;
+    private Integer upstreamMaxConnectionsPerRoute;
+    private Long upstreamIdleConnectionTimeoutMs;
+    private Long upstreamConnectTimeoutMs;
+    private Long upstreamReadTimeoutMs;
+    private Boolean upstreamCompressionEnabled;
+    private Integer upstreamRequestsPerSecond;
+    private Integer upstreamRequestBurst;
+    private Integer upstreamMaxRetries;
+    private Long upstreamRetryBackoffMs;
+    private Integer upstreamCircuitFailureThreshold;
+    private Long upstreamCircuitProbeIntervalMs;
+    private Long upstreamMaxStalenessMs;
+    private Integer maxStops;
+    private String diskCacheDir;
+    private String prefetchRoutes;
+    private Integer prefetchMonths;
+    private Long prefetchPeriodMs;
+    private Integer maxBatchQueries;
+    private Integer queryCacheMaxEntries;
+    private Long queryCacheGranularityMs;
 
     public String getRyanairApiClientBaseUrl() {
         if (ryanairApiClientBaseUrl == null) {
@@ -35,4 +66,376 @@ public class FlightConfigProperties {
     public void setRouteOperator(String routeOperator) {
         this.routeOperator = routeOperator;
     }
+
+    public Long getRoutesRefreshPeriodMs() {
+        if (routesRefreshPeriodMs == null) {
+            // No routesRefreshPeriodMs defined in properties, reading from environment and caching. 0 disables the route cache
+            routesRefreshPeriodMs = env.getProperty("routesRefreshPeriodMs", Long.class, 0L);
+        }
+        return routesRefreshPeriodMs;
+    }
+
+    public void setRoutesRefreshPeriodMs(Long routesRefreshPeriodMs) {
+        this.routesRefreshPeriodMs = routesRefreshPeriodMs;
+    }
+
+    public Long getRoutesMaxStalenessMs() {
+        if (routesMaxStalenessMs == null) {
+            // No routesMaxStalenessMs defined in properties, reading from environment and caching
+            routesMaxStalenessMs = env.getProperty("routesMaxStalenessMs", Long.class, 0L);
+        }
+        return routesMaxStalenessMs;
+    }
+
+    public void setRoutesMaxStalenessMs(Long routesMaxStalenessMs) {
+        this.routesMaxStalenessMs = routesMaxStalenessMs;
+    }
+
+    public Boolean getRoutesStreamingParseEnabled() {
+        if (routesStreamingParseEnabled == null) {
+            // No routesStreamingParseEnabled defined in properties, reading from environment and caching
+            routesStreamingParseEnabled = env.getProperty("routesStreamingParseEnabled", Boolean.class, false);
+        }
+        return routesStreamingParseEnabled;
+    }
+
+    public void setRoutesStreamingParseEnabled(Boolean routesStreamingParseEnabled) {
+        this.routesStreamingParseEnabled = routesStreamingParseEnabled;
+    }
+
+    public Integer getScheduleCacheMaxEntries() {
+        if (scheduleCacheMaxEntries == null) {
+            // No scheduleCacheMaxEntries defined in properties, reading from environment and caching. 0 disables the schedule cache
+            scheduleCacheMaxEntries = env.getProperty("scheduleCacheMaxEntries", Integer.class, 0);
+        }
+        return scheduleCacheMaxEntries;
+    }
+
+    public void setScheduleCacheMaxEntries(Integer scheduleCacheMaxEntries) {
+        this.scheduleCacheMaxEntries = scheduleCacheMaxEntries;
+    }
+
+    public Long getScheduleCacheTtlMs() {
+        if (scheduleCacheTtlMs == null) {
+            // No scheduleCacheTtlMs defined in properties, reading from environment and caching. 0 disables the schedule cache
+            scheduleCacheTtlMs = env.getProperty("scheduleCacheTtlMs", Long.class, 0L);
+        }
+        return scheduleCacheTtlMs;
+    }
+
+    public void setScheduleCacheTtlMs(Long scheduleCacheTtlMs) {
+        this.scheduleCacheTtlMs = scheduleCacheTtlMs;
+    }
+
+    public Integer getScheduleFetchPoolSize() {
+        if (scheduleFetchPoolSize == null) {
+            // No scheduleFetchPoolSize defined in properties, reading from environment and caching. 0 fetches schedules on the request thread
+            scheduleFetchPoolSize = env.getProperty("scheduleFetchPoolSize", Integer.class, 0);
+        }
+        return scheduleFetchPoolSize;
+    }
+
+    public void setScheduleFetchPoolSize(Integer scheduleFetchPoolSize) {
+        this.scheduleFetchPoolSize = scheduleFetchPoolSize;
+    }
+
+    public Integer getScheduleFetchQueueCapacity() {
+        if (scheduleFetchQueueCapacity == null) {
+            // No scheduleFetchQueueCapacity defined in properties, reading from environment and caching
+            scheduleFetchQueueCapacity = env.getProperty("scheduleFetchQueueCapacity", Integer.class, 0);
+        }
+        return scheduleFetchQueueCapacity;
+    }
+
+    public void setScheduleFetchQueueCapacity(Integer scheduleFetchQueueCapacity) {
+        this.scheduleFetchQueueCapacity = scheduleFetchQueueCapacity;
+    }
+
+    public Long getRequestTimeoutMs() {
+        if (requestTimeoutMs == null) {
+            // No requestTimeoutMs defined in properties, reading from environment and caching. 0 means no deadline
+            requestTimeoutMs = env.getProperty("requestTimeoutMs", Long.class, 0L);
+        }
+        return requestTimeoutMs;
+    }
+
+    public void setRequestTimeoutMs(Long requestTimeoutMs) {
+        this.requestTimeoutMs = requestTimeoutMs;
+    }
+
+    public Integer getMonthFetchConcurrency() {
+        if (monthFetchConcurrency == null) {
+            // No monthFetchConcurrency defined in properties, reading from environment and caching. 0 or 1 fetches a route's months one after the other
+            monthFetchConcurrency = env.getProperty("monthFetchConcurrency", Integer.class, 0);
+        }
+        return monthFetchConcurrency;
+    }
+
+    public void setMonthFetchConcurrency(Integer monthFetchConcurrency) {
+        this.monthFetchConcurrency = monthFetchConcurrency;
+    }
+
+    public Integer getMonthFetchPoolSize() {
+        if (monthFetchPoolSize == null) {
+            // No monthFetchPoolSize defined in properties, reading from environment and caching. 0 fetches months on the calling thread
+            monthFetchPoolSize = env.getProperty("monthFetchPoolSize", Integer.class, 0);
+        }
+        return monthFetchPoolSize;
+    }
+
+    public void setMonthFetchPoolSize(Integer monthFetchPoolSize) {
+        this.monthFetchPoolSize = monthFetchPoolSize;
+    }
+
+    public Integer getUpstreamMaxConnections() {
+        if (upstreamMaxConnections == null) {
+            // No upstreamMaxConnections defined in properties, reading from environment and caching. 0 uses HttpURLConnection without a connection pool
+            upstreamMaxConnections = env.getProperty("upstreamMaxConnections", Integer.class, 0);
+        }
+        return upstreamMaxConnections;
+    }
+
+    public void setUpstreamMaxConnections(Integer upstreamMaxConnections) {
+        this.upstreamMaxConnections = upstreamMaxConnections;
+    }
+
+    public Integer getUpstreamMaxConnectionsPerRoute() {
+        if (upstreamMaxConnectionsPerRoute == null) {
+            // No upstreamMaxConnectionsPerRoute defined in properties, reading from environment and caching. 0 lets one route use the whole pool
+            upstreamMaxConnectionsPerRoute = env.getProperty("upstreamMaxConnectionsPerRoute", Integer.class, 0);
+        }
+        return upstreamMaxConnectionsPerRoute;
+    }
+
+    public void setUpstreamMaxConnectionsPerRoute(Integer upstreamMaxConnectionsPerRoute) {
+        this.upstreamMaxConnectionsPerRoute = upstreamMaxConnectionsPerRoute;
+    }
+
+    public Long getUpstreamIdleConnectionTimeoutMs() {
+        if (upstreamIdleConnectionTimeoutMs == null) {
+            // No upstreamIdleConnectionTimeoutMs defined in properties, reading from environment and caching. 0 never evicts idle connections
+            upstreamIdleConnectionTimeoutMs = env.getProperty("upstreamIdleConnectionTimeoutMs", Long.class, 0L);
+        }
+        return upstreamIdleConnectionTimeoutMs;
+    }
+
+    public void setUpstreamIdleConnectionTimeoutMs(Long upstreamIdleConnectionTimeoutMs) {
+        this.upstreamIdleConnectionTimeoutMs = upstreamIdleConnectionTimeoutMs;
+    }
+
+    public Long getUpstreamConnectTimeoutMs() {
+        if (upstreamConnectTimeoutMs == null) {
+            // No upstreamConnectTimeoutMs defined in properties, reading from environment and caching. 0 means no timeout
+            upstreamConnectTimeoutMs = env.getProperty("upstreamConnectTimeoutMs", Long.class, 0L);
+        }
+        return upstreamConnectTimeoutMs;
+    }
+
+    public void setUpstreamConnectTimeoutMs(Long upstreamConnectTimeoutMs) {
+        this.upstreamConnectTimeoutMs = upstreamConnectTimeoutMs;
+    }
+
+    public Long getUpstreamReadTimeoutMs() {
+        if (upstreamReadTimeoutMs == null) {
+            // No upstreamReadTimeoutMs defined in properties, reading from environment and caching. 0 means no timeout
+            upstreamReadTimeoutMs = env.getProperty("upstreamReadTimeoutMs", Long.class, 0L);
+        }
+        return upstreamReadTimeoutMs;
+    }
+
+    public void setUpstreamReadTimeoutMs(Long upstreamReadTimeoutMs) {
+        this.upstreamReadTimeoutMs = upstreamReadTimeoutMs;
+    }
+
+    public Boolean getUpstreamCompressionEnabled() {
+        if (upstreamCompressionEnabled == null) {
+            // No upstreamCompressionEnabled defined in properties, reading from environment and caching
+            upstreamCompressionEnabled = env.getProperty("upstreamCompressionEnabled", Boolean.class, true);
+        }
+        return upstreamCompressionEnabled;
+    }
+
+    public void setUpstreamCompressionEnabled(Boolean upstreamCompressionEnabled) {
+        this.upstreamCompressionEnabled = upstreamCompressionEnabled;
+    }
+
+    public Integer getUpstreamRequestsPerSecond() {
+        if (upstreamRequestsPerSecond == null) {
+            // No upstreamRequestsPerSecond defined in properties, reading from environment and caching. 0 disables the rate limiter
+            upstreamRequestsPerSecond = env.getProperty("upstreamRequestsPerSecond", Integer.class, 0);
+        }
+        return upstreamRequestsPerSecond;
+    }
+
+    public void setUpstreamRequestsPerSecond(Integer upstreamRequestsPerSecond) {
+        this.upstreamRequestsPerSecond = upstreamRequestsPerSecond;
+    }
+
+    public Integer getUpstreamRequestBurst() {
+        if (upstreamRequestBurst == null) {
+            // No upstreamRequestBurst defined in properties, reading from environment and caching. 0 allows a burst of upstreamRequestsPerSecond
+            upstreamRequestBurst = env.getProperty("upstreamRequestBurst", Integer.class, 0);
+        }
+        return upstreamRequestBurst;
+    }
+
+    public void setUpstreamRequestBurst(Integer upstreamRequestBurst) {
+        this.upstreamRequestBurst = upstreamRequestBurst;
+    }
+
+    public Integer getUpstreamMaxRetries() {
+        if (upstreamMaxRetries == null) {
+            // No upstreamMaxRetries defined in properties, reading from environment and caching. 0 does not retry rate-limited calls
+            upstreamMaxRetries = env.getProperty("upstreamMaxRetries", Integer.class, 0);
+        }
+        return upstreamMaxRetries;
+    }
+
+    public void setUpstreamMaxRetries(Integer upstreamMaxRetries) {
+        this.upstreamMaxRetries = upstreamMaxRetries;
+    }
+
+    public Long getUpstreamRetryBackoffMs() {
+        if (upstreamRetryBackoffMs == null) {
+            // No upstreamRetryBackoffMs defined in properties, reading from environment and caching
+            upstreamRetryBackoffMs = env.getProperty("upstreamRetryBackoffMs", Long.class, 100L);
+        }
+        return upstreamRetryBackoffMs;
+    }
+
+    public void setUpstreamRetryBackoffMs(Long upstreamRetryBackoffMs) {
+        this.upstreamRetryBackoffMs = upstreamRetryBackoffMs;
+    }
+
+    public Integer getUpstreamCircuitFailureThreshold() {
+        if (upstreamCircuitFailureThreshold == null) {
+            // No upstreamCircuitFailureThreshold defined in properties, reading from environment and caching. 0 disables the circuit breakers
+            upstreamCircuitFailureThreshold = env.getProperty("upstreamCircuitFailureThreshold", Integer.class, 0);
+        }
+        return upstreamCircuitFailureThreshold;
+    }
+
+    public void setUpstreamCircuitFailureThreshold(Integer upstreamCircuitFailureThreshold) {
+        this.upstreamCircuitFailureThreshold = upstreamCircuitFailureThreshold;
+    }
+
+    public Long getUpstreamCircuitProbeIntervalMs() {
+        if (upstreamCircuitProbeIntervalMs == null) {
+            // No upstreamCircuitProbeIntervalMs defined in properties, reading from environment and caching
+            upstreamCircuitProbeIntervalMs = env.getProperty("upstreamCircuitProbeIntervalMs", Long.class, 5000L);
+        }
+        return upstreamCircuitProbeIntervalMs;
+    }
+
+    public void setUpstreamCircuitProbeIntervalMs(Long upstreamCircuitProbeIntervalMs) {
+        this.upstreamCircuitProbeIntervalMs = upstreamCircuitProbeIntervalMs;
+    }
+
+    public Long getUpstreamMaxStalenessMs() {
+        if (upstreamMaxStalenessMs == null) {
+            // No upstreamMaxStalenessMs defined in properties, reading from environment and caching. 0 never serves stale data
+            upstreamMaxStalenessMs = env.getProperty("upstreamMaxStalenessMs", Long.class, 0L);
+        }
+        return upstreamMaxStalenessMs;
+    }
+
+    public void setUpstreamMaxStalenessMs(Long upstreamMaxStalenessMs) {
+        this.upstreamMaxStalenessMs = upstreamMaxStalenessMs;
+    }
+
+    public Integer getMaxStops() {
+        if (maxStops == null) {
+            // No maxStops defined in properties, reading from environment and caching. 1 only allows 0-1 stop searches
+            maxStops = env.getProperty("maxStops", Integer.class, 1);
+        }
+        return maxStops;
+    }
+
+    public void setMaxStops(Integer maxStops) {
+        this.maxStops = maxStops;
+    }
+
+    public String getDiskCacheDir() {
+        if (diskCacheDir == null) {
+            // No diskCacheDir defined in properties, reading from environment and caching. Empty disables the disk cache
+            diskCacheDir = env.getProperty("diskCacheDir", "");
+        }
+        return diskCacheDir;
+    }
+
+    public void setDiskCacheDir(String diskCacheDir) {
+        this.diskCacheDir = diskCacheDir;
+    }
+
+    public String getPrefetchRoutes() {
+        if (prefetchRoutes == null) {
+            // No prefetchRoutes defined in properties, reading from environment and caching. Empty disables prefetching
+            prefetchRoutes = env.getProperty("prefetchRoutes", "");
+        }
+        return prefetchRoutes;
+    }
+
+    public void setPrefetchRoutes(String prefetchRoutes) {
+        this.prefetchRoutes = prefetchRoutes;
+    }
+
+    public Integer getPrefetchMonths() {
+        if (prefetchMonths == null) {
+            // No prefetchMonths defined in properties, reading from environment and caching
+            prefetchMonths = env.getProperty("prefetchMonths", Integer.class, 2);
+        }
+        return prefetchMonths;
+    }
+
+    public void setPrefetchMonths(Integer prefetchMonths) {
+        this.prefetchMonths = prefetchMonths;
+    }
+
+    public Long getPrefetchPeriodMs() {
+        if (prefetchPeriodMs == null) {
+            // No prefetchPeriodMs defined in properties, reading from environment and caching
+            prefetchPeriodMs = env.getProperty("prefetchPeriodMs", Long.class, 60000L);
+        }
+        return prefetchPeriodMs;
+    }
+
+    public void setPrefetchPeriodMs(Long prefetchPeriodMs) {
+        this.prefetchPeriodMs = prefetchPeriodMs;
+    }
+
+    public Integer getMaxBatchQueries() {
+        if (maxBatchQueries == null) {
+            // No maxBatchQueries defined in properties, reading from environment and caching
+            maxBatchQueries = env.getProperty("maxBatchQueries", Integer.class, 20);
+        }
+        return maxBatchQueries;
+    }
+
+    public void setMaxBatchQueries(Integer maxBatchQueries) {
+        this.maxBatchQueries = maxBatchQueries;
+    }
+
+    public Integer getQueryCacheMaxEntries() {
+        if (queryCacheMaxEntries == null) {
+            // No queryCacheMaxEntries defined in properties, reading from environment and caching. 0 disables the query cache
+            queryCacheMaxEntries = env.getProperty("queryCacheMaxEntries", Integer.class, 0);
+        }
+        return queryCacheMaxEntries;
+    }
+
+    public void setQueryCacheMaxEntries(Integer queryCacheMaxEntries) {
+        this.queryCacheMaxEntries = queryCacheMaxEntries;
+    }
+
+    public Long getQueryCacheGranularityMs() {
+        if (queryCacheGranularityMs == null) {
+            // No queryCacheGranularityMs defined in properties, reading from environment and caching
+            queryCacheGranularityMs = env.getProperty("queryCacheGranularityMs", Long.class, 3600000L);
+        }
+        return queryCacheGranularityMs;
+    }
+
+    public void setQueryCacheGranularityMs(Long queryCacheGranularityMs) {
+        this.queryCacheGranularityMs = queryCacheGranularityMs;
+    }
 }
@@ -0,0 +1,24 @@
+package pw.peterwhite.flights.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pw.peterwhite.flights.clients.ReactiveRyanairApiClient;
+import pw.peterwhite.flights.services.ReactiveFlightService;
+
+/**
+ * Beans for the non-blocking search, only created when flight.reactiveClientEnabled is true.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "flight", name = "reactiveClientEnabled", havingValue = "true")
+public class ReactiveFlightConfig {
+    @Bean
+    public ReactiveRyanairApiClient reactiveRyanairApiClient(FlightConfigProperties flightConfigProperties) {
+        return new ReactiveRyanairApiClient(flightConfigProperties);
+    }
+
+    @Bean
+    public ReactiveFlightService reactiveFlightService() {
+        return new ReactiveFlightService();
+    }
+}
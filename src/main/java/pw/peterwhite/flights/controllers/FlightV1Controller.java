@@ -1,60 +1,294 @@
 package pw.peterwhite.flights.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pw.peterwhite.flights.cache.UpstreamUsage;
+import pw.peterwhite.flights.config.FlightConfigProperties;
+import pw.peterwhite.flights.dto.InterconnectionsQuery;
+import pw.peterwhite.flights.dto.InterconnectionsResult;
 import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.metrics.FlightMetrics;
 import pw.peterwhite.flights.services.FlightService;
+import pw.peterwhite.flights.services.JourneySort;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 @RestController
 @RequestMapping("/api/v1")
+@ConditionalOnProperty(prefix = "flight", name = "reactiveClientEnabled", havingValue = "false", matchIfMissing = true)
 public class FlightV1Controller {
     private static final Log logger = LogFactory.getLog(FlightV1Controller.class);
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+    static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
     private FlightService flightService;
+    private ObjectMapper objectMapper;
+    private FlightMetrics flightMetrics;
+    private FlightConfigProperties flightConfigProperties;
 
     @Autowired
-    public FlightV1Controller(FlightService flightService) {
+    public FlightV1Controller(FlightService flightService, ObjectMapper objectMapper, FlightMetrics flightMetrics,
+                              FlightConfigProperties flightConfigProperties) {
         this.flightService = flightService;
+        this.objectMapper = objectMapper;
+        this.flightMetrics = flightMetrics;
+        this.flightConfigProperties = flightConfigProperties;
     }
 
     /**
      * <b>Interconnections</b>: This API will return a list of available flights between the given airports and between the
      * given date-times. It will only return flight plans that have 0-1 stops and in the case of a interconnecting stop,
      * the departure of the second leg must be 2 hours after the arrival of the first leg.
+     * With maxStops, journeys of up to that many stops are searched instead, and only the optimal ones are returned:
+     * those no other journey beats on departure time, arrival time and number of stops alike.
+     * With sort and/or limit, only the best limit journeys in that order are returned, best first. sort defaults to
+     * arrival, and limit to every journey.
+     * With "Accept: application/x-ndjson" the journeys are streamed instead, see {@link #streamInterconnections}.
+     * If an upstream API failed and cached data past its freshness was used instead, the response carries a
+     * "Warning: 110" header.
      *
      * @param departure - IATA code for departure airport
      * @param arrival - IATA code for arrival airport
      * @param departureDateTime - Departure date-time in departure airport timezone
      * @param arrivalDateTime - Arrival date-time in arrival airport timezone
-     * @return List of available flights with details of stops and each leg
+     * @param maxStops - Optional, most stops of a journey, up to the configured maxStops
+     * @param sort - Optional, "arrival" (earliest first), "duration" (shortest first) or "stops" (fewest first)
+     * @param limit - Optional, most journeys returned
+     * @return List of available flights with details of stops and each leg, or the StreamingResponseBody of them
      */
     @RequestMapping(path = "/interconnections",
             method = GET,
             params = {"departure", "arrival", "departureDateTime", "arrivalDateTime"})
-    public List<Journey> interconnections(String departure,
-                                          String arrival,
-                                          @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime departureDateTime,
-                                          @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime arrivalDateTime) {
+    public Object interconnections(String departure,
+                                   String arrival,
+                                   @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime departureDateTime,
+                                   @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime arrivalDateTime,
+                                   Integer maxStops,
+                                   String sort,
+                                   Integer limit,
+                                   @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                   HttpServletResponse response) {
         validateParams(departure, arrival, departureDateTime, arrivalDateTime);
+        JourneySort journeySort = validateRanking(sort, limit);
+
+        if (acceptsNdjson(accept)) {
+            response.setContentType(APPLICATION_NDJSON_VALUE);
+            return streamInterconnections(departure.toUpperCase(), arrival.toUpperCase(), departureDateTime, arrivalDateTime, maxStops,
+                    journeySort, limit, response);
+        }
+        return jsonInterconnections(departure.toUpperCase(), arrival.toUpperCase(), departureDateTime, arrivalDateTime, maxStops,
+                journeySort, limit);
+    }
+
+    /**
+     * The JSON list response of {@link #interconnections}, written by Spring's JSON converter
+     */
+    private ResponseEntity<List<Journey>> jsonInterconnections(String departure,
+                                                               String arrival,
+                                                               LocalDateTime departureDateTime,
+                                                               LocalDateTime arrivalDateTime,
+                                                               Integer maxStops,
+                                                               JourneySort sort,
+                                                               Integer limit) {
+        UpstreamUsage upstreamUsage = UpstreamUsage.begin();
+        try {
+            List<Journey> journeys = search(departure, arrival, departureDateTime, arrivalDateTime, maxStops, sort, limit);
+            return withStaleWarning(ResponseEntity.ok(), upstreamUsage).body(journeys);
+        } finally {
+            UpstreamUsage.end();
+        }
+    }
+
+    /**
+     * The search asked for: every 0-1 stop journey, the optimal journeys of up to maxStops stops, or the best limit of
+     * either when ranked
+     */
+    private List<Journey> search(String departure,
+                                 String arrival,
+                                 LocalDateTime departureDateTime,
+                                 LocalDateTime arrivalDateTime,
+                                 Integer maxStops,
+                                 JourneySort sort,
+                                 Integer limit) {
+        if (sort == null) {
+            return maxStops == null
+                    ? flightService.getAvailableFlights(departure, arrival, departureDateTime, arrivalDateTime)
+                    : flightService.getOptimalJourneys(departure, arrival, departureDateTime, arrivalDateTime, maxStops);
+        }
+        int journeyLimit = limit == null ? Integer.MAX_VALUE : limit;
+        return maxStops == null
+                ? flightService.getRankedFlights(departure, arrival, departureDateTime, arrivalDateTime, sort, journeyLimit)
+                : flightService.getOptimalJourneys(departure, arrival, departureDateTime, arrivalDateTime, maxStops, sort, journeyLimit);
+    }
+
+    /**
+     * <b>batchInterconnections</b>: Runs several {@link #interconnections} searches in one request, such as nearby
+     * airports, alternate dates and return legs, fetching each route month they share from the upstream APIs only once.
+     * The body is a JSON array of searches with the same fields as the interconnections parameters. The response is a
+     * JSON array with the outcome of each search in the same order: its status and journeys, or its status and error
+     * if it is invalid (a null search included) or its schedules could not be fetched. One failed search does not
+     * fail the others.
+     * Like interconnections, the response carries a "Warning: 110" header if stale data was used for any search.
+     *
+     * @param queries - the searches, at most the configured maxBatchQueries
+     * @return List of the outcome of each search
+     */
+    @RequestMapping(path = "/interconnections/batch", method = POST)
+    public ResponseEntity<List<InterconnectionsResult>> batchInterconnections(@RequestBody InterconnectionsQuery[] queries) {
+        int maxBatchQueries = flightConfigProperties.getMaxBatchQueries();
+        if (queries == null || queries.length == 0 || queries.length > maxBatchQueries) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A batch must have between 1 and " + maxBatchQueries + " searches");
+        }
+
+        InterconnectionsResult[] results = new InterconnectionsResult[queries.length];
+        List<InterconnectionsQuery> validQueries = new ArrayList<>(queries.length);
+        for (int i = 0; i < queries.length; i++) {
+            InterconnectionsQuery query = queries[i];
+            try {
+                if (query == null) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A search must be a JSON object");
+                }
+                validateParams(query.getDeparture(), query.getArrival(), query.getDepartureDateTime(), query.getArrivalDateTime());
+                validQueries.add(new InterconnectionsQuery(query.getDeparture().toUpperCase(), query.getArrival().toUpperCase(),
+                        query.getDepartureDateTime(), query.getArrivalDateTime(), query.getMaxStops()));
+            } catch (ResponseStatusException ex) {
+                results[i] = InterconnectionsResult.error(ex.getStatus().value(), ex.getReason());
+            }
+        }
 
-        return flightService.getAvailableFlights(departure.toUpperCase(), arrival.toUpperCase(), departureDateTime, arrivalDateTime);
+        UpstreamUsage upstreamUsage = UpstreamUsage.begin();
+        try {
+            List<InterconnectionsResult> validResults = validQueries.isEmpty()
+                    ? new ArrayList<>()
+                    : flightService.getBatchJourneys(validQueries);
+            // Put the outcomes of the valid searches back in between the invalid ones
+            int next = 0;
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = validResults.get(next++);
+                }
+            }
+            return withStaleWarning(ResponseEntity.ok(), upstreamUsage).body(Arrays.asList(results));
+        } finally {
+            UpstreamUsage.end();
+        }
+    }
+
+    private static ResponseEntity.BodyBuilder withStaleWarning(ResponseEntity.BodyBuilder response, UpstreamUsage upstreamUsage) {
+        return upstreamUsage.isStale() ? response.header(HttpHeaders.WARNING, STALE_WARNING) : response;
+    }
+
+    /**
+     * <b>streamInterconnections</b>: Same search as {@link #interconnections}, but each Journey is written as a line of
+     * JSON as soon as it is found: direct flights first, then the journeys through each intermediate airport in turn,
+     * flushed hub by hub. Only one hub's journeys are held at a time.
+     * Errors before the first journey is written give the usual status codes. Once the response has started, an error
+     * can only cut the stream short. Likewise the stale data warning is only sent if known by the first write.
+     * A maxStops or ranked search only knows its journeys once all legs are in, so they are written in one go.
+     */
+    private StreamingResponseBody streamInterconnections(String departure,
+                                                         String arrival,
+                                                         LocalDateTime departureDateTime,
+                                                         LocalDateTime arrivalDateTime,
+                                                         Integer maxStops,
+                                                         JourneySort sort,
+                                                         Integer limit,
+                                                         HttpServletResponse response) {
+        return outputStream -> {
+            // Runs on an async thread, not the request thread the controller was called on
+            UpstreamUsage upstreamUsage = UpstreamUsage.begin();
+            try {
+                Consumer<List<Journey>> writer = journeys -> {
+                    if (upstreamUsage.isStale() && !response.isCommitted()) {
+                        response.setHeader(HttpHeaders.WARNING, STALE_WARNING);
+                    }
+                    try {
+                        long serializationStartNanos = System.nanoTime();
+                        for (Journey journey : journeys) {
+                            outputStream.write(objectMapper.writeValueAsBytes(journey));
+                            outputStream.write('\n');
+                        }
+                        // Includes the writes, as each journey is serialized straight to the response
+                        flightMetrics.recordPhase(FlightMetrics.PHASE_SERIALIZATION, System.nanoTime() - serializationStartNanos);
+                        outputStream.flush();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                };
+                if (maxStops == null && sort == null) {
+                    flightService.streamAvailableFlights(departure, arrival, departureDateTime, arrivalDateTime, writer);
+                } else {
+                    writer.accept(search(departure, arrival, departureDateTime, arrivalDateTime, maxStops, sort, limit));
+                }
+            } finally {
+                UpstreamUsage.end();
+            }
+        };
+    }
+
+    /**
+     * @return true if the Accept header explicitly asks for application/x-ndjson. Wildcards keep the JSON list
+     */
+    static boolean acceptsNdjson(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream().anyMatch(APPLICATION_NDJSON::equalsTypeAndSubtype);
+        } catch (InvalidMediaTypeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the sort asked for, ARRIVAL if only a limit is, or null if the journeys are not to be ranked
+     * @throws ResponseStatusException 400 for an unknown sort or a limit under 1
+     */
+    static JourneySort validateRanking(String sort, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be at least 1");
+        }
+        if (sort == null) {
+            return limit == null ? null : JourneySort.ARRIVAL;
+        }
+        JourneySort journeySort = JourneySort.of(sort);
+        if (journeySort == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sort must be arrival, duration or stops");
+        }
+        return journeySort;
     }
 
-    private void validateParams(String departure,
-                                String arrival,
-                                LocalDateTime departureDateTime,
-                                LocalDateTime arrivalDateTime) {
+    static void validateParams(String departure,
+                               String arrival,
+                               LocalDateTime departureDateTime,
+                               LocalDateTime arrivalDateTime) {
         if (departureDateTime == null || arrivalDateTime == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Departure/arrival date-times must be provided");
         }
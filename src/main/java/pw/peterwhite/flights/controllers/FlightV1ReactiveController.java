@@ -0,0 +1,116 @@
+package pw.peterwhite.flights.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.services.JourneySort;
+import pw.peterwhite.flights.services.ReactiveFlightService;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+/**
+ * Replaces {@link FlightV1Controller} when flight.reactiveClientEnabled is true. Same API and validation, but the
+ * request thread is released while the upstream APIs are queried and the response is written once the search completes.
+ */
+@RestController
+@RequestMapping("/api/v1")
+@ConditionalOnProperty(prefix = "flight", name = "reactiveClientEnabled", havingValue = "true")
+public class FlightV1ReactiveController {
+    private static final Log logger = LogFactory.getLog(FlightV1ReactiveController.class);
+
+    private ReactiveFlightService reactiveFlightService;
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    public FlightV1ReactiveController(ReactiveFlightService reactiveFlightService, ObjectMapper objectMapper) {
+        this.reactiveFlightService = reactiveFlightService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * <b>Interconnections</b>: See {@link FlightV1Controller#interconnections}. With "Accept: application/x-ndjson" each
+     * Journey is sent as a line of JSON as soon as the search emits it, otherwise the list is written once complete.
+     * With sort and/or limit, the ranked journeys are only emitted once the search completes.
+     */
+    @RequestMapping(path = "/interconnections",
+            method = GET,
+            params = {"departure", "arrival", "departureDateTime", "arrivalDateTime"})
+    public Object interconnections(String departure,
+                                   String arrival,
+                                   @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime departureDateTime,
+                                   @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime arrivalDateTime,
+                                   Integer maxStops,
+                                   String sort,
+                                   Integer limit,
+                                   @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                   HttpServletResponse response) {
+        FlightV1Controller.validateParams(departure, arrival, departureDateTime, arrivalDateTime);
+        JourneySort journeySort = FlightV1Controller.validateRanking(sort, limit);
+
+        Flux<Journey> journeys = search(departure.toUpperCase(), arrival.toUpperCase(), departureDateTime, arrivalDateTime, maxStops,
+                journeySort, limit);
+        if (FlightV1Controller.acceptsNdjson(accept)) {
+            response.setContentType(FlightV1Controller.APPLICATION_NDJSON_VALUE);
+            return streamInterconnections(journeys);
+        }
+        return journeys.collectList();
+    }
+
+    /**
+     * See {@link FlightV1Controller}'s search
+     */
+    private Flux<Journey> search(String departure,
+                                 String arrival,
+                                 LocalDateTime departureDateTime,
+                                 LocalDateTime arrivalDateTime,
+                                 Integer maxStops,
+                                 JourneySort sort,
+                                 Integer limit) {
+        if (sort == null) {
+            return maxStops == null
+                    ? reactiveFlightService.getAvailableFlights(departure, arrival, departureDateTime, arrivalDateTime)
+                    : reactiveFlightService.getOptimalJourneys(departure, arrival, departureDateTime, arrivalDateTime, maxStops);
+        }
+        int journeyLimit = limit == null ? Integer.MAX_VALUE : limit;
+        return maxStops == null
+                ? reactiveFlightService.getRankedFlights(departure, arrival, departureDateTime, arrivalDateTime, sort, journeyLimit)
+                : reactiveFlightService.getOptimalJourneys(departure, arrival, departureDateTime, arrivalDateTime, maxStops, sort, journeyLimit);
+    }
+
+    private ResponseBodyEmitter streamInterconnections(Flux<Journey> journeys) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        Disposable search = journeys.subscribe(journey -> {
+            try {
+                byte[] json = objectMapper.writeValueAsBytes(journey);
+                byte[] line = Arrays.copyOf(json, json.length + 1);
+                line[json.length] = '\n';
+                emitter.send(line, FlightV1Controller.APPLICATION_NDJSON);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, emitter::completeWithError, emitter::complete);
+        emitter.onTimeout(search::dispose);
+        emitter.onError(ex -> {
+            logger.info("Streaming interconnections stopped: " + ex.getMessage());
+            search.dispose();
+        });
+        return emitter;
+    }
+}
@@ -0,0 +1,87 @@
+package pw.peterwhite.flights.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for one search of a request to the batch Interconnections API
+ * /api/{version}/interconnections/batch, with the same parameters as /api/{version}/interconnections?...
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class InterconnectionsQuery {
+    private String departure;
+    private String arrival;
+    private LocalDateTime departureDateTime;
+    private LocalDateTime arrivalDateTime;
+    private Integer maxStops;
+
+    @JsonCreator
+    public InterconnectionsQuery(@JsonProperty("departure") String departure,
+                                 @JsonProperty("arrival") String arrival,
+                                 @JsonProperty("departureDateTime") LocalDateTime departureDateTime,
+                                 @JsonProperty("arrivalDateTime") LocalDateTime arrivalDateTime,
+                                 @JsonProperty("maxStops") Integer maxStops) {
+        this.departure = departure;
+        this.arrival = arrival;
+        this.departureDateTime = departureDateTime;
+        this.arrivalDateTime = arrivalDateTime;
+        this.maxStops = maxStops;
+    }
+
+    public String getDeparture() {
+        return departure;
+    }
+
+    public void setDeparture(String departure) {
+        this.departure = departure;
+    }
+
+    public String getArrival() {
+        return arrival;
+    }
+
+    public void setArrival(String arrival) {
+        this.arrival = arrival;
+    }
+
+    public LocalDateTime getDepartureDateTime() {
+        return departureDateTime;
+    }
+
+    public void setDepartureDateTime(LocalDateTime departureDateTime) {
+        this.departureDateTime = departureDateTime;
+    }
+
+    public LocalDateTime getArrivalDateTime() {
+        return arrivalDateTime;
+    }
+
+    public void setArrivalDateTime(LocalDateTime arrivalDateTime) {
+        this.arrivalDateTime = arrivalDateTime;
+    }
+
+    /**
+     * @return most stops of a journey, or null for the usual 0-1 stop search
+     */
+    public Integer getMaxStops() {
+        return maxStops;
+    }
+
+    public void setMaxStops(Integer maxStops) {
+        this.maxStops = maxStops;
+    }
+
+    @Override
+    public String toString() {
+        return "InterconnectionsQuery{" +
+                "departure='" + departure + '\'' +
+                ", arrival='" + arrival + '\'' +
+                ", departureDateTime=" + departureDateTime +
+                ", arrivalDateTime=" + arrivalDateTime +
+                ", maxStops=" + maxStops +
+                '}';
+    }
+}
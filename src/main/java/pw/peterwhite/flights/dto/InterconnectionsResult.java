@@ -0,0 +1,68 @@
+package pw.peterwhite.flights.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * DTO for the outcome of one search of the batch Interconnections API, in the order the searches were sent.
+ * status is the HTTP status the search would have got on its own: with 200 the journeys are set, otherwise error is.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class InterconnectionsResult {
+    private int status;
+    private String error;
+    private List<Journey> journeys;
+
+    @JsonCreator
+    public InterconnectionsResult(@JsonProperty("status") int status,
+                                  @JsonProperty("error") String error,
+                                  @JsonProperty("journeys") List<Journey> journeys) {
+        this.status = status;
+        this.error = error;
+        this.journeys = journeys;
+    }
+
+    public static InterconnectionsResult of(List<Journey> journeys) {
+        return new InterconnectionsResult(200, null, journeys);
+    }
+
+    public static InterconnectionsResult error(int status, String error) {
+        return new InterconnectionsResult(status, error, null);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public List<Journey> getJourneys() {
+        return journeys;
+    }
+
+    public void setJourneys(List<Journey> journeys) {
+        this.journeys = journeys;
+    }
+
+    @Override
+    public String toString() {
+        return "InterconnectionsResult{" +
+                "status=" + status +
+                ", error='" + error + '\'' +
+                ", journeys=" + (journeys == null ? null : journeys.size()) +
+                '}';
+    }
+}
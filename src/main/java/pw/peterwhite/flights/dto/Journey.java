@@ -6,6 +6,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * DTO for the response returned from the Interconnections API
@@ -97,6 +98,26 @@ public class Journey {
             this.arrivalTime = arrivalTime;
         }
 
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Leg leg = (Leg) o;
+            return Objects.equals(departureAirport, leg.departureAirport) &&
+                    Objects.equals(arrivalAirport, leg.arrivalAirport) &&
+                    Objects.equals(departureTime, leg.departureTime) &&
+                    Objects.equals(arrivalTime, leg.arrivalTime);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(departureAirport, arrivalAirport, departureTime, arrivalTime);
+        }
+
         @Override
         public String toString() {
             return "Leg{" +
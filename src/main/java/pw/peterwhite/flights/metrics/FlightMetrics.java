@@ -0,0 +1,89 @@
+package pw.peterwhite.flights.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>FlightMetrics</b>: Meters of the interconnections hot path, published through the application's MeterRegistry
+ * (and so /actuator/metrics and /actuator/prometheus):
+ *  * flights.upstream.requests: timer of every Routes/Schedules API call, retries included, tagged with the api and
+ *    the status it answered with (IO_ERROR when there was no answer)
+ *  * flights.search.upstream.calls, flights.search.hubs, flights.search.journeys: per search, the upstream calls made
+ *    for it, the intermediate airports considered and the journeys returned
+ *  * flights.search.phase: timer of the CPU-bound phases of a search, tagged route_filtering, join or serialization
+ * Timers publish a percentile histogram so latency quantiles can be aggregated across instances.
+ */
+public class FlightMetrics {
+    public static final String UPSTREAM_REQUESTS = "flights.upstream.requests";
+    public static final String SEARCH_UPSTREAM_CALLS = "flights.search.upstream.calls";
+    public static final String SEARCH_HUBS = "flights.search.hubs";
+    public static final String SEARCH_JOURNEYS = "flights.search.journeys";
+    public static final String SEARCH_PHASE = "flights.search.phase";
+
+    public static final String PHASE_ROUTE_FILTERING = "route_filtering";
+    public static final String PHASE_JOIN = "join";
+    public static final String PHASE_SERIALIZATION = "serialization";
+
+    // Status tag of a call that got no HTTP answer (connection refused, read timeout, ...)
+    public static final String IO_ERROR = "IO_ERROR";
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary searchUpstreamCalls;
+    private final DistributionSummary searchHubs;
+    private final DistributionSummary searchJourneys;
+
+    public FlightMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.searchUpstreamCalls = DistributionSummary.builder(SEARCH_UPSTREAM_CALLS)
+                .description("Routes and Schedules API calls made for one interconnections search")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.searchHubs = DistributionSummary.builder(SEARCH_HUBS)
+                .description("Intermediate airports considered by one interconnections search")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.searchJourneys = DistributionSummary.builder(SEARCH_JOURNEYS)
+                .description("Journeys returned by one interconnections search")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param api: Routes or Schedules
+     * @param status: HTTP status code answered, or {@link #IO_ERROR}
+     */
+    public void recordUpstreamCall(String api, String status, long nanos) {
+        Timer.builder(UPSTREAM_REQUESTS)
+                .description("Calls to the upstream Routes and Schedules APIs")
+                .tag("api", api)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSearch(int upstreamCalls, int hubs, int journeys) {
+        searchUpstreamCalls.record(upstreamCalls);
+        searchHubs.record(hubs);
+        searchJourneys.record(journeys);
+    }
+
+    /**
+     * @param phase: one of {@link #PHASE_ROUTE_FILTERING}, {@link #PHASE_JOIN} or {@link #PHASE_SERIALIZATION}
+     */
+    public void recordPhase(String phase, long nanos) {
+        Timer.builder(SEARCH_PHASE)
+                .description("Time spent in each CPU-bound phase of an interconnections search")
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+}
@@ -0,0 +1,136 @@
+package pw.peterwhite.flights.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import pw.peterwhite.flights.cache.DiskCache;
+import pw.peterwhite.flights.cache.QueryResultCache;
+import pw.peterwhite.flights.cache.ScheduleCache;
+import pw.peterwhite.flights.cache.SchedulePrefetcher;
+import pw.peterwhite.flights.clients.CircuitBreaker;
+import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.clients.TokenBucket;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>RyanairApiClientMeters</b>: Publishes the counters RyanairApiClient already keeps (schedule, disk and query caches,
+ * schedule prefetching, request coalescing, rate limiting, retries, circuit breakers and stale serving). Meters of disabled features are left out.
+ */
+public class RyanairApiClientMeters implements MeterBinder {
+    private final RyanairApiClient client;
+
+    public RyanairApiClientMeters(RyanairApiClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("flights.upstream.coalesced", client, RyanairApiClient::getCoalescedCalls)
+                .description("Upstream calls saved by sharing an identical call already in flight")
+                .register(registry);
+        FunctionCounter.builder("flights.upstream.throttled", client, RyanairApiClient::getThrottledResponses)
+                .description("429 Too Many Requests answered by the upstream APIs")
+                .register(registry);
+        FunctionCounter.builder("flights.upstream.retries", client, RyanairApiClient::getRetries)
+                .description("Rate-limited upstream calls retried")
+                .register(registry);
+        FunctionCounter.builder("flights.upstream.not.modified", client, RyanairApiClient::getNotModifiedResponses)
+                .description("Upstream calls answered 304 Not Modified, reusing the cached routes or schedule month")
+                .register(registry);
+        FunctionCounter.builder("flights.upstream.stale.serves", client, RyanairApiClient::getStaleServes)
+                .description("Stale routes or schedule months served because an upstream API failed")
+                .register(registry);
+
+        ScheduleCache scheduleCache = client.getScheduleCache();
+        if (scheduleCache != null) {
+            FunctionCounter.builder("flights.schedule.cache.requests", scheduleCache, ScheduleCache::getHits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("flights.schedule.cache.requests", scheduleCache, ScheduleCache::getMisses)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("flights.schedule.cache.evictions", scheduleCache, ScheduleCache::getEvictions)
+                    .register(registry);
+            Gauge.builder("flights.schedule.cache.size", scheduleCache, ScheduleCache::size)
+                    .register(registry);
+            Gauge.builder("flights.schedule.cache.bytes", scheduleCache, ScheduleCache::getMemoryBytes)
+                    .description("Approximate heap size of the cached schedule months")
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+
+        QueryResultCache queryResultCache = client.getQueryResultCache();
+        if (queryResultCache != null) {
+            FunctionCounter.builder("flights.query.cache.requests", queryResultCache, QueryResultCache::getHits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("flights.query.cache.requests", queryResultCache, QueryResultCache::getMisses)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("flights.query.cache.invalidations", queryResultCache, QueryResultCache::getInvalidations)
+                    .description("Cached search results dropped as their routes or schedules changed")
+                    .register(registry);
+            Gauge.builder("flights.query.cache.size", queryResultCache, QueryResultCache::size)
+                    .register(registry);
+        }
+
+        DiskCache diskCache = client.getDiskCache();
+        if (diskCache != null) {
+            FunctionCounter.builder("flights.disk.cache.requests", diskCache, DiskCache::getHits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("flights.disk.cache.requests", diskCache, DiskCache::getMisses)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("flights.disk.cache.writes", diskCache, DiskCache::getWrites)
+                    .tag("result", "success")
+                    .register(registry);
+            FunctionCounter.builder("flights.disk.cache.writes", diskCache, DiskCache::getWriteFailures)
+                    .tag("result", "failure")
+                    .register(registry);
+        }
+
+        SchedulePrefetcher schedulePrefetcher = client.getSchedulePrefetcher();
+        if (schedulePrefetcher != null) {
+            FunctionCounter.builder("flights.schedule.prefetch.fetches", schedulePrefetcher, SchedulePrefetcher::getFetches)
+                    .tag("result", "success")
+                    .register(registry);
+            FunctionCounter.builder("flights.schedule.prefetch.fetches", schedulePrefetcher, SchedulePrefetcher::getFailures)
+                    .tag("result", "failure")
+                    .register(registry);
+        }
+
+        TokenBucket rateLimiter = client.getRateLimiter();
+        if (rateLimiter != null) {
+            FunctionCounter.builder("flights.upstream.ratelimit.waits", rateLimiter, TokenBucket::getWaits)
+                    .description("Upstream calls that waited for the rate limiter")
+                    .register(registry);
+            FunctionCounter.builder("flights.upstream.ratelimit.wait.seconds", rateLimiter,
+                    bucket -> bucket.getWaitNanos() / (double) TimeUnit.SECONDS.toNanos(1))
+                    .description("Total time upstream calls waited for the rate limiter")
+                    .register(registry);
+            FunctionCounter.builder("flights.upstream.ratelimit.rejections", rateLimiter, TokenBucket::getRejections)
+                    .description("Upstream calls given up on as the rate limiter had no call available in time")
+                    .register(registry);
+        }
+
+        bindCircuitBreaker(registry, "Routes", client.getRoutesCircuitBreaker());
+        bindCircuitBreaker(registry, "Schedules", client.getSchedulesCircuitBreaker());
+    }
+
+    private static void bindCircuitBreaker(MeterRegistry registry, String api, CircuitBreaker circuitBreaker) {
+        if (circuitBreaker == null) {
+            return;
+        }
+        Gauge.builder("flights.upstream.circuit.open", circuitBreaker, breaker -> breaker.isOpen() ? 1 : 0)
+                .description("1 while the circuit breaker of the upstream API is open")
+                .tag("api", api)
+                .register(registry);
+        FunctionCounter.builder("flights.upstream.circuit.opened", circuitBreaker, CircuitBreaker::getOpened)
+                .description("Times the circuit breaker of the upstream API opened")
+                .tag("api", api)
+                .register(registry);
+    }
+}
@@ -0,0 +1,37 @@
+package pw.peterwhite.flights.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * <b>TimedJackson2HttpMessageConverter</b>: Writes JSON responses like Spring Boot's converter, and times the
+ * serialization of search results (lists of journeys or batch outcomes) as the serialization phase on
+ * {@link FlightMetrics}. Other bodies, such as errors, are not timed.
+ */
+public class TimedJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    private final FlightMetrics flightMetrics;
+
+    public TimedJackson2HttpMessageConverter(ObjectMapper objectMapper, FlightMetrics flightMetrics) {
+        super(objectMapper);
+        this.flightMetrics = flightMetrics;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        if (!(object instanceof Collection)) {
+            super.writeInternal(object, type, outputMessage);
+            return;
+        }
+        long serializationStartNanos = System.nanoTime();
+        super.writeInternal(object, type, outputMessage);
+        // Includes the writes, as the JSON is serialized straight to the response
+        flightMetrics.recordPhase(FlightMetrics.PHASE_SERIALIZATION, System.nanoTime() - serializationStartNanos);
+    }
+}
@@ -0,0 +1,126 @@
+package pw.peterwhite.flights.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * <b>AirportDictionary</b>: Immutable interning of airport codes to dense int ids, 0 to size() - 1. Ids are given in
+ * airport code order, so ordering by id is ordering by code, and id-keyed arrays and bitsets can stand in for maps and
+ * sets of codes. An [A-Z]{3} IATA code packs into 15 bits (5 per letter), so it is looked up in a 32768-entry table
+ * without hashing the String; any other code falls back to a HashMap. Dictionaries of fewer than 64 airports, such as
+ * those of a single route's {@link Timetable}, binary search their sorted codes instead of holding the 64KB table.
+ */
+public final class AirportDictionary {
+    public static final int NONE = -1;
+
+    private static final int PACKED_CODES = 1 << 15;
+    private static final int MIN_PACKED_AIRPORTS = 64;
+
+    private static final long ARRAY_HEADER_BYTES = 16;
+    // Object header and its three references
+    private static final long OBJECT_BYTES = 24;
+    // HashMap.Node with its boxed id, and its share of the table
+    private static final long OTHER_ID_BYTES = 64;
+
+    private final String[] codes;
+    // Id of each packed IATA code, NONE for codes not in the dictionary. Null, with otherIds, for small dictionaries
+    private final short[] packedIds;
+    private final Map<String, Integer> otherIds;
+
+    private AirportDictionary(String[] codes, short[] packedIds, Map<String, Integer> otherIds) {
+        this.codes = codes;
+        this.packedIds = packedIds;
+        this.otherIds = otherIds;
+    }
+
+    /**
+     * @param airports: airport codes, in any order and with repeats
+     */
+    public static AirportDictionary of(Collection<String> airports) {
+        String[] codes = new TreeSet<>(airports).toArray(new String[0]);
+        if (codes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many airports: " + codes.length);
+        }
+        if (codes.length < MIN_PACKED_AIRPORTS) {
+            return new AirportDictionary(codes, null, null);
+        }
+        short[] packedIds = new short[PACKED_CODES];
+        Arrays.fill(packedIds, (short) NONE);
+        Map<String, Integer> otherIds = new HashMap<>();
+        for (int id = 0; id < codes.length; id++) {
+            int packed = pack(codes[id]);
+            if (packed == NONE) {
+                otherIds.put(codes[id], id);
+            } else {
+                packedIds[packed] = (short) id;
+            }
+        }
+        return new AirportDictionary(codes, packedIds, otherIds);
+    }
+
+    /**
+     * @return the code packed into 15 bits, or NONE if it is not three upper case letters
+     */
+    public static int pack(String code) {
+        if (code.length() != 3) {
+            return NONE;
+        }
+        int packed = 0;
+        for (int i = 0; i < 3; i++) {
+            int letter = code.charAt(i) - 'A';
+            if (letter < 0 || letter >= 26) {
+                return NONE;
+            }
+            packed = packed << 5 | letter;
+        }
+        return packed;
+    }
+
+    /**
+     * @return the id of the airport, or NONE if it is not in the dictionary (or null)
+     */
+    public int getId(String code) {
+        if (code == null) {
+            return NONE;
+        }
+        if (packedIds == null) {
+            int id = Arrays.binarySearch(codes, code);
+            return id < 0 ? NONE : id;
+        }
+        int packed = pack(code);
+        if (packed != NONE) {
+            return packedIds[packed];
+        }
+        Integer id = otherIds.get(code);
+        return id == null ? NONE : id;
+    }
+
+    public String getCode(int id) {
+        return codes[id];
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * @return approximate heap size of the dictionary, leaving out the airport code Strings
+     */
+    public long getMemoryBytes() {
+        long memoryBytes = OBJECT_BYTES + ((ARRAY_HEADER_BYTES + 4L * codes.length + 7) & ~7L);
+        if (packedIds != null) {
+            memoryBytes += ARRAY_HEADER_BYTES + 2L * packedIds.length + OTHER_ID_BYTES * otherIds.size();
+        }
+        return memoryBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "AirportDictionary{" +
+                "size=" + codes.length +
+                '}';
+    }
+}
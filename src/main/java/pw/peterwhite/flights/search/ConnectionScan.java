@@ -0,0 +1,233 @@
+package pw.peterwhite.flights.search;
+
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <b>ConnectionScan</b>: Timetable search over a set of legs with the profile variant of the Connection Scan Algorithm,
+ * bounded by number of legs. Finds the Pareto-optimal journeys from a departure airport to an arrival airport: those
+ * for which no other journey departs no earlier, arrives no later and has no more stops.
+ * <p>
+ * Legs are scanned once, latest departure first. For every airport and number of legs k, a profile keeps the
+ * journeys on to the arrival airport with at most k legs that are worth taking: later departures only stay if they
+ * arrive earlier. A leg extends the best journey of k-1 legs leaving its arrival airport at least the minimum
+ * connection time after it lands, found by binary search in that profile. The cost is the sort plus
+ * legs * maxLegs * log(profile size), however many journeys the legs could be combined into.
+ * The scan works on the int ids and minutes of a {@link Timetable}, and Legs are only created for the journeys returned.
+ */
+public final class ConnectionScan {
+    private ConnectionScan() {
+    }
+
+    /**
+     * See {@link #search(Timetable, String, String, int, int)}, for legs that are not in a Timetable yet. The journeys
+     * returned are made of new Legs, with the same airports and times as the ones given.
+     */
+    public static List<Journey> search(List<Leg> legs,
+                                       String departure,
+                                       String arrival,
+                                       int maxStops,
+                                       Duration minimumConnection) {
+        return search(Timetable.of(legs), departure, arrival, maxStops, (int) minimumConnection.toMinutes());
+    }
+
+    /**
+     * @param timetable: every flight that may be part of a journey
+     * @param maxStops: most stops a journey may have, 0 for direct flights only
+     * @param minimumConnectionMinutes: least time between landing at an intermediate airport and departing it again
+     * @return the Pareto-optimal journeys, by departure time then number of stops
+     */
+    public static List<Journey> search(Timetable timetable,
+                                       String departure,
+                                       String arrival,
+                                       int maxStops,
+                                       int minimumConnectionMinutes) {
+        int departureId = timetable.getAirportId(departure);
+        int arrivalId = timetable.getAirportId(arrival);
+        if (maxStops < 0 || departureId < 0 || arrivalId < 0 || departureId == arrivalId) {
+            return new ArrayList<>();
+        }
+        int maxLegs = maxStops + 1;
+
+        // Flights to scan as (departure << 32 | flight), and the route of each flight
+        long[] connections = new long[timetable.getFlightCount()];
+        int[] flightRoutes = new int[timetable.getFlightCount()];
+        int connectionCount = 0;
+        for (int route = 0; route < timetable.getRouteCount(); route++) {
+            // A journey that comes back to the departure airport, or goes on from the arrival airport, is never optimal
+            if (timetable.getRouteTo(route) == departureId || timetable.getRouteFrom(route) == arrivalId) {
+                continue;
+            }
+            for (int flight = timetable.getRouteStart(route); flight < timetable.getRouteEnd(route); flight++) {
+                connections[connectionCount++] = (long) timetable.getDeparture(flight) << 32 | flight;
+                flightRoutes[flight] = route;
+            }
+        }
+        Arrays.sort(connections, 0, connectionCount);
+
+        // profiles[airport][k] holds the journeys to the arrival airport with at most k + 1 legs, null if none yet
+        Profile[][] profiles = new Profile[timetable.getAirportCount()][];
+        for (int i = connectionCount - 1; i >= 0; i--) {
+            int flight = (int) connections[i];
+            int route = flightRoutes[flight];
+            int to = timetable.getRouteTo(route);
+            boolean reachesArrival = to == arrivalId;
+            Profile[] onward = reachesArrival ? null : profiles[to];
+            if (!reachesArrival && onward == null) {
+                // Nothing departs the leg's arrival airport later on towards the arrival airport
+                continue;
+            }
+            int departureTime = timetable.getDeparture(flight);
+            int earliestConnection = timetable.getArrival(flight) + minimumConnectionMinutes;
+
+            int from = timetable.getRouteFrom(route);
+            if (profiles[from] == null) {
+                profiles[from] = new Profile[maxLegs];
+            }
+            Profile[] profile = profiles[from];
+            for (int k = 0; k < maxLegs; k++) {
+                Label label;
+                if (reachesArrival) {
+                    label = new Label(flight, departureTime, timetable.getArrival(flight), null);
+                } else {
+                    Label next = k == 0 || onward[k - 1] == null ? null : onward[k - 1].earliestArrivalFrom(earliestConnection);
+                    if (next == null) {
+                        continue;
+                    }
+                    label = new Label(flight, departureTime, next.arrivalTime, next);
+                }
+                if (profile[k] == null) {
+                    profile[k] = new Profile();
+                }
+                profile[k].offer(label);
+            }
+        }
+
+        Profile[] departureProfile = profiles[departureId];
+        if (departureProfile == null) {
+            return new ArrayList<>();
+        }
+        List<Label> candidates = new ArrayList<>();
+        for (Profile profile : departureProfile) {
+            if (profile != null) {
+                candidates.addAll(profile.labels);
+            }
+        }
+        return paretoJourneys(timetable, candidates, maxLegs);
+    }
+
+    /**
+     * Drops the candidates another candidate departs no earlier than, arrives no later than and has no more legs than,
+     * including duplicates, which the profiles of each number of legs share.
+     */
+    private static List<Journey> paretoJourneys(Timetable timetable, List<Label> candidates, int maxLegs) {
+        // Latest departure first, then fewest legs and earliest arrival, so anything that could dominate a candidate
+        // comes before it
+        candidates.sort(Comparator.comparingInt((Label label) -> -label.departureTime)
+                .thenComparingInt(label -> label.legs)
+                .thenComparingInt(label -> label.arrivalTime));
+
+        // Earliest arrival seen so far for each number of legs
+        int[] earliestArrival = new int[maxLegs + 1];
+        Arrays.fill(earliestArrival, Integer.MAX_VALUE);
+        List<Label> optimal = new ArrayList<>();
+        for (Label candidate : candidates) {
+            boolean dominated = false;
+            for (int legs = 1; legs <= candidate.legs && !dominated; legs++) {
+                dominated = earliestArrival[legs] <= candidate.arrivalTime;
+            }
+            if (dominated) {
+                continue;
+            }
+            earliestArrival[candidate.legs] = candidate.arrivalTime;
+            optimal.add(candidate);
+        }
+        optimal.sort(Comparator.comparingInt((Label label) -> label.departureTime)
+                .thenComparingInt(label -> label.legs));
+
+        List<Journey> journeys = new ArrayList<>(optimal.size());
+        for (Label label : optimal) {
+            journeys.add(label.toJourney(timetable));
+        }
+        return journeys;
+    }
+
+    /**
+     * Journeys from one airport to the arrival airport, added latest departure first and each arriving strictly
+     * earlier than the ones before it, so both departures and arrivals are in descending order.
+     */
+    private static final class Profile {
+        private final List<Label> labels = new ArrayList<>();
+
+        void offer(Label label) {
+            if (labels.isEmpty()) {
+                labels.add(label);
+                return;
+            }
+            Label last = labels.get(labels.size() - 1);
+            boolean sameDeparture = label.departureTime == last.departureTime;
+            if (label.arrivalTime < last.arrivalTime) {
+                if (sameDeparture) {
+                    // Same departure arriving earlier, the last one is no longer worth taking
+                    labels.set(labels.size() - 1, label);
+                } else {
+                    labels.add(label);
+                }
+            } else if (sameDeparture && label.arrivalTime == last.arrivalTime && label.legs < last.legs) {
+                // Same times with fewer stops
+                labels.set(labels.size() - 1, label);
+            }
+        }
+
+        /**
+         * @return the earliest arriving journey departing at or after the given minute, or null if there is none
+         */
+        Label earliestArrivalFrom(int time) {
+            // Labels departing at or after time are a prefix of the list, the last of them arrives earliest
+            int low = 0;
+            int high = labels.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (labels.get(mid).departureTime < time) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low == 0 ? null : labels.get(low - 1);
+        }
+    }
+
+    /**
+     * A journey to the arrival airport, as its first flight and the rest of the journey after it.
+     */
+    private static final class Label {
+        private final int flight;
+        private final int departureTime;
+        private final int arrivalTime;
+        private final Label next;
+        private final int legs;
+
+        Label(int flight, int departureTime, int arrivalTime, Label next) {
+            this.flight = flight;
+            this.departureTime = departureTime;
+            this.arrivalTime = arrivalTime;
+            this.next = next;
+            this.legs = next == null ? 1 : next.legs + 1;
+        }
+
+        Journey toJourney(Timetable timetable) {
+            List<Leg> journeyLegs = new ArrayList<>(legs);
+            for (Label label = this; label != null; label = label.next) {
+                journeyLegs.add(timetable.toLeg(label.flight));
+            }
+            return new Journey(legs - 1, journeyLegs);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package pw.peterwhite.flights.search;
+
+import pw.peterwhite.flights.dto.Route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <b>RouteIndex</b>: Immutable adjacency index of a route network, holding only the routes that can be searched, that
+ * is routes of the given operator with no connectingAirport. Airports are interned to dense ids by an
+ * {@link AirportDictionary} as the routes are indexed, and for every airport id it keeps the ids of its destinations and
+ * of its origins as sorted int arrays, next to the matching routes. A direct route lookup is a binary search, the
+ * intermediate airports between two airports are the merge of two sorted arrays, and path searches use id-indexed
+ * arrays, so Strings only come back out with the routes.
+ * Building it is a single pass over the network plus a sort per airport, so it is meant to be built once per route
+ * snapshot and shared.
+ */
+public final class RouteIndex {
+    private static final int UNREACHED = -1;
+    private static final int[] NO_AIRPORTS = new int[0];
+    private static final Route[] NO_ROUTES = new Route[0];
+    private static final RouteIndex EMPTY = new RouteIndex(Collections.emptyList(), null, 0,
+            AirportDictionary.of(Collections.emptyList()), new int[0][], new Route[0][], new int[0][], new Route[0][],
+            Collections.emptySet());
+
+    // The network and operator the index was built from, to tell whether a later snapshot needs a rebuild
+    private final List<Route> source;
+    private final String routeOperator;
+
+    private final int routeCount;
+    private final AirportDictionary airports;
+    // destinations[from] are the ids of the airports with a route from airport id "from", sorted, and
+    // outgoingRoutes[from][i] the route to destinations[from][i]. Likewise origins and incomingRoutes by destination
+    private final int[][] destinations;
+    private final Route[][] outgoingRoutes;
+    private final int[][] origins;
+    private final Route[][] incomingRoutes;
+    // (from id << 32 | to id) of the airport pairs the Routes API returned more than one searchable route for
+    private final Set<Long> duplicatedRoutes;
+
+    private RouteIndex(List<Route> source,
+                       String routeOperator,
+                       int routeCount,
+                       AirportDictionary airports,
+                       int[][] destinations,
+                       Route[][] outgoingRoutes,
+                       int[][] origins,
+                       Route[][] incomingRoutes,
+                       Set<Long> duplicatedRoutes) {
+        this.source = source;
+        this.routeOperator = routeOperator;
+        this.routeCount = routeCount;
+        this.airports = airports;
+        this.destinations = destinations;
+        this.outgoingRoutes = outgoingRoutes;
+        this.origins = origins;
+        this.incomingRoutes = incomingRoutes;
+        this.duplicatedRoutes = duplicatedRoutes;
+    }
+
+    public static RouteIndex of(List<Route> routeNetwork, String routeOperator) {
+        if (routeNetwork.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<Route> searchableRoutes = new ArrayList<>(routeNetwork.size());
+        List<String> codes = new ArrayList<>();
+        for (Route route : routeNetwork) {
+            if (route == null
+                    || route.getConnectingAirport() != null
+                    || !Objects.equals(route.getOperator(), routeOperator)
+                    || route.getAirportFrom() == null
+                    || route.getAirportTo() == null) {
+                continue;
+            }
+            searchableRoutes.add(route);
+            codes.add(route.getAirportFrom());
+            codes.add(route.getAirportTo());
+        }
+        AirportDictionary airports = AirportDictionary.of(codes);
+        int airportCount = airports.size();
+
+        // Sort keys (destination << 32 | position) of each origin's routes, so a stable sort by destination keeps the
+        // first of duplicated routes first
+        int[] fromIds = new int[searchableRoutes.size()];
+        int[] toIds = new int[searchableRoutes.size()];
+        int[] outgoingCounts = new int[airportCount];
+        for (int i = 0; i < searchableRoutes.size(); i++) {
+            fromIds[i] = airports.getId(searchableRoutes.get(i).getAirportFrom());
+            toIds[i] = airports.getId(searchableRoutes.get(i).getAirportTo());
+            outgoingCounts[fromIds[i]]++;
+        }
+        long[][] outgoingKeys = new long[airportCount][];
+        for (int airport = 0; airport < airportCount; airport++) {
+            outgoingKeys[airport] = new long[outgoingCounts[airport]];
+            outgoingCounts[airport] = 0;
+        }
+        for (int i = 0; i < searchableRoutes.size(); i++) {
+            outgoingKeys[fromIds[i]][outgoingCounts[fromIds[i]]++] = (long) toIds[i] << 32 | i;
+        }
+
+        Set<Long> duplicatedRoutes = new HashSet<>();
+        int routeCount = 0;
+        int[][] destinations = new int[airportCount][];
+        Route[][] outgoingRoutes = new Route[airportCount][];
+        int[] incomingCounts = new int[airportCount];
+        for (int from = 0; from < airportCount; from++) {
+            long[] keys = outgoingKeys[from];
+            Arrays.sort(keys);
+            int[] to = new int[keys.length];
+            Route[] routes = new Route[keys.length];
+            int count = 0;
+            for (long key : keys) {
+                int destination = (int) (key >>> 32);
+                if (count > 0 && to[count - 1] == destination) {
+                    duplicatedRoutes.add((long) from << 32 | destination);
+                    continue;
+                }
+                to[count] = destination;
+                routes[count] = searchableRoutes.get((int) key);
+                incomingCounts[destination]++;
+                count++;
+            }
+            destinations[from] = count == 0 ? NO_AIRPORTS : Arrays.copyOf(to, count);
+            outgoingRoutes[from] = count == 0 ? NO_ROUTES : Arrays.copyOf(routes, count);
+            routeCount += count;
+        }
+
+        // Walking origins in id order fills each destination's origins already sorted
+        int[][] origins = new int[airportCount][];
+        Route[][] incomingRoutes = new Route[airportCount][];
+        for (int to = 0; to < airportCount; to++) {
+            origins[to] = incomingCounts[to] == 0 ? NO_AIRPORTS : new int[incomingCounts[to]];
+            incomingRoutes[to] = incomingCounts[to] == 0 ? NO_ROUTES : new Route[incomingCounts[to]];
+            incomingCounts[to] = 0;
+        }
+        for (int from = 0; from < airportCount; from++) {
+            for (int i = 0; i < destinations[from].length; i++) {
+                int to = destinations[from][i];
+                origins[to][incomingCounts[to]] = from;
+                incomingRoutes[to][incomingCounts[to]++] = outgoingRoutes[from][i];
+            }
+        }
+        return new RouteIndex(routeNetwork, routeOperator, routeCount, airports,
+                destinations, outgoingRoutes, origins, incomingRoutes, duplicatedRoutes);
+    }
+
+    /**
+     * @return previous if it was built from this exact network instance (such as an unchanged route snapshot) and
+     *          operator, otherwise a new index of the network
+     */
+    public static RouteIndex reuseOrBuild(RouteIndex previous, List<Route> routeNetwork, String routeOperator) {
+        if (previous != null && previous.source == routeNetwork && Objects.equals(previous.routeOperator, routeOperator)) {
+            return previous;
+        }
+        return of(routeNetwork, routeOperator);
+    }
+
+    /**
+     * @return number of searchable routes in the index
+     */
+    public int size() {
+        return routeCount;
+    }
+
+    /**
+     * @return the ids of the airports of the searchable routes
+     */
+    public AirportDictionary getAirports() {
+        return airports;
+    }
+
+    /**
+     * @return the route from airportFrom to airportTo, or null if there is none
+     */
+    public Route getRoute(String airportFrom, String airportTo) {
+        return getRoute(airports.getId(airportFrom), airports.getId(airportTo));
+    }
+
+    /**
+     * @return the route between the airport ids, or null if there is none (or either is AirportDictionary.NONE)
+     */
+    public Route getRoute(int airportFrom, int airportTo) {
+        if (airportFrom == AirportDictionary.NONE || airportTo == AirportDictionary.NONE) {
+            return null;
+        }
+        int i = Arrays.binarySearch(destinations[airportFrom], airportTo);
+        return i < 0 ? null : outgoingRoutes[airportFrom][i];
+    }
+
+    /**
+     * @return true if the Routes API returned more than one searchable route from airportFrom to airportTo
+     */
+    public boolean isDuplicated(String airportFrom, String airportTo) {
+        return isDuplicated(airports.getId(airportFrom), airports.getId(airportTo));
+    }
+
+    public boolean isDuplicated(int airportFrom, int airportTo) {
+        return !duplicatedRoutes.isEmpty() && duplicatedRoutes.contains((long) airportFrom << 32 | airportTo);
+    }
+
+    /**
+     * @return the airports with a route from departure and a route to arrival, sorted by airport code
+     */
+    public List<String> getIntermediateAirports(String departure, String arrival) {
+        int[] intermediateIds = getIntermediateAirports(airports.getId(departure), airports.getId(arrival));
+        List<String> intermediateAirports = new ArrayList<>(intermediateIds.length);
+        for (int airport : intermediateIds) {
+            intermediateAirports.add(airports.getCode(airport));
+        }
+        return intermediateAirports;
+    }
+
+    /**
+     * @return the ids of the airports with a route from departure and a route to arrival, sorted
+     */
+    public int[] getIntermediateAirports(int departure, int arrival) {
+        if (departure == AirportDictionary.NONE || arrival == AirportDictionary.NONE) {
+            return NO_AIRPORTS;
+        }
+        int[] from = destinations[departure];
+        int[] to = origins[arrival];
+        // Merge the two sorted arrays, so the result is already in airport order
+        int[] intermediateAirports = new int[Math.min(from.length, to.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < from.length && j < to.length) {
+            if (from[i] < to[j]) {
+                i++;
+            } else if (from[i] > to[j]) {
+                j++;
+            } else {
+                intermediateAirports[count++] = from[i];
+                i++;
+                j++;
+            }
+        }
+        return count == intermediateAirports.length ? intermediateAirports : Arrays.copyOf(intermediateAirports, count);
+    }
+
+    /**
+     * @return every route on some path of at most maxLegs routes from departure to arrival, sorted by origin then
+     *          destination. Paths don't pass through the departure or arrival airport on the way
+     */
+    public List<Route> getRoutesOnPaths(String departure, String arrival, int maxLegs) {
+        int departureId = airports.getId(departure);
+        int arrivalId = airports.getId(arrival);
+        List<Route> routes = new ArrayList<>();
+        if (departureId == AirportDictionary.NONE || arrivalId == AirportDictionary.NONE) {
+            return routes;
+        }
+
+        // Fewest routes from departure to each airport, and from each airport to arrival
+        int[] fromDeparture = distances(departureId, arrivalId, maxLegs - 1, destinations);
+        int[] toArrival = distances(arrivalId, departureId, maxLegs - 1, origins);
+
+        for (int airportFrom = 0; airportFrom < fromDeparture.length; airportFrom++) {
+            int legsBefore = fromDeparture[airportFrom];
+            if (legsBefore == UNREACHED || airportFrom == arrivalId) {
+                continue;
+            }
+            for (int i = 0; i < destinations[airportFrom].length; i++) {
+                int airportTo = destinations[airportFrom][i];
+                int legsAfter = toArrival[airportTo];
+                if (legsAfter != UNREACHED && airportTo != departureId && legsBefore + 1 + legsAfter <= maxLegs) {
+                    routes.add(outgoingRoutes[airportFrom][i]);
+                }
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * Breadth-first search over the given adjacency from start, not going on from stop, up to maxDistance routes away.
+     *
+     * @return the distance of each airport id, UNREACHED for those further away or not connected
+     */
+    private static int[] distances(int start, int stop, int maxDistance, int[][] adjacency) {
+        int[] distances = new int[adjacency.length];
+        Arrays.fill(distances, UNREACHED);
+        distances[start] = 0;
+        int[] queue = new int[adjacency.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int airport = queue[head++];
+            int distance = distances[airport];
+            if (distance == maxDistance || airport == stop) {
+                continue;
+            }
+            for (int neighbour : adjacency[airport]) {
+                if (distances[neighbour] == UNREACHED) {
+                    distances[neighbour] = distance + 1;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+        return distances;
+    }
+}
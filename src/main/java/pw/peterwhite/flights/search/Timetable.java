@@ -0,0 +1,428 @@
+package pw.peterwhite.flights.search;
+
+import pw.peterwhite.flights.dto.Journey.Leg;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <b>Timetable</b>: Immutable columnar store of flights. Airports are held once as int ids of an
+ * {@link AirportDictionary}, and each flight as two ints,
+ * its departure and arrival in minutes since the epoch (local times, as the Schedules API gives them). Flights are
+ * grouped by route and sorted by departure within a route, with an offset array giving each route's range, so a
+ * route's flights from a given time on are found by binary search.
+ * <p>
+ * A flight takes 8 bytes here, against around 150 bytes as a {@link Leg} with its two LocalDateTimes, so Legs are
+ * only materialized ({@link #toLeg}) for the flights a caller actually hands out. Times are kept to the minute, which
+ * is all the Schedules API gives.
+ * <p>
+ * A timetable built on the {@link RouteIndex}'s dictionary shares its airport ids, so an airport id from one can be
+ * used with the other. Otherwise the timetable has a dictionary of its own airports.
+ */
+public final class Timetable {
+    public static final Timetable EMPTY = new Builder().build();
+
+    private static final long ARRAY_HEADER_BYTES = 16;
+    // Object header and its six references
+    private static final long OBJECT_BYTES = 40;
+
+    private final AirportDictionary airports;
+
+    // Origin and destination airport ids of each route, and the range of its flights: routeOffsets[route] (inclusive)
+    // to routeOffsets[route + 1] (exclusive)
+    private final int[] routeFrom;
+    private final int[] routeTo;
+    private final int[] routeOffsets;
+
+    private final int[] departures;
+    private final int[] arrivals;
+
+    private Timetable(AirportDictionary airports, int[] routeFrom, int[] routeTo, int[] routeOffsets,
+                      int[] departures, int[] arrivals) {
+        this.airports = airports;
+        this.routeFrom = routeFrom;
+        this.routeTo = routeTo;
+        this.routeOffsets = routeOffsets;
+        this.departures = departures;
+        this.arrivals = arrivals;
+    }
+
+    public static Timetable of(List<Leg> legs) {
+        Builder builder = new Builder();
+        for (Leg leg : legs) {
+            builder.add(leg);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the flights of the given timetables departing at or after departureDateTime and arriving at or before
+     *          arrivalDateTime. Flights are to the minute, so a departureDateTime part way through a minute rounds up
+     */
+    public static Timetable within(List<Timetable> timetables, LocalDateTime departureDateTime, LocalDateTime arrivalDateTime) {
+        int earliestDeparture = toMinutes(departureDateTime.plusMinutes(1).minusNanos(1));
+        int latestArrival = toMinutes(arrivalDateTime);
+        Builder flights = new Builder();
+        for (Timetable timetable : timetables) {
+            flights.addAll(timetable, earliestDeparture, latestArrival);
+        }
+        return flights.build();
+    }
+
+    public static int toMinutes(LocalDateTime dateTime) {
+        return (int) Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    public static LocalDateTime toDateTime(int minutes) {
+        return LocalDateTime.ofEpochSecond(minutes * 60L, 0, ZoneOffset.UTC);
+    }
+
+    public AirportDictionary getAirports() {
+        return airports;
+    }
+
+    /**
+     * @return number of airport ids, which for a shared dictionary includes airports with no flights here
+     */
+    public int getAirportCount() {
+        return airports.size();
+    }
+
+    public String getAirport(int airport) {
+        return airports.getCode(airport);
+    }
+
+    /**
+     * @return the id of the airport, or AirportDictionary.NONE if it is not in the timetable's dictionary
+     */
+    public int getAirportId(String airport) {
+        return airports.getId(airport);
+    }
+
+    public int getRouteCount() {
+        return routeFrom.length;
+    }
+
+    public int getRouteFrom(int route) {
+        return routeFrom[route];
+    }
+
+    public int getRouteTo(int route) {
+        return routeTo[route];
+    }
+
+    /**
+     * @return index of the route's first flight
+     */
+    public int getRouteStart(int route) {
+        return routeOffsets[route];
+    }
+
+    /**
+     * @return index after the route's last flight
+     */
+    public int getRouteEnd(int route) {
+        return routeOffsets[route + 1];
+    }
+
+    public int getFlightCount() {
+        return departures.length;
+    }
+
+    public int getDeparture(int flight) {
+        return departures[flight];
+    }
+
+    public int getArrival(int flight) {
+        return arrivals[flight];
+    }
+
+    /**
+     * @return index of the route's first flight departing at or after the given minute, or getRouteEnd(route) if none
+     */
+    public int firstDepartingAtOrAfter(int route, int minutes) {
+        int low = routeOffsets[route];
+        int high = routeOffsets[route + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (departures[mid] < minutes) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the flights departing at or after earliestDeparture and arriving at or before latestArrival
+     */
+    public Timetable between(int earliestDeparture, int latestArrival) {
+        return new Builder().addAll(this, earliestDeparture, latestArrival).build();
+    }
+
+    /**
+     * @return the route the flight belongs to
+     */
+    public int getRouteOf(int flight) {
+        // Last route starting at or before the flight. Routes are never empty, so their starts are strictly increasing
+        int low = 0;
+        int high = routeFrom.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (routeOffsets[mid] <= flight) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    public Leg toLeg(int flight) {
+        return toLeg(flight, getRouteOf(flight));
+    }
+
+    private Leg toLeg(int flight, int route) {
+        return new Leg(airports.getCode(routeFrom[route]), airports.getCode(routeTo[route]),
+                toDateTime(departures[flight]), toDateTime(arrivals[flight]));
+    }
+
+    /**
+     * @return a Leg for every flight, by route then departure. Flights added out of departure order, such as a
+     *          Schedules API day listing a later flight first, do not keep the order they were added in
+     */
+    public List<Leg> toLegs() {
+        List<Leg> legs = new ArrayList<>(departures.length);
+        for (int route = 0; route < routeFrom.length; route++) {
+            for (int flight = routeOffsets[route]; flight < routeOffsets[route + 1]; flight++) {
+                legs.add(toLeg(flight, route));
+            }
+        }
+        return legs;
+    }
+
+    /**
+     * @return true if the other timetable has exactly the same flights on the same routes, in the same order. Used to
+     *          tell whether a refetched schedule month has changed
+     */
+    public boolean hasSameFlights(Timetable other) {
+        if (!Arrays.equals(routeOffsets, other.routeOffsets)
+                || !Arrays.equals(departures, other.departures)
+                || !Arrays.equals(arrivals, other.arrivals)) {
+            return false;
+        }
+        // Compared by code, as the two may be built on different dictionaries
+        for (int route = 0; route < routeFrom.length; route++) {
+            if (!getAirport(routeFrom[route]).equals(other.getAirport(other.routeFrom[route]))
+                    || !getAirport(routeTo[route]).equals(other.getAirport(other.routeTo[route]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return approximate heap size of the timetable's arrays and dictionary, leaving out the airport code Strings,
+     *          which are shared with the route network
+     */
+    public long getMemoryBytes() {
+        return OBJECT_BYTES
+                + airports.getMemoryBytes()
+                + arrayBytes(routeFrom.length) * 2
+                + arrayBytes(routeOffsets.length)
+                + arrayBytes(departures.length) * 2;
+    }
+
+    private static long arrayBytes(int length) {
+        // 4 bytes per int or compressed reference, padded to 8 bytes
+        return (ARRAY_HEADER_BYTES + 4L * length + 7) & ~7L;
+    }
+
+    @Override
+    public String toString() {
+        return "Timetable{" +
+                "airports=" + airports.size() +
+                ", routes=" + routeFrom.length +
+                ", flights=" + departures.length +
+                '}';
+    }
+
+    /**
+     * Collects flights in any order. {@link #build} groups them by route, in the order routes were first added, and
+     * sorts each route's flights by departure.
+     */
+    public static final class Builder {
+        // Dictionary the timetable is built on, or null to build one of the airports added
+        private final AirportDictionary dictionary;
+        // Airports added, by their index here until build() when there is no dictionary
+        private final List<String> airports = new ArrayList<>();
+        private final Map<String, Integer> airportIndexes = new HashMap<>();
+        // Route id of each ((long) from << 32 | to) pair
+        private final Map<Long, Integer> routeIds = new HashMap<>();
+        private int[] routeFrom = new int[4];
+        private int[] routeTo = new int[4];
+        private int[] routeSizes = new int[4];
+
+        private int[] flightRoutes = new int[16];
+        private int[] departures = new int[16];
+        private int[] arrivals = new int[16];
+        private int flightCount;
+        // Flights mostly come a route at a time, with the same airport String instances
+        private String lastFrom;
+        private String lastTo;
+        private int lastRoute;
+
+        public Builder() {
+            dictionary = null;
+        }
+
+        /**
+         * @param dictionary: the airport ids to build the timetable on, eg. {@link RouteIndex#getAirports}. Every
+         *                    airport added must be in it
+         */
+        public Builder(AirportDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * @param expectedFlights: number of flights that will be added, so the flight arrays are not grown while adding
+         */
+        public Builder(int expectedFlights) {
+            dictionary = null;
+            int capacity = Math.max(1, expectedFlights);
+            flightRoutes = new int[capacity];
+            departures = new int[capacity];
+            arrivals = new int[capacity];
+        }
+
+        public Builder add(Leg leg) {
+            return add(leg.getDepartureAirport(), leg.getArrivalAirport(),
+                    toMinutes(leg.getDepartureTime()), toMinutes(leg.getArrivalTime()));
+        }
+
+        public Builder add(String airportFrom, String airportTo, int departure, int arrival) {
+            int route;
+            if (airportFrom == lastFrom && airportTo == lastTo) {
+                route = lastRoute;
+            } else {
+                route = routeId(airportId(airportFrom), airportId(airportTo));
+                lastFrom = airportFrom;
+                lastTo = airportTo;
+                lastRoute = route;
+            }
+            if (flightCount == departures.length) {
+                int capacity = flightCount * 2;
+                flightRoutes = Arrays.copyOf(flightRoutes, capacity);
+                departures = Arrays.copyOf(departures, capacity);
+                arrivals = Arrays.copyOf(arrivals, capacity);
+            }
+            flightRoutes[flightCount] = route;
+            departures[flightCount] = departure;
+            arrivals[flightCount] = arrival;
+            flightCount++;
+            routeSizes[route]++;
+            return this;
+        }
+
+        public Builder addAll(Timetable timetable) {
+            return addAll(timetable, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Adds the flights of the timetable departing at or after earliestDeparture and arriving at or before
+         * latestArrival.
+         */
+        public Builder addAll(Timetable timetable, int earliestDeparture, int latestArrival) {
+            for (int route = 0; route < timetable.getRouteCount(); route++) {
+                String from = timetable.getAirport(timetable.getRouteFrom(route));
+                String to = timetable.getAirport(timetable.getRouteTo(route));
+                int end = timetable.getRouteEnd(route);
+                for (int flight = timetable.firstDepartingAtOrAfter(route, earliestDeparture); flight < end; flight++) {
+                    if (timetable.getArrival(flight) <= latestArrival) {
+                        add(from, to, timetable.getDeparture(flight), timetable.getArrival(flight));
+                    }
+                }
+            }
+            return this;
+        }
+
+        public Timetable build() {
+            int routeCount = routeIds.size();
+            int[] routeOffsets = new int[routeCount + 1];
+            for (int route = 0; route < routeCount; route++) {
+                routeOffsets[route + 1] = routeOffsets[route] + routeSizes[route];
+            }
+
+            // Departure in the high half, arrival in the low half, so sorting a route's slice sorts its flights
+            long[] flights = new long[flightCount];
+            int[] next = Arrays.copyOf(routeOffsets, routeCount);
+            for (int i = 0; i < flightCount; i++) {
+                flights[next[flightRoutes[i]]++] = (long) departures[i] << 32 | (arrivals[i] & 0xFFFFFFFFL);
+            }
+            int[] sortedDepartures = new int[flightCount];
+            int[] sortedArrivals = new int[flightCount];
+            for (int route = 0; route < routeCount; route++) {
+                Arrays.sort(flights, routeOffsets[route], routeOffsets[route + 1]);
+            }
+            for (int i = 0; i < flightCount; i++) {
+                sortedDepartures[i] = (int) (flights[i] >> 32);
+                sortedArrivals[i] = (int) flights[i];
+            }
+
+            int[] builtRouteFrom = Arrays.copyOf(routeFrom, routeCount);
+            int[] builtRouteTo = Arrays.copyOf(routeTo, routeCount);
+            AirportDictionary builtAirports = dictionary;
+            if (builtAirports == null) {
+                builtAirports = AirportDictionary.of(airports);
+                for (int route = 0; route < routeCount; route++) {
+                    builtRouteFrom[route] = builtAirports.getId(airports.get(builtRouteFrom[route]));
+                    builtRouteTo[route] = builtAirports.getId(airports.get(builtRouteTo[route]));
+                }
+            }
+            return new Timetable(builtAirports, builtRouteFrom, builtRouteTo, routeOffsets, sortedDepartures, sortedArrivals);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the builder has a dictionary and the airport is not in it
+         */
+        private int airportId(String airport) {
+            if (dictionary != null) {
+                int id = dictionary.getId(airport);
+                if (id == AirportDictionary.NONE) {
+                    throw new IllegalArgumentException("Airport not in the dictionary: " + airport);
+                }
+                return id;
+            }
+            Integer index = airportIndexes.get(airport);
+            if (index == null) {
+                index = airports.size();
+                airports.add(airport);
+                airportIndexes.put(airport, index);
+            }
+            return index;
+        }
+
+        private int routeId(int from, int to) {
+            Long key = (long) from << 32 | to;
+            Integer id = routeIds.get(key);
+            if (id == null) {
+                id = routeIds.size();
+                routeIds.put(key, id);
+                if (id == routeFrom.length) {
+                    routeFrom = Arrays.copyOf(routeFrom, id * 2);
+                    routeTo = Arrays.copyOf(routeTo, id * 2);
+                    routeSizes = Arrays.copyOf(routeSizes, id * 2);
+                }
+                routeFrom[id] = from;
+                routeTo[id] = to;
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package pw.peterwhite.flights.services;
+
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <b>Connections</b>: Joins the legs into and out of an intermediate airport into one-stop journeys.
+ */
+final class Connections {
+    // 2nd leg departure time from intermediate airport cannot be before 2 hours after 1st leg arrival time
+    static final long MINIMUM_CONNECTION_HOURS = 2;
+
+    private Connections() {
+    }
+
+    /**
+     * Pairs every first leg with every second leg departing at least the minimum connection time after it arrives.
+     * Journeys come out in first leg order, and for each first leg in the order the second legs were given in.
+     * Second legs are ordered by departure time once, then each first leg binary-searches for its earliest connection
+     * and takes every leg from there on, so the cost is the sort plus the number of journeys found.
+     */
+    static List<Journey> joinOneStop(List<Leg> departureLegs, List<Leg> arrivalLegs) {
+        List<Journey> journeys = new ArrayList<>();
+        joinOneStop(departureLegs, arrivalLegs, journeys::add);
+        return journeys;
+    }
+
+    /**
+     * Same join as {@link #joinOneStop(List, List)}, handing each journey to the consumer instead of collecting them,
+     * eg. to keep only the best ones in a {@link RankedJourneys}.
+     */
+    static void joinOneStop(List<Leg> departureLegs, List<Leg> arrivalLegs, Consumer<Journey> journeys) {
+        if (departureLegs.isEmpty() || arrivalLegs.isEmpty()) {
+            return;
+        }
+
+        int secondLegCount = arrivalLegs.size();
+        // Schedules API months are normally already in departure order. Otherwise sort their positions by departure
+        Integer[] byDeparture = null;
+        if (!isInDepartureOrder(arrivalLegs)) {
+            byDeparture = new Integer[secondLegCount];
+            for (int i = 0; i < secondLegCount; i++) {
+                byDeparture[i] = i;
+            }
+            Arrays.sort(byDeparture, Comparator.comparing(i -> arrivalLegs.get(i).getDepartureTime()));
+        }
+
+        for (Leg firstLeg : departureLegs) {
+            LocalDateTime earliestDeparture = firstLeg.getArrivalTime().plusHours(MINIMUM_CONNECTION_HOURS);
+            int first = firstDepartingAtOrAfter(arrivalLegs, byDeparture, earliestDeparture);
+            if (first == secondLegCount) {
+                continue;
+            }
+
+            if (byDeparture == null) {
+                for (int i = first; i < secondLegCount; i++) {
+                    journeys.accept(new Journey(1, Arrays.asList(firstLeg, arrivalLegs.get(i))));
+                }
+            } else {
+                // Put the connections back in the order the second legs were given in
+                int[] connections = new int[secondLegCount - first];
+                for (int i = first; i < secondLegCount; i++) {
+                    connections[i - first] = byDeparture[i];
+                }
+                Arrays.sort(connections);
+                for (int i : connections) {
+                    journeys.accept(new Journey(1, Arrays.asList(firstLeg, arrivalLegs.get(i))));
+                }
+            }
+        }
+    }
+
+    private static boolean isInDepartureOrder(List<Leg> legs) {
+        for (int i = 1; i < legs.size(); i++) {
+            if (legs.get(i).getDepartureTime().isBefore(legs.get(i - 1).getDepartureTime())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the sorted position of the first leg departing at or after the given time, or legs.size() if none.
+     *          byDeparture is null when the legs are already in departure order
+     */
+    private static int firstDepartingAtOrAfter(List<Leg> legs, Integer[] byDeparture, LocalDateTime time) {
+        int low = 0;
+        int high = legs.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Leg leg = legs.get(byDeparture == null ? mid : byDeparture[mid]);
+            if (leg.getDepartureTime().isBefore(time)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -3,21 +3,44 @@ package pw.peterwhite.flights.services;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.cache.QueryResultCache;
+import pw.peterwhite.flights.cache.ScheduleMonthKey;
+import pw.peterwhite.flights.cache.UpstreamUsage;
 import pw.peterwhite.flights.clients.RyanairApiClient;
 import pw.peterwhite.flights.config.FlightConfigProperties;
+import pw.peterwhite.flights.dto.InterconnectionsQuery;
+import pw.peterwhite.flights.dto.InterconnectionsResult;
 import pw.peterwhite.flights.dto.Journey;
 import pw.peterwhite.flights.dto.Journey.Leg;
 import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.metrics.FlightMetrics;
+import pw.peterwhite.flights.search.RouteIndex;
+import pw.peterwhite.flights.search.Timetable;
 
 import java.time.LocalDateTime;
-import java.util.*;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class FlightService {
     private static final Log logger = LogFactory.getLog(FlightService.class);
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
 
     @Autowired
     private FlightConfigProperties flightConfigProperties;
@@ -25,18 +48,107 @@ public class FlightService {
     @Autowired
     private RyanairApiClient ryanairApiClient;
 
-    /* Requirements for finding suitable routes between departure airport and arrival airport:
-        - connectingAirport is null
-        - operator is "RYANAIR" (read from config)
-        - in the case of zero stops: airportFrom matches departure airport AND airportTo matches arrival airport
-        - in the case of one stop: airportFrom matches departure airport OR airportTo matches arrival airport, this will
-            result in two lists, and we need to filter those based on the airportTo of departure airport matching the
-            airportFrom of the arrival airport.
-    */
+    @Autowired
+    @Qualifier("scheduleFetchExecutor")
+    private Executor scheduleFetchExecutor;
+
+    @Autowired
+    private FlightMetrics flightMetrics;
+
+    // Index of the last route network seen, only rebuilt when RyanairApiClient returns a different snapshot
+    private volatile RouteIndex routeIndex;
+
+    /**
+     * <b>getAvailableFlights</b>: Every direct and one stop journey from departure to arrival within the date-times.
+     * With the query cache enabled, the search is made for the whole bucket of the date-times (see
+     * {@link QueryResultCache}) and its journeys cached, unless any stale data was served for it, so the next searches
+     * in the bucket only need to pick theirs out.
+     */
     public List<Journey> getAvailableFlights(String departure,
                                              String arrival,
                                              LocalDateTime departureDateTime,
                                              LocalDateTime arrivalDateTime) {
+        QueryResultCache queryResultCache = ryanairApiClient.getQueryResultCache();
+        if (queryResultCache == null || departure == null || arrival == null || departureDateTime == null || arrivalDateTime == null) {
+            return collectAvailableFlights(departure, arrival, departureDateTime, arrivalDateTime);
+        }
+
+        List<Journey> cachedJourneys = queryResultCache.get(departure, arrival, departureDateTime, arrivalDateTime);
+        if (cachedJourneys != null) {
+            logger.info("Total valid journeys found in query cache: " + cachedJourneys.size());
+            return cachedJourneys;
+        }
+        long cacheVersion = queryResultCache.getVersion();
+        LocalDateTime bucketStart = queryResultCache.getBucketStart(departureDateTime);
+        LocalDateTime bucketEnd = queryResultCache.getBucketEnd(arrivalDateTime);
+        List<Journey> bucketJourneys = collectAvailableFlights(departure, arrival, bucketStart, bucketEnd);
+        UpstreamUsage upstreamUsage = UpstreamUsage.current();
+        if (upstreamUsage != null && !upstreamUsage.isStale()) {
+            queryResultCache.put(departure, arrival, bucketStart, bucketEnd, bucketJourneys, cacheVersion,
+                    upstreamUsage.getEarliestExpiryMillis());
+        }
+        return QueryResultCache.within(bucketJourneys, departureDateTime, arrivalDateTime);
+    }
+
+    private List<Journey> collectAvailableFlights(String departure,
+                                                  String arrival,
+                                                  LocalDateTime departureDateTime,
+                                                  LocalDateTime arrivalDateTime) {
+        // List to hold all suitable journeys
+        List<Journey> journeyList = new ArrayList<>();
+        streamAvailableFlights(departure, arrival, departureDateTime, arrivalDateTime, journeyList::addAll);
+        logger.info("Total valid journeys found: " + journeyList.size());
+        return journeyList;
+    }
+
+    /**
+     * <b>getRankedFlights</b>: Same search as {@link #getAvailableFlights}, but only returns the best limit journeys in
+     * the given sort order, best first. Journeys are kept in a bounded heap as they are joined, so no more than limit
+     * are held at once. Once limit journeys are found, a hub whose journeys cannot beat the worst of them is skipped
+     * before its schedules are fetched, or before its second legs are fetched once its first legs are known. With
+     * STOPS, limit direct journeys mean no hub is fetched at all.
+     */
+    public List<Journey> getRankedFlights(String departure,
+                                          String arrival,
+                                          LocalDateTime departureDateTime,
+                                          LocalDateTime arrivalDateTime,
+                                          JourneySort sort,
+                                          int limit) {
+        RankedJourneys ranking = new RankedJourneys(sort, limit);
+        searchAvailableFlights(departure, arrival, departureDateTime, arrivalDateTime, ranking::offerAll, ranking);
+        List<Journey> journeys = ranking.toList();
+        logger.info("Best journeys by " + sort + ": " + journeys.size());
+        return journeys;
+    }
+
+    /**
+     * <b>streamAvailableFlights</b>: Same search as {@link #getAvailableFlights}, but hands the journeys over as they are
+     * found instead of collecting them: first a batch of the direct journeys, then one batch per intermediate airport in
+     * airport order (empty batches are skipped). Batches are delivered on the calling thread, so the caller can write
+     * each one out and drop it before the next hub is waited for.
+     * Each completed search records its upstream calls, hubs and journeys on {@link FlightMetrics}, and the route
+     * filtering and join phases are timed there too.
+     *
+     * @throws ResponseStatusException as getAvailableFlights. Batches already delivered stay delivered
+     */
+    public void streamAvailableFlights(String departure,
+                                       String arrival,
+                                       LocalDateTime departureDateTime,
+                                       LocalDateTime arrivalDateTime,
+                                       Consumer<List<Journey>> journeyBatches) {
+        searchAvailableFlights(departure, arrival, departureDateTime, arrivalDateTime, journeyBatches, null);
+    }
+
+    /**
+     * The search of streamAvailableFlights and getRankedFlights. With a ranking, the journeys of each hub go straight
+     * into it from the executor thread that joined them, so hubs still being fetched can be pruned against them.
+     */
+    private void searchAvailableFlights(String departure,
+                                        String arrival,
+                                        LocalDateTime departureDateTime,
+                                        LocalDateTime arrivalDateTime,
+                                        Consumer<List<Journey>> journeyBatches,
+                                        RankedJourneys ranking) {
         if (departure == null || arrival == null || departureDateTime == null || arrivalDateTime == null) {
             logger.error("Invalid parameters supplied to FlightService.getAvailableFlights");
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -44,94 +156,396 @@ public class FlightService {
 
         logger.info(String.format("Getting flights from %s-%s between %s and %s", departure, arrival, departureDateTime, arrivalDateTime));
 
-        List<Route> allRoutes = ryanairApiClient.getRoutes();
-        logger.info("Total routes: " + allRoutes.size());
+        long requestTimeoutMs = flightConfigProperties.getRequestTimeoutMs();
+        long deadlineNanos = requestTimeoutMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs) : NO_DEADLINE;
 
-        String routeOperator = flightConfigProperties.getRouteOperator();
-        logger.info("Removing routes that have a non-null connectingAirport and the operator is not '" + routeOperator + "'");
-        allRoutes.removeIf(route -> route.getConnectingAirport() != null || !Objects.equals(route.getOperator(), routeOperator));
-
-        if (allRoutes.size() == 0) {
-            logger.info("No available routes");
-            return Collections.emptyList();
-        }
+        // Schedules are fetched on other threads, which need to be handed the request's UpstreamUsage
+        UpstreamUsage currentUsage = UpstreamUsage.current();
+        UpstreamUsage upstreamUsage = currentUsage != null ? currentUsage : new UpstreamUsage();
+        AtomicInteger journeyCount = new AtomicInteger();
 
-        // List to hold all suitable journeys
-        List<Journey> journeyList = new ArrayList<>();
+        List<Route> routes = ryanairApiClient.getRoutes(upstreamUsage);
+        long filteringStartNanos = System.nanoTime();
+        RouteIndex index = RouteIndex.reuseOrBuild(routeIndex, routes, flightConfigProperties.getRouteOperator());
+        routeIndex = index;
+        RoutePlan routePlan = RoutePlan.of(index, departure, arrival);
+        flightMetrics.recordPhase(FlightMetrics.PHASE_ROUTE_FILTERING, System.nanoTime() - filteringStartNanos);
 
         // Direct flights
-        Predicate<Route> isDirectFlight = route -> departure.equals(route.getAirportFrom()) && arrival.equals(route.getAirportTo());
-        List<Route> directRoutes = allRoutes.stream().filter(isDirectFlight).collect(Collectors.toList());
-
-        if (directRoutes.size() > 1) {
-            logger.error("Error in Routes API. Returned more than one direct route for " + departure + "-" + arrival);
-            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Routes API returned more than one direct route");
-        } else if (directRoutes.size() == 1) {
-            logger.info("Direct route found");
-            List<Leg> directFlights = ryanairApiClient.getSchedules(directRoutes.get(0), departureDateTime, arrivalDateTime);
+        if (routePlan.getDirectRoute() != null) {
+            List<Leg> directFlights = ryanairApiClient.getSchedules(routePlan.getDirectRoute(), departureDateTime, arrivalDateTime, upstreamUsage);
+            List<Journey> directJourneys = new ArrayList<>(directFlights.size());
             for (Leg flights : directFlights) {
-                journeyList.add(new Journey(0, Collections.singletonList(flights)));
+                directJourneys.add(new Journey(0, Collections.singletonList(flights)));
+            }
+            if (!directJourneys.isEmpty()) {
+                journeyCount.addAndGet(directJourneys.size());
+                journeyBatches.accept(directJourneys);
             }
-        } else {
-            logger.info("No direct route found");
         }
         // End Direct flights
 
         // Journeys with 1 stop
-        Predicate<Route> isDepartureRoute = route -> departure.equals(route.getAirportFrom());
-        List<Route> departureRoutes = allRoutes.stream().filter(isDepartureRoute).collect(Collectors.toList());
+        if (deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0) {
+            // Direct flights already used up the request's time, don't start fetches that cannot be waited for
+            throw timedOut();
+        }
 
-        Predicate<Route> isArrivalRoute = route -> arrival.equals(route.getAirportTo());
-        List<Route> arrivalRoutes = allRoutes.stream().filter(isArrivalRoute).collect(Collectors.toList());
+        // Fetch the schedules of each intermediate airport concurrently on the schedule fetch executor. Within a hub the
+        // second leg is only fetched once the first leg is known to have flights, as the serial search used to do.
+        List<CompletableFuture<List<Journey>>> hubJourneys = new ArrayList<>();
+        Iterator<Route> departureIterator = routePlan.getDepartureRoutes().iterator();
+        Iterator<Route> arrivalIterator = routePlan.getArrivalRoutes().iterator();
+        while (departureIterator.hasNext() && arrivalIterator.hasNext()) {
+            Route departureRoute = departureIterator.next();
+            Route arrivalRoute = arrivalIterator.next();
+            hubJourneys.add(findOneStopJourneys(departureRoute, arrivalRoute, departureDateTime, arrivalDateTime, upstreamUsage, ranking));
+        }
 
-        // Remove route from both Lists if the intermediate airport doesn't match, that is,
-        // (airportTo) of departureRoutes != any(airportFrom) of arrivalRoutes and vice versa
-        departureRoutes.removeIf(departureRoute -> arrivalRoutes.stream()
-                .noneMatch(arrivalRoute -> Objects.equals(arrivalRoute.getAirportFrom(), departureRoute.getAirportTo())));
-        arrivalRoutes.removeIf(arrivalRoute -> departureRoutes.stream()
-                .noneMatch(departureRoute -> Objects.equals(departureRoute.getAirportTo(), arrivalRoute.getAirportFrom())));
+        // Join in hub order so the journeys come out in the same order as a serial search
+        for (int i = 0; i < hubJourneys.size(); i++) {
+            List<Journey> journeys = await(hubJourneys.get(i), hubJourneys, deadlineNanos);
+            // Drop our reference so a hub's journeys can be collected once the consumer is done with them
+            hubJourneys.set(i, null);
+            if (!journeys.isEmpty()) {
+                try {
+                    journeyCount.addAndGet(journeys.size());
+                    journeyBatches.accept(journeys);
+                } catch (RuntimeException ex) {
+                    // Eg. the client went away while streaming, the remaining hubs are of no use
+                    cancelAll(hubJourneys);
+                    throw ex;
+                }
+            }
+        }
+        flightMetrics.recordSearch(upstreamUsage.getCalls(), hubJourneys.size(), ranking != null ? ranking.size() : journeyCount.get());
+    }
 
-        if (departureRoutes.size() != arrivalRoutes.size()) {
-            // Expect no duplicate Routes that would cause this
-            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Bad data from the Routes API");
+    /**
+     * <b>getOptimalJourneys</b>: Searches journeys of up to maxStops stops with {@link MultiStopPlan}. The schedules of
+     * every route on such a journey are fetched concurrently on the schedule fetch executor, then only the
+     * Pareto-optimal journeys are kept: those no other journey beats on departure time, arrival time and stops alike.
+     *
+     * @return the optimal journeys, by departure time then number of stops
+     * @throws ResponseStatusException 400 if maxStops is negative or above the configured maxStops, otherwise as
+     *          getAvailableFlights
+     */
+    public List<Journey> getOptimalJourneys(String departure,
+                                            String arrival,
+                                            LocalDateTime departureDateTime,
+                                            LocalDateTime arrivalDateTime,
+                                            int maxStops) {
+        if (departure == null || arrival == null || departureDateTime == null || arrivalDateTime == null) {
+            logger.error("Invalid parameters supplied to FlightService.getOptimalJourneys");
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
         }
+        MultiStopPlan.checkMaxStops(maxStops, flightConfigProperties.getMaxStops());
 
-        logger.info("Available indirect flights: " + departureRoutes.size());
+        logger.info(String.format("Getting journeys of up to %s stops from %s-%s between %s and %s", maxStops, departure, arrival, departureDateTime, arrivalDateTime));
 
-        // Sort our ArrayLists so that departureRoutes[i].airportTo == arrivalRoutes[i].airportFrom
-        departureRoutes.sort(Comparator.comparing(Route::getAirportTo));
-        arrivalRoutes.sort(Comparator.comparing(Route::getAirportFrom));
+        long requestTimeoutMs = flightConfigProperties.getRequestTimeoutMs();
+        long deadlineNanos = requestTimeoutMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs) : NO_DEADLINE;
 
-        Iterator<Route> departureIterator = departureRoutes.iterator();
-        Iterator<Route> arrivalIterator = arrivalRoutes.iterator();
-        while (departureIterator.hasNext() && arrivalIterator.hasNext()) {
-            Route departureRoute = departureIterator.next();
-            Route arrivalRoute = arrivalIterator.next();
+        UpstreamUsage currentUsage = UpstreamUsage.current();
+        UpstreamUsage upstreamUsage = currentUsage != null ? currentUsage : new UpstreamUsage();
+
+        List<Route> routes = ryanairApiClient.getRoutes(upstreamUsage);
+        long filteringStartNanos = System.nanoTime();
+        RouteIndex index = RouteIndex.reuseOrBuild(routeIndex, routes, flightConfigProperties.getRouteOperator());
+        routeIndex = index;
+        MultiStopPlan plan = MultiStopPlan.of(index, departure, arrival, maxStops);
+        flightMetrics.recordPhase(FlightMetrics.PHASE_ROUTE_FILTERING, System.nanoTime() - filteringStartNanos);
 
-            List<Leg> departureLegs = ryanairApiClient.getSchedules(departureRoute, departureDateTime, arrivalDateTime);
-            if (departureLegs.isEmpty()) {
-                // No suitable departures found, no point checking for the arrival legs
-                logger.info("No first legs found for " + departureRoute.getAirportFrom() + "-" + departureRoute.getAirportTo());
-                continue;
+        // Kept as Timetables, so Legs are only created for the flights of the journeys returned
+        List<CompletableFuture<Timetable>> routeFlights = new ArrayList<>(plan.getRoutes().size());
+        for (Route route : plan.getRoutes()) {
+            routeFlights.add(CompletableFuture.supplyAsync(() ->
+                    ryanairApiClient.getTimetable(route, departureDateTime, arrivalDateTime, upstreamUsage), scheduleFetchExecutor));
+        }
+        Timetable.Builder flights = plan.newTimetable();
+        for (CompletableFuture<Timetable> future : routeFlights) {
+            flights.addAll(await(future, routeFlights, deadlineNanos));
+        }
+
+        long joinStartNanos = System.nanoTime();
+        List<Journey> journeys = plan.search(flights.build());
+        flightMetrics.recordPhase(FlightMetrics.PHASE_JOIN, System.nanoTime() - joinStartNanos);
+
+        flightMetrics.recordSearch(upstreamUsage.getCalls(), plan.getHubCount(), journeys.size());
+        logger.info("Optimal journeys found: " + journeys.size());
+        return journeys;
+    }
+
+    /**
+     * <b>getOptimalJourneys</b>: See {@link #getOptimalJourneys(String, String, LocalDateTime, LocalDateTime, int)},
+     * only returning the best limit of the optimal journeys in the given sort order, best first.
+     */
+    public List<Journey> getOptimalJourneys(String departure,
+                                            String arrival,
+                                            LocalDateTime departureDateTime,
+                                            LocalDateTime arrivalDateTime,
+                                            int maxStops,
+                                            JourneySort sort,
+                                            int limit) {
+        RankedJourneys ranking = new RankedJourneys(sort, limit);
+        ranking.offerAll(getOptimalJourneys(departure, arrival, departureDateTime, arrivalDateTime, maxStops));
+        return ranking.toList();
+    }
+
+    /**
+     * <b>getBatchJourneys</b>: Runs several searches at once, as {@link #getAvailableFlights} for those without maxStops
+     * and {@link #getOptimalJourneys} for the others, sharing their upstream calls. The routes are fetched once, every
+     * search is planned, and the union of the route months they need is fetched once each, concurrently on the schedule
+     * fetch executor. The journeys of each search are then found from those months.
+     * Unlike a single one stop search, the second legs of a hub are fetched even if its first legs have no flights, so
+     * all months can be fetched in one go.
+     *
+     * @return the outcome of each search, in query order. A search that is refused or whose months could not be fetched
+     *          gets the status it would have had on its own, and does not fail the others
+     * @throws ResponseStatusException as getAvailableFlights for the Routes API, and 504 if the months are not all
+     *          fetched within requestTimeoutMs
+     */
+    public List<InterconnectionsResult> getBatchJourneys(List<InterconnectionsQuery> queries) {
+        logger.info("Getting journeys of a batch of " + queries.size() + " searches");
+
+        long requestTimeoutMs = flightConfigProperties.getRequestTimeoutMs();
+        long deadlineNanos = requestTimeoutMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs) : NO_DEADLINE;
+
+        UpstreamUsage currentUsage = UpstreamUsage.current();
+        UpstreamUsage upstreamUsage = currentUsage != null ? currentUsage : new UpstreamUsage();
+
+        List<Route> routes = ryanairApiClient.getRoutes(upstreamUsage);
+        long filteringStartNanos = System.nanoTime();
+        RouteIndex index = RouteIndex.reuseOrBuild(routeIndex, routes, flightConfigProperties.getRouteOperator());
+        routeIndex = index;
+
+        // Plan every search, a RoutePlan or MultiStopPlan, or the error that refused it
+        Object[] plans = new Object[queries.size()];
+        Set<ScheduleMonthKey> months = new LinkedHashSet<>();
+        int hubCount = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            InterconnectionsQuery query = queries.get(i);
+            try {
+                List<Route> queryRoutes;
+                if (query.getMaxStops() == null) {
+                    RoutePlan plan = RoutePlan.of(index, query.getDeparture(), query.getArrival());
+                    queryRoutes = new ArrayList<>(plan.getDepartureRoutes());
+                    queryRoutes.addAll(plan.getArrivalRoutes());
+                    if (plan.getDirectRoute() != null) {
+                        queryRoutes.add(plan.getDirectRoute());
+                    }
+                    hubCount += plan.getDepartureRoutes().size();
+                    plans[i] = plan;
+                } else {
+                    MultiStopPlan.checkMaxStops(query.getMaxStops(), flightConfigProperties.getMaxStops());
+                    MultiStopPlan plan = MultiStopPlan.of(index, query.getDeparture(), query.getArrival(), query.getMaxStops());
+                    queryRoutes = plan.getRoutes();
+                    hubCount += plan.getHubCount();
+                    plans[i] = plan;
+                }
+                for (Route route : queryRoutes) {
+                    months.addAll(ScheduleMonthKey.between(route.getAirportFrom(), route.getAirportTo(),
+                            query.getDepartureDateTime(), query.getArrivalDateTime()));
+                }
+            } catch (ResponseStatusException ex) {
+                plans[i] = ex;
             }
+        }
+        flightMetrics.recordPhase(FlightMetrics.PHASE_ROUTE_FILTERING, System.nanoTime() - filteringStartNanos);
+        logger.info("Schedule months needed by the batch: " + months.size());
 
-            List<Leg> arrivalLegs = ryanairApiClient.getSchedules(arrivalRoute, departureDateTime, arrivalDateTime);
-            if (arrivalLegs.isEmpty()) {
-                // No suitable arrivals found.
-                logger.info("No second legs found for " + arrivalRoute.getAirportFrom() + "-" + arrivalRoute.getAirportTo());
-                continue;
+        Map<ScheduleMonthKey, CompletableFuture<Timetable>> monthFlights = new LinkedHashMap<>();
+        for (ScheduleMonthKey month : months) {
+            monthFlights.put(month, CompletableFuture.supplyAsync(() -> ryanairApiClient.getScheduleMonth(month.getAirportFrom(),
+                    month.getAirportTo(), month.getYear(), month.getMonth(), upstreamUsage), scheduleFetchExecutor));
+        }
+        List<CompletableFuture<Timetable>> allMonthFlights = new ArrayList<>(monthFlights.values());
+        Map<ScheduleMonthKey, Timetable> fetchedMonths = new HashMap<>();
+        Map<ScheduleMonthKey, ResponseStatusException> failedMonths = new HashMap<>();
+        for (Map.Entry<ScheduleMonthKey, CompletableFuture<Timetable>> month : monthFlights.entrySet()) {
+            // Unlike await, a failed month only fails the searches that need it, so the other months are not cancelled
+            try {
+                CompletableFuture<Timetable> future = month.getValue();
+                fetchedMonths.put(month.getKey(), deadlineNanos == NO_DEADLINE
+                        ? future.get()
+                        : future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException ex) {
+                cancelAll(allMonthFlights);
+                throw timedOut();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof ResponseStatusException) {
+                    failedMonths.put(month.getKey(), (ResponseStatusException) ex.getCause());
+                } else {
+                    logger.error("Unexpected error fetching schedules: " + ex.getMessage());
+                    failedMonths.put(month.getKey(), new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR));
+                }
+            } catch (InterruptedException ex) {
+                cancelAll(allMonthFlights);
+                Thread.currentThread().interrupt();
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
             }
+        }
 
-            for (Leg firstLeg : departureLegs) {
-                for (Leg secondLeg : arrivalLegs) {
-                    // 2nd leg departure time from intermediate airport cannot be before 2 hours after 1st leg arrival time
-                    if (!secondLeg.getDepartureTime().isBefore(firstLeg.getArrivalTime().plusHours(2))) {
-                        journeyList.add(new Journey(1, Arrays.asList(firstLeg, secondLeg)));
+        List<InterconnectionsResult> results = new ArrayList<>(queries.size());
+        int journeyCount = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            InterconnectionsQuery query = queries.get(i);
+            try {
+                if (plans[i] instanceof ResponseStatusException) {
+                    throw (ResponseStatusException) plans[i];
+                }
+                long joinStartNanos = System.nanoTime();
+                List<Journey> journeys;
+                if (plans[i] instanceof RoutePlan) {
+                    journeys = findJourneys((RoutePlan) plans[i], query, fetchedMonths, failedMonths);
+                } else {
+                    MultiStopPlan plan = (MultiStopPlan) plans[i];
+                    Timetable.Builder flights = plan.newTimetable();
+                    for (Route route : plan.getRoutes()) {
+                        flights.addAll(getRouteFlights(route, query, fetchedMonths, failedMonths));
                     }
+                    journeys = plan.search(flights.build());
                 }
+                flightMetrics.recordPhase(FlightMetrics.PHASE_JOIN, System.nanoTime() - joinStartNanos);
+                journeyCount += journeys.size();
+                results.add(InterconnectionsResult.of(journeys));
+            } catch (ResponseStatusException ex) {
+                logger.info("Search " + query + " of the batch failed: " + ex.getMessage());
+                results.add(InterconnectionsResult.error(ex.getStatus().value(), ex.getReason()));
             }
         }
-        logger.info("Total valid journeys found: " + journeyList.size());
-        return journeyList;
+        // The batch is recorded as one search, as its upstream calls are shared
+        flightMetrics.recordSearch(upstreamUsage.getCalls(), hubCount, journeyCount);
+        return results;
+    }
+
+    /**
+     * The journeys of a 0-1 stop search of a batch, in the order {@link #getAvailableFlights} gives them
+     */
+    private static List<Journey> findJourneys(RoutePlan plan,
+                                              InterconnectionsQuery query,
+                                              Map<ScheduleMonthKey, Timetable> fetchedMonths,
+                                              Map<ScheduleMonthKey, ResponseStatusException> failedMonths) {
+        List<Journey> journeys = new ArrayList<>();
+        if (plan.getDirectRoute() != null) {
+            for (Leg flight : getRouteFlights(plan.getDirectRoute(), query, fetchedMonths, failedMonths).toLegs()) {
+                journeys.add(new Journey(0, Collections.singletonList(flight)));
+            }
+        }
+        for (int i = 0; i < plan.getDepartureRoutes().size(); i++) {
+            List<Leg> departureLegs = getRouteFlights(plan.getDepartureRoutes().get(i), query, fetchedMonths, failedMonths).toLegs();
+            List<Leg> arrivalLegs = getRouteFlights(plan.getArrivalRoutes().get(i), query, fetchedMonths, failedMonths).toLegs();
+            if (!departureLegs.isEmpty() && !arrivalLegs.isEmpty()) {
+                journeys.addAll(Connections.joinOneStop(departureLegs, arrivalLegs));
+            }
+        }
+        return journeys;
+    }
+
+    /**
+     * @return the flights of the route in the query's time range, from the months fetched for the batch
+     * @throws ResponseStatusException the error of the first of the route's months that could not be fetched
+     */
+    private static Timetable getRouteFlights(Route route,
+                                             InterconnectionsQuery query,
+                                             Map<ScheduleMonthKey, Timetable> fetchedMonths,
+                                             Map<ScheduleMonthKey, ResponseStatusException> failedMonths) {
+        List<ScheduleMonthKey> months = ScheduleMonthKey.between(route.getAirportFrom(), route.getAirportTo(),
+                query.getDepartureDateTime(), query.getArrivalDateTime());
+        List<Timetable> monthlySchedules = new ArrayList<>(months.size());
+        for (ScheduleMonthKey month : months) {
+            ResponseStatusException failure = failedMonths.get(month);
+            if (failure != null) {
+                throw failure;
+            }
+            monthlySchedules.add(fetchedMonths.get(month));
+        }
+        return Timetable.within(monthlySchedules, query.getDepartureDateTime(), query.getArrivalDateTime());
+    }
+
+    private CompletableFuture<List<Journey>> findOneStopJourneys(Route departureRoute,
+                                                                Route arrivalRoute,
+                                                                LocalDateTime departureDateTime,
+                                                                LocalDateTime arrivalDateTime,
+                                                                UpstreamUsage upstreamUsage,
+                                                                RankedJourneys ranking) {
+        if (ranking != null && !ranking.canRankOneStop(departureDateTime, null)) {
+            logger.info("Skipping hub " + departureRoute.getAirportTo() + ", it cannot beat the journeys already found");
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return CompletableFuture.supplyAsync(() ->
+                ryanairApiClient.getSchedules(departureRoute, departureDateTime, arrivalDateTime, upstreamUsage), scheduleFetchExecutor)
+                .thenCompose(departureLegs -> {
+                    if (departureLegs.isEmpty()) {
+                        // No suitable departures found, no point checking for the arrival legs
+                        logger.info("No first legs found for " + departureRoute.getAirportFrom() + "-" + departureRoute.getAirportTo());
+                        return CompletableFuture.completedFuture(Collections.<Journey>emptyList());
+                    }
+                    if (ranking != null && !ranking.canRankOneStop(departureDateTime, departureLegs)) {
+                        logger.info("Skipping second legs of hub " + departureRoute.getAirportTo() + ", it cannot beat the journeys already found");
+                        return CompletableFuture.completedFuture(Collections.<Journey>emptyList());
+                    }
+                    return CompletableFuture.supplyAsync(() ->
+                            ryanairApiClient.getSchedules(arrivalRoute, departureDateTime, arrivalDateTime, upstreamUsage), scheduleFetchExecutor)
+                            .thenApply(arrivalLegs -> {
+                                if (arrivalLegs.isEmpty()) {
+                                    // No suitable arrivals found.
+                                    logger.info("No second legs found for " + arrivalRoute.getAirportFrom() + "-" + arrivalRoute.getAirportTo());
+                                    return Collections.<Journey>emptyList();
+                                }
+                                long joinStartNanos = System.nanoTime();
+                                List<Journey> journeys;
+                                if (ranking != null) {
+                                    // Only the best journeys are kept, straight from the join
+                                    Connections.joinOneStop(departureLegs, arrivalLegs, ranking::offer);
+                                    journeys = Collections.emptyList();
+                                } else {
+                                    journeys = Connections.joinOneStop(departureLegs, arrivalLegs);
+                                }
+                                flightMetrics.recordPhase(FlightMetrics.PHASE_JOIN, System.nanoTime() - joinStartNanos);
+                                return journeys;
+                            });
+                });
+    }
+
+    /**
+     * Waits for one hub's journeys until the request deadline. On timeout or failure the other hubs still in flight are
+     * cancelled, and the error is surfaced the same way the serial search would have.
+     */
+    private <T> T await(CompletableFuture<T> future, List<? extends CompletableFuture<?>> allFutures, long deadlineNanos) {
+        try {
+            if (deadlineNanos == NO_DEADLINE) {
+                return future.get();
+            }
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            cancelAll(allFutures);
+            throw timedOut();
+        } catch (ExecutionException ex) {
+            cancelAll(allFutures);
+            if (ex.getCause() instanceof RuntimeException) {
+                // Usually a ResponseStatusException from RyanairApiClient, rethrow as is to keep its status code
+                throw (RuntimeException) ex.getCause();
+            }
+            logger.error("Unexpected error fetching schedules: " + ex.getMessage());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (InterruptedException ex) {
+            cancelAll(allFutures);
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private static void cancelAll(List<? extends CompletableFuture<?>> futures) {
+        for (CompletableFuture<?> future : futures) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private ResponseStatusException timedOut() {
+        logger.error("Timed out waiting for schedules from the Schedules API");
+        return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Upstream Schedules API timed out");
     }
 }
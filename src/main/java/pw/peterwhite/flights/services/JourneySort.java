@@ -0,0 +1,81 @@
+package pw.peterwhite.flights.services;
+
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <b>JourneySort</b>: The orders journeys can be ranked in with the sort parameter of the interconnections API. Each
+ * ranks journeys by one key, then by arrival, departure and stops, then leg by leg by airports and times, so the order
+ * is always the same whatever order the journeys were found in.
+ * Times are local to their airports, like the times the Schedules API gives, so a duration is only exact when both
+ * ends are in the same timezone.
+ */
+public enum JourneySort {
+    // Earliest arrival first
+    ARRIVAL,
+    // Shortest time from first departure to last arrival first
+    DURATION,
+    // Fewest stops first
+    STOPS;
+
+    private static final Comparator<Journey.Leg> LEG_ORDER = Comparator.comparing(Journey.Leg::getDepartureTime)
+            .thenComparing(Journey.Leg::getDepartureAirport)
+            .thenComparing(Journey.Leg::getArrivalAirport)
+            .thenComparing(Journey.Leg::getArrivalTime);
+
+    /**
+     * @return the sort named, ignoring case, or null if there is no such sort
+     */
+    public static JourneySort of(String name) {
+        for (JourneySort sort : values()) {
+            if (sort.name().equalsIgnoreCase(name)) {
+                return sort;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the journey's ranking key: its arrival or its duration in minutes, or its stops. Lower ranks first
+     */
+    int getKey(Journey journey) {
+        switch (this) {
+            case ARRIVAL:
+                return getArrival(journey);
+            case DURATION:
+                return getArrival(journey) - getDeparture(journey);
+            default:
+                return journey.getStops();
+        }
+    }
+
+    Comparator<Journey> comparator() {
+        return Comparator.comparingInt(this::getKey)
+                .thenComparingInt(JourneySort::getArrival)
+                .thenComparingInt(JourneySort::getDeparture)
+                .thenComparingInt(Journey::getStops)
+                .thenComparing(Journey::getLegs, JourneySort::compareLegs);
+    }
+
+    private static int compareLegs(List<Journey.Leg> legs, List<Journey.Leg> otherLegs) {
+        for (int i = 0; i < Math.min(legs.size(), otherLegs.size()); i++) {
+            int compared = LEG_ORDER.compare(legs.get(i), otherLegs.get(i));
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(legs.size(), otherLegs.size());
+    }
+
+    private static int getDeparture(Journey journey) {
+        return Timetable.toMinutes(journey.getLegs().get(0).getDepartureTime());
+    }
+
+    private static int getArrival(Journey journey) {
+        List<Journey.Leg> legs = journey.getLegs();
+        return Timetable.toMinutes(legs.get(legs.size() - 1).getArrivalTime());
+    }
+}
@@ -0,0 +1,106 @@
+package pw.peterwhite.flights.services;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.search.AirportDictionary;
+import pw.peterwhite.flights.search.ConnectionScan;
+import pw.peterwhite.flights.search.RouteIndex;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>MultiStopPlan</b>: The routes worth fetching schedules for to search journeys of up to maxStops stops between a
+ * departure and arrival airport, shared by the blocking and reactive flight services. These are the routes on some path
+ * of at most maxStops + 1 routes in the {@link RouteIndex}. Once their legs are fetched, {@link #search} finds the
+ * Pareto-optimal journeys with {@link ConnectionScan}, over a Timetable on the RouteIndex's airport ids.
+ */
+final class MultiStopPlan {
+    private static final Log logger = LogFactory.getLog(MultiStopPlan.class);
+    private static final int MINIMUM_CONNECTION_MINUTES = (int) TimeUnit.HOURS.toMinutes(Connections.MINIMUM_CONNECTION_HOURS);
+
+    private final String departure;
+    private final String arrival;
+    private final int maxStops;
+    private final List<Route> routes;
+    private final AirportDictionary airports;
+
+    private MultiStopPlan(String departure, String arrival, int maxStops, List<Route> routes, AirportDictionary airports) {
+        this.departure = departure;
+        this.arrival = arrival;
+        this.maxStops = maxStops;
+        this.routes = routes;
+        this.airports = airports;
+    }
+
+    /**
+     * @throws ResponseStatusException 400 if maxStops is negative or more than the configured maxStops allows
+     */
+    static void checkMaxStops(int maxStops, int maxStopsAllowed) {
+        if (maxStops < 0 || maxStops > maxStopsAllowed) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "maxStops must be between 0 and " + maxStopsAllowed);
+        }
+    }
+
+    static MultiStopPlan of(RouteIndex routeIndex, String departure, String arrival, int maxStops) {
+        List<Route> routes = routeIndex.getRoutesOnPaths(departure, arrival, maxStops + 1);
+        logger.info("Routes on journeys of up to " + maxStops + " stops: " + routes.size());
+        return new MultiStopPlan(departure, arrival, maxStops, routes, routeIndex.getAirports());
+    }
+
+    /**
+     * @return the routes to fetch schedules for, sorted by origin then destination
+     */
+    List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @return a builder for the timetable to {@link #search}, on the airport ids of the plan's RouteIndex
+     */
+    Timetable.Builder newTimetable() {
+        return new Timetable.Builder(airports);
+    }
+
+    /**
+     * @return number of intermediate airports the routes go through
+     */
+    int getHubCount() {
+        // Routes are sorted by origin, so each origin other than the departure airport starts a new run
+        int hubs = 0;
+        String previousOrigin = departure;
+        for (Route route : routes) {
+            if (!route.getAirportFrom().equals(previousOrigin) && !route.getAirportFrom().equals(departure)) {
+                hubs++;
+            }
+            previousOrigin = route.getAirportFrom();
+        }
+        return hubs;
+    }
+
+    /**
+     * @param legs: the flights of every route of the plan, in any order
+     * @return the Pareto-optimal journeys (see {@link ConnectionScan}), by departure time then number of stops
+     */
+    List<Journey> search(List<Leg> legs) {
+        Timetable.Builder timetable = newTimetable();
+        for (Leg leg : legs) {
+            timetable.add(leg);
+        }
+        return search(timetable.build());
+    }
+
+    /**
+     * @param timetable: the flights of every route of the plan
+     * @return the Pareto-optimal journeys (see {@link ConnectionScan}), by departure time then number of stops
+     */
+    List<Journey> search(Timetable timetable) {
+        return ConnectionScan.search(timetable, departure, arrival, maxStops, MINIMUM_CONNECTION_MINUTES);
+    }
+}
@@ -0,0 +1,111 @@
+package pw.peterwhite.flights.services;
+
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>RankedJourneys</b>: Keeps the best limit journeys offered to it in a {@link JourneySort} order, in a bounded heap
+ * with the worst of them on top, so a search only holds limit journeys however many it finds. Once full, it can also
+ * tell whether journeys whose key is known to be at least some value can still make it in, so a search can skip
+ * fetching the schedules of hubs that cannot. Thread-safe, as hubs are joined on the schedule fetch executor.
+ */
+final class RankedJourneys {
+    private static final int MINIMUM_CONNECTION_MINUTES = (int) TimeUnit.HOURS.toMinutes(Connections.MINIMUM_CONNECTION_HOURS);
+    // Times are local, so a flight can land at an earlier clock time than it took off. This is the most it can be
+    // earlier by: the widest timezone gap of the network, Azores (UTC-1) to Jordan (UTC+3)
+    private static final int MAX_CLOCK_SHIFT_MINUTES = (int) TimeUnit.HOURS.toMinutes(4);
+
+    private final JourneySort sort;
+    private final int limit;
+    private final Comparator<Journey> comparator;
+    // Worst kept journey first
+    private final PriorityQueue<Journey> best;
+
+    RankedJourneys(JourneySort sort, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        this.sort = sort;
+        this.limit = limit;
+        this.comparator = sort.comparator();
+        this.best = new PriorityQueue<>(Math.min(limit, 1024) + 1, comparator.reversed());
+    }
+
+    synchronized void offer(Journey journey) {
+        if (best.size() < limit) {
+            best.add(journey);
+        } else if (comparator.compare(journey, best.peek()) < 0) {
+            best.poll();
+            best.add(journey);
+        }
+    }
+
+    void offerAll(List<Journey> journeys) {
+        for (Journey journey : journeys) {
+            offer(journey);
+        }
+    }
+
+    /**
+     * @param minimumKey: lowest ranking key (see {@link JourneySort#getKey}) any of the journeys in question can have
+     * @return false if the ranking is full and every journey kept ranks strictly before such journeys
+     */
+    synchronized boolean canRank(int minimumKey) {
+        return best.size() < limit || minimumKey <= sort.getKey(best.peek());
+    }
+
+    /**
+     * Whether the one stop journeys through a hub can still make it in, from a lower bound of their ranking key: the
+     * second leg departs at least the minimum connection time after the first leg lands, and lands no more than
+     * MAX_CLOCK_SHIFT_MINUTES before that by the clock.
+     *
+     * @param firstLegs: the legs into the hub, or null before they are fetched, in which case any first leg departing
+     *                 from departureDateTime on is assumed
+     */
+    boolean canRankOneStop(LocalDateTime departureDateTime, List<Leg> firstLegs) {
+        int earliestFirstArrival;
+        int shortestFirstLeg;
+        if (firstLegs == null) {
+            earliestFirstArrival = Timetable.toMinutes(departureDateTime) - MAX_CLOCK_SHIFT_MINUTES;
+            shortestFirstLeg = -MAX_CLOCK_SHIFT_MINUTES;
+        } else {
+            earliestFirstArrival = Integer.MAX_VALUE;
+            shortestFirstLeg = Integer.MAX_VALUE;
+            for (Leg leg : firstLegs) {
+                int departure = Timetable.toMinutes(leg.getDepartureTime());
+                int arrival = Timetable.toMinutes(leg.getArrivalTime());
+                earliestFirstArrival = Math.min(earliestFirstArrival, arrival);
+                shortestFirstLeg = Math.min(shortestFirstLeg, arrival - departure);
+            }
+        }
+        switch (sort) {
+            case ARRIVAL:
+                return canRank(earliestFirstArrival + MINIMUM_CONNECTION_MINUTES - MAX_CLOCK_SHIFT_MINUTES);
+            case DURATION:
+                return canRank(shortestFirstLeg + MINIMUM_CONNECTION_MINUTES - MAX_CLOCK_SHIFT_MINUTES);
+            default:
+                return canRank(1);
+        }
+    }
+
+    synchronized int size() {
+        return best.size();
+    }
+
+    /**
+     * @return the journeys kept, best first
+     */
+    synchronized List<Journey> toList() {
+        List<Journey> journeys = new ArrayList<>(best);
+        journeys.sort(comparator);
+        return journeys;
+    }
+}
@@ -0,0 +1,183 @@
+package pw.peterwhite.flights.services;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.clients.ReactiveRyanairApiClient;
+import pw.peterwhite.flights.config.FlightConfigProperties;
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.search.RouteIndex;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <b>ReactiveFlightService</b>: Non-blocking version of {@link FlightService} on top of {@link ReactiveRyanairApiClient}.
+ * Journeys are emitted in the same order as FlightService returns them: direct flights first, then one-stop journeys
+ * hub by hub in intermediate airport order.
+ */
+public class ReactiveFlightService {
+    private static final Log logger = LogFactory.getLog(ReactiveFlightService.class);
+
+    @Autowired
+    private FlightConfigProperties flightConfigProperties;
+
+    @Autowired
+    private ReactiveRyanairApiClient reactiveRyanairApiClient;
+
+    // Index of the last route network seen, only rebuilt when the client returns a different network
+    private volatile RouteIndex routeIndex;
+
+    public Flux<Journey> getAvailableFlights(String departure,
+                                             String arrival,
+                                             LocalDateTime departureDateTime,
+                                             LocalDateTime arrivalDateTime) {
+        if (departure == null || arrival == null || departureDateTime == null || arrivalDateTime == null) {
+            logger.error("Invalid parameters supplied to ReactiveFlightService.getAvailableFlights");
+            return Flux.error(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR));
+        }
+
+        logger.info(String.format("Getting flights from %s-%s between %s and %s", departure, arrival, departureDateTime, arrivalDateTime));
+
+        String routeOperator = flightConfigProperties.getRouteOperator();
+        // Hubs are searched up to scheduleFetchPoolSize at a time, as with the blocking service's executor
+        int hubConcurrency = Math.max(1, flightConfigProperties.getScheduleFetchPoolSize());
+
+        Flux<Journey> journeys = reactiveRyanairApiClient.getRoutes()
+                .map(routeNetwork -> {
+                    RouteIndex index = RouteIndex.reuseOrBuild(routeIndex, routeNetwork, routeOperator);
+                    routeIndex = index;
+                    return RoutePlan.of(index, departure, arrival);
+                })
+                .flatMapMany(routePlan -> {
+                    Flux<Journey> directJourneys = routePlan.getDirectRoute() == null
+                            ? Flux.empty()
+                            : reactiveRyanairApiClient.getSchedules(routePlan.getDirectRoute(), departureDateTime, arrivalDateTime)
+                                    .map(flight -> new Journey(0, Collections.singletonList(flight)));
+
+                    Flux<Journey> oneStopJourneys = Flux.range(0, routePlan.getDepartureRoutes().size())
+                            .flatMapSequential(i -> findOneStopJourneys(routePlan.getDepartureRoutes().get(i),
+                                    routePlan.getArrivalRoutes().get(i), departureDateTime, arrivalDateTime), hubConcurrency);
+
+                    // Hubs are only subscribed to once direct flights are done, like the blocking search
+                    return directJourneys.concatWith(oneStopJourneys);
+                });
+
+        return withRequestTimeout(journeys);
+    }
+
+    /**
+     * <b>getRankedFlights</b>: Non-blocking version of {@link FlightService#getRankedFlights}. The journeys of
+     * {@link #getAvailableFlights} are kept in a bounded {@link RankedJourneys} as they are emitted, and the best limit
+     * are emitted once the search completes, best first. Unlike the blocking search, no hub is skipped.
+     */
+    public Flux<Journey> getRankedFlights(String departure,
+                                          String arrival,
+                                          LocalDateTime departureDateTime,
+                                          LocalDateTime arrivalDateTime,
+                                          JourneySort sort,
+                                          int limit) {
+        return rank(getAvailableFlights(departure, arrival, departureDateTime, arrivalDateTime), sort, limit);
+    }
+
+    /**
+     * <b>getOptimalJourneys</b>: Non-blocking version of {@link FlightService#getOptimalJourneys}. The schedules of the
+     * routes are fetched up to scheduleFetchPoolSize at a time, and the journeys are emitted once all are in.
+     */
+    public Flux<Journey> getOptimalJourneys(String departure,
+                                            String arrival,
+                                            LocalDateTime departureDateTime,
+                                            LocalDateTime arrivalDateTime,
+                                            int maxStops) {
+        if (departure == null || arrival == null || departureDateTime == null || arrivalDateTime == null) {
+            logger.error("Invalid parameters supplied to ReactiveFlightService.getOptimalJourneys");
+            return Flux.error(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR));
+        }
+        try {
+            MultiStopPlan.checkMaxStops(maxStops, flightConfigProperties.getMaxStops());
+        } catch (ResponseStatusException ex) {
+            return Flux.error(ex);
+        }
+
+        logger.info(String.format("Getting journeys of up to %s stops from %s-%s between %s and %s", maxStops, departure, arrival, departureDateTime, arrivalDateTime));
+
+        String routeOperator = flightConfigProperties.getRouteOperator();
+        int routeConcurrency = Math.max(1, flightConfigProperties.getScheduleFetchPoolSize());
+
+        Flux<Journey> journeys = reactiveRyanairApiClient.getRoutes()
+                .map(routeNetwork -> {
+                    RouteIndex index = RouteIndex.reuseOrBuild(routeIndex, routeNetwork, routeOperator);
+                    routeIndex = index;
+                    return MultiStopPlan.of(index, departure, arrival, maxStops);
+                })
+                .flatMapMany(plan -> Flux.fromIterable(plan.getRoutes())
+                        .flatMap(route -> reactiveRyanairApiClient.getSchedules(route, departureDateTime, arrivalDateTime), routeConcurrency)
+                        .collectList()
+                        .flatMapIterable(plan::search));
+
+        return withRequestTimeout(journeys);
+    }
+
+    /**
+     * <b>getOptimalJourneys</b>: See {@link #getOptimalJourneys(String, String, LocalDateTime, LocalDateTime, int)},
+     * only emitting the best limit of the optimal journeys in the given sort order, best first.
+     */
+    public Flux<Journey> getOptimalJourneys(String departure,
+                                            String arrival,
+                                            LocalDateTime departureDateTime,
+                                            LocalDateTime arrivalDateTime,
+                                            int maxStops,
+                                            JourneySort sort,
+                                            int limit) {
+        return rank(getOptimalJourneys(departure, arrival, departureDateTime, arrivalDateTime, maxStops), sort, limit);
+    }
+
+    private static Flux<Journey> rank(Flux<Journey> journeys, JourneySort sort, int limit) {
+        return journeys.collect(() -> new RankedJourneys(sort, limit), RankedJourneys::offer)
+                .flatMapIterable(RankedJourneys::toList);
+    }
+
+    private Flux<Journey> withRequestTimeout(Flux<Journey> journeys) {
+        long requestTimeoutMs = flightConfigProperties.getRequestTimeoutMs();
+        if (requestTimeoutMs <= 0) {
+            return journeys;
+        }
+        // One deadline for the whole search, Flux.timeout would only limit the wait between two journeys
+        return Flux.defer(() -> {
+            AtomicBoolean timedOut = new AtomicBoolean();
+            return journeys.takeUntilOther(Mono.delay(Duration.ofMillis(requestTimeoutMs)).doOnNext(tick -> timedOut.set(true)))
+                    .concatWith(Mono.<Journey>defer(() -> {
+                        if (!timedOut.get()) {
+                            return Mono.empty();
+                        }
+                        logger.error("Timed out waiting for schedules from the Schedules API");
+                        return Mono.error(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Upstream Schedules API timed out"));
+                    }));
+        });
+    }
+
+    private Flux<Journey> findOneStopJourneys(Route departureRoute,
+                                              Route arrivalRoute,
+                                              LocalDateTime departureDateTime,
+                                              LocalDateTime arrivalDateTime) {
+        return reactiveRyanairApiClient.getSchedules(departureRoute, departureDateTime, arrivalDateTime)
+                .collectList()
+                .flatMapMany(departureLegs -> {
+                    if (departureLegs.isEmpty()) {
+                        // No suitable departures found, no point checking for the arrival legs
+                        logger.info("No first legs found for " + departureRoute.getAirportFrom() + "-" + departureRoute.getAirportTo());
+                        return Flux.empty();
+                    }
+                    return reactiveRyanairApiClient.getSchedules(arrivalRoute, departureDateTime, arrivalDateTime)
+                            .collectList()
+                            .flatMapIterable(arrivalLegs -> Connections.joinOneStop(departureLegs, arrivalLegs));
+                });
+    }
+}
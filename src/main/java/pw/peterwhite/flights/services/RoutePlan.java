@@ -0,0 +1,94 @@
+package pw.peterwhite.flights.services;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.search.AirportDictionary;
+import pw.peterwhite.flights.search.RouteIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <b>RoutePlan</b>: The routes worth fetching schedules for between a departure and arrival airport, shared by the
+ * blocking and reactive flight services. Looked up in a {@link RouteIndex}, which only holds routes where:
+ * - connectingAirport is null
+ * - operator is "RYANAIR" (read from config)
+ * In the case of zero stops the route goes from the departure airport to the arrival airport. In the case of one stop,
+ * the intermediate airports are those with a route from the departure airport and a route to the arrival airport.
+ */
+final class RoutePlan {
+    private static final Log logger = LogFactory.getLog(RoutePlan.class);
+
+    private final Route directRoute;
+    // departureRoutes[i].airportTo == arrivalRoutes[i].airportFrom, sorted by that intermediate airport
+    private final List<Route> departureRoutes;
+    private final List<Route> arrivalRoutes;
+
+    private RoutePlan(Route directRoute, List<Route> departureRoutes, List<Route> arrivalRoutes) {
+        this.directRoute = directRoute;
+        this.departureRoutes = departureRoutes;
+        this.arrivalRoutes = arrivalRoutes;
+    }
+
+    static RoutePlan of(RouteIndex routeIndex, String departure, String arrival) {
+        logger.info("Total searchable routes: " + routeIndex.size());
+
+        if (routeIndex.size() == 0) {
+            logger.info("No available routes");
+            return new RoutePlan(null, Collections.emptyList(), Collections.emptyList());
+        }
+
+        // Airports are matched by their ids in the index from here on
+        AirportDictionary airports = routeIndex.getAirports();
+        int departureId = airports.getId(departure);
+        int arrivalId = airports.getId(arrival);
+
+        // Direct flights
+        if (routeIndex.isDuplicated(departureId, arrivalId)) {
+            logger.error("Error in Routes API. Returned more than one direct route for " + departure + "-" + arrival);
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Routes API returned more than one direct route");
+        }
+        Route directRoute = routeIndex.getRoute(departureId, arrivalId);
+        if (directRoute != null) {
+            logger.info("Direct route found");
+        } else {
+            logger.info("No direct route found");
+        }
+
+        // Journeys with 1 stop, in intermediate airport order
+        int[] intermediateAirports = routeIndex.getIntermediateAirports(departureId, arrivalId);
+        List<Route> departureRoutes = new ArrayList<>(intermediateAirports.length);
+        List<Route> arrivalRoutes = new ArrayList<>(intermediateAirports.length);
+        for (int intermediateAirport : intermediateAirports) {
+            if (routeIndex.isDuplicated(departureId, intermediateAirport) || routeIndex.isDuplicated(intermediateAirport, arrivalId)) {
+                // Expect no duplicate Routes
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Bad data from the Routes API");
+            }
+            departureRoutes.add(routeIndex.getRoute(departureId, intermediateAirport));
+            arrivalRoutes.add(routeIndex.getRoute(intermediateAirport, arrivalId));
+        }
+
+        logger.info("Available indirect flights: " + departureRoutes.size());
+
+        return new RoutePlan(directRoute, departureRoutes, arrivalRoutes);
+    }
+
+    /**
+     * @return the route from departure to arrival airport, or null if there is none
+     */
+    Route getDirectRoute() {
+        return directRoute;
+    }
+
+    List<Route> getDepartureRoutes() {
+        return departureRoutes;
+    }
+
+    List<Route> getArrivalRoutes() {
+        return arrivalRoutes;
+    }
+}
@@ -0,0 +1,135 @@
+package pw.peterwhite.flights.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the DiskCache, using a fake clock to expire entries. Entries are read back by a second DiskCache on
+ * the same directory, as after a restart, once the first one has been closed to finish its writes.
+ */
+class DiskCacheTests {
+    private static final ScheduleMonthKey DUB_SXF_JAN = new ScheduleMonthKey("DUB", "SXF", 2030, 1);
+    private static final ScheduleMonthKey DUB_SXF_FEB = new ScheduleMonthKey("DUB", "SXF", 2030, 2);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void givenPersistedMonth_GetScheduleMonth_afterRestartReturnsFlightsAndExpiry() throws IOException {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        DiskCache cache = new DiskCache(directory, 0, clock::get);
+        Timetable month = new Timetable.Builder()
+                .add("DUB", "SXF", Timetable.toMinutes(LocalDateTime.of(2030, 1, 1, 9, 0)), Timetable.toMinutes(LocalDateTime.of(2030, 1, 1, 12, 0)))
+                .add("DUB", "SXF", Timetable.toMinutes(LocalDateTime.of(2030, 1, 2, 9, 0)), Timetable.toMinutes(LocalDateTime.of(2030, 1, 2, 12, 0)))
+                .build();
+        cache.putScheduleMonth(DUB_SXF_JAN, month, 1000);
+        cache.close();
+
+        //Act
+        DiskCache restartedCache = new DiskCache(directory, 0, clock::get);
+        DiskCache.Entry<Timetable> persistedMonth = restartedCache.getScheduleMonth(DUB_SXF_JAN);
+        DiskCache.Entry<Timetable> missingMonth = restartedCache.getScheduleMonth(DUB_SXF_FEB);
+
+        //Assert
+        assertEquals(1, cache.getWrites());
+        assertEquals(month.toLegs(), persistedMonth.getValue().toLegs());
+        assertEquals(1000, persistedMonth.getExpiresAtMillis());
+        assertTrue(persistedMonth.isFresh(clock.get()));
+        assertNull(missingMonth);
+        assertEquals(1, restartedCache.getHits());
+        assertEquals(1, restartedCache.getMisses());
+    }
+
+    @Test
+    void givenPersistedRoutes_GetRoutes_afterRestartReturnsSnapshot() throws IOException {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        DiskCache cache = new DiskCache(directory, 0, clock::get);
+        RouteSnapshot routes = new RouteSnapshot(Arrays.asList(
+                new Route("DUB", "SXF", null, "RYANAIR"),
+                new Route("DUB", "WRO", "STN", "RYANAIR")), 42);
+        cache.putRoutes(routes, 1000);
+        cache.close();
+
+        //Act
+        RouteSnapshot persistedRoutes = new DiskCache(directory, 0, clock::get).getRoutes();
+
+        //Assert
+        assertEquals(42, persistedRoutes.getLoadedAtMillis());
+        assertEquals(2, persistedRoutes.getRoutes().size());
+        assertEquals("SXF", persistedRoutes.getRoutes().get(0).getAirportTo());
+        assertNull(persistedRoutes.getRoutes().get(0).getConnectingAirport());
+        assertEquals("STN", persistedRoutes.getRoutes().get(1).getConnectingAirport());
+        assertEquals("RYANAIR", persistedRoutes.getRoutes().get(1).getOperator());
+    }
+
+    @Test
+    void givenExpiredMonth_GetScheduleMonth_returnsItWithinStalenessThenDeletesIt() throws IOException {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        DiskCache cache = new DiskCache(directory, 500, clock::get);
+        cache.putScheduleMonth(DUB_SXF_JAN, Timetable.EMPTY, 1000);
+        cache.close();
+        DiskCache restartedCache = new DiskCache(directory, 500, clock::get);
+
+        //Act
+        clock.set(1499);
+        DiskCache.Entry<Timetable> staleMonth = restartedCache.getScheduleMonth(DUB_SXF_JAN);
+        clock.set(1500);
+        DiskCache.Entry<Timetable> expiredMonth = restartedCache.getScheduleMonth(DUB_SXF_JAN);
+
+        //Assert
+        assertNotNull(staleMonth);
+        assertFalse(staleMonth.isFresh(1499));
+        assertNull(expiredMonth);
+        assertFalse(Files.exists(directory.resolve("schedule-DUB-SXF-2030-01.bin")));
+    }
+
+    @Test
+    void givenCorruptFile_GetScheduleMonth_missesAndDeletesIt() throws IOException {
+        //Arrange
+        DiskCache cache = new DiskCache(directory, 0, new AtomicLong()::get);
+        Path file = directory.resolve("schedule-DUB-SXF-2030-01.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14});
+
+        //Act
+        DiskCache.Entry<Timetable> corruptMonth = cache.getScheduleMonth(DUB_SXF_JAN);
+
+        //Assert
+        assertNull(corruptMonth);
+        assertEquals(1, cache.getMisses());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void givenRepeatedWrites_PutScheduleMonth_keepsLatest() throws IOException {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        DiskCache cache = new DiskCache(directory, 0, clock::get);
+        Timetable month = new Timetable.Builder()
+                .add("DUB", "SXF", Timetable.toMinutes(LocalDateTime.of(2030, 1, 1, 9, 0)), Timetable.toMinutes(LocalDateTime.of(2030, 1, 1, 12, 0)))
+                .build();
+
+        //Act
+        cache.putScheduleMonth(DUB_SXF_JAN, Timetable.EMPTY, 1000);
+        cache.putScheduleMonth(DUB_SXF_JAN, month, 2000);
+        cache.close();
+        DiskCache.Entry<Timetable> persistedMonth = new DiskCache(directory, 0, clock::get).getScheduleMonth(DUB_SXF_JAN);
+
+        //Assert
+        assertEquals(1, persistedMonth.getValue().getFlightCount());
+        assertEquals(2000, persistedMonth.getExpiresAtMillis());
+    }
+}
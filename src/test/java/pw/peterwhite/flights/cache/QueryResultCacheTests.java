@@ -0,0 +1,138 @@
+package pw.peterwhite.flights.cache;
+
+import org.junit.jupiter.api.Test;
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the QueryResultCache, using a fake clock to expire entries
+ */
+class QueryResultCacheTests {
+    private static final long ONE_HOUR = 3_600_000L;
+    private static final LocalDateTime START = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Test
+    void givenCachedBucket_Get_returnsJourneysWithinEachSearchOfBucket() {
+        //Arrange
+        QueryResultCache cache = new QueryResultCache(10, ONE_HOUR, ONE_HOUR, new AtomicLong()::get);
+        Journey early = direct(8 * 60, 10 * 60);
+        Journey oneStop = new Journey(1, Arrays.asList(
+                leg("DUB", "STN", 9 * 60, 10 * 60),
+                leg("STN", "SXF", 12 * 60, 14 * 60)));
+        Journey late = direct(12 * 60, 15 * 60 + 30);
+        LocalDateTime bucketStart = cache.getBucketStart(START.plusMinutes(8 * 60 + 15));
+        LocalDateTime bucketEnd = cache.getBucketEnd(START.plusMinutes(15 * 60 + 10));
+        cache.put("DUB", "SXF", bucketStart, bucketEnd, Arrays.asList(early, oneStop, late), cache.getVersion());
+
+        //Act
+        List<Journey> wholeBucket = cache.get("DUB", "SXF", START.plusMinutes(8 * 60), START.plusMinutes(16 * 60));
+        List<Journey> laterDeparture = cache.get("DUB", "SXF", START.plusMinutes(8 * 60 + 1), START.plusMinutes(15 * 60 + 59));
+        List<Journey> earlierArrival = cache.get("DUB", "SXF", START.plusMinutes(8 * 60 + 30), START.plusMinutes(15 * 60 + 29));
+        List<Journey> otherBucket = cache.get("DUB", "SXF", START.plusMinutes(7 * 60 + 59), START.plusMinutes(16 * 60));
+
+        //Assert
+        assertEquals(START.plusMinutes(8 * 60), bucketStart);
+        assertEquals(START.plusMinutes(16 * 60), bucketEnd);
+        assertEquals(Arrays.asList(early, oneStop, late), wholeBucket);
+        assertEquals(Arrays.asList(oneStop, late), laterDeparture);
+        assertEquals(Collections.singletonList(oneStop), earlierArrival);
+        assertNull(otherBucket);
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void givenDateTimesNearMonthBoundaries_GetBucket_staysWithinTheirMonths() {
+        //Arrange
+        QueryResultCache cache = new QueryResultCache(10, ONE_HOUR, 24 * ONE_HOUR, new AtomicLong()::get);
+        LocalDateTime endOfJanuary = LocalDateTime.of(2030, 1, 31, 23, 30);
+        LocalDateTime startOfFebruary = LocalDateTime.of(2030, 2, 1, 0, 30);
+
+        //Act
+        LocalDateTime bucketEnd = cache.getBucketEnd(endOfJanuary);
+        LocalDateTime bucketStart = cache.getBucketStart(startOfFebruary);
+        LocalDateTime midMonthEnd = cache.getBucketEnd(LocalDateTime.of(2030, 1, 15, 10, 0));
+
+        //Assert
+        assertEquals(LocalDateTime.of(2030, 1, 31, 23, 59), bucketEnd);
+        assertEquals(LocalDateTime.of(2030, 2, 1, 0, 0), bucketStart);
+        assertEquals(LocalDateTime.of(2030, 1, 16, 0, 0), midMonthEnd);
+    }
+
+    @Test
+    void givenChangedScheduleMonth_InvalidateScheduleMonth_dropsOnlyEntriesThatMayUseIt() {
+        //Arrange
+        QueryResultCache cache = new QueryResultCache(10, ONE_HOUR, ONE_HOUR, new AtomicLong()::get);
+        LocalDateTime january = START.plusDays(10);
+        LocalDateTime february = START.plusMonths(1).plusDays(10);
+        cache.put("DUB", "SXF", january, january.plusDays(1), Collections.emptyList(), cache.getVersion());
+        cache.put("STN", "SXF", january, january.plusDays(1), Collections.emptyList(), cache.getVersion());
+        cache.put("STN", "BCN", january, january.plusDays(1), Collections.emptyList(), cache.getVersion());
+        cache.put("DUB", "BCN", february, february.plusDays(1), Collections.emptyList(), cache.getVersion());
+
+        //Act
+        cache.invalidateScheduleMonth(new ScheduleMonthKey("DUB", "BCN", 2030, 1));
+
+        //Assert
+        assertNull(cache.get("DUB", "SXF", january, january.plusDays(1)));
+        assertNotNull(cache.get("STN", "SXF", january, january.plusDays(1)));
+        assertNull(cache.get("STN", "BCN", january, january.plusDays(1)));
+        assertNotNull(cache.get("DUB", "BCN", february, february.plusDays(1)));
+        assertEquals(2, cache.getInvalidations());
+    }
+
+    @Test
+    void givenInvalidationDuringSearch_Put_doesNotCacheJourneys() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        QueryResultCache cache = new QueryResultCache(10, ONE_HOUR, ONE_HOUR, clock::get);
+        long searchVersion = cache.getVersion();
+        cache.invalidateRoutes();
+
+        //Act
+        cache.put("DUB", "SXF", START, START.plusDays(1), Collections.emptyList(), searchVersion);
+        boolean cachedAfterInvalidation = cache.get("DUB", "SXF", START, START.plusDays(1)) != null;
+        cache.put("DUB", "SXF", START, START.plusDays(1), Collections.emptyList(), cache.getVersion());
+        boolean cachedAfterSearch = cache.get("DUB", "SXF", START, START.plusDays(1)) != null;
+        clock.set(ONE_HOUR);
+        boolean cachedAfterTtl = cache.get("DUB", "SXF", START, START.plusDays(1)) != null;
+
+        //Assert
+        assertFalse(cachedAfterInvalidation);
+        assertTrue(cachedAfterSearch);
+        assertFalse(cachedAfterTtl);
+    }
+
+    @Test
+    void givenMonthsExpiringBeforeTtl_Put_expiresEntryWithMonths() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        QueryResultCache cache = new QueryResultCache(10, ONE_HOUR, ONE_HOUR, clock::get);
+        cache.put("DUB", "SXF", START, START.plusDays(1), Collections.emptyList(), cache.getVersion(), ONE_HOUR / 4);
+
+        //Act
+        boolean cachedBeforeMonthsExpire = cache.get("DUB", "SXF", START, START.plusDays(1)) != null;
+        clock.set(ONE_HOUR / 4);
+        boolean cachedAfterMonthsExpire = cache.get("DUB", "SXF", START, START.plusDays(1)) != null;
+
+        //Assert
+        assertTrue(cachedBeforeMonthsExpire);
+        assertFalse(cachedAfterMonthsExpire);
+    }
+
+    private static Journey direct(int departureMinute, int arrivalMinute) {
+        return new Journey(0, Collections.singletonList(leg("DUB", "SXF", departureMinute, arrivalMinute)));
+    }
+
+    private static Leg leg(String airportFrom, String airportTo, int departureMinute, int arrivalMinute) {
+        return new Leg(airportFrom, airportTo, START.plusMinutes(departureMinute), START.plusMinutes(arrivalMinute));
+    }
+}
@@ -0,0 +1,96 @@
+package pw.peterwhite.flights.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.dto.Route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the RouteSnapshotCache. The loader stands in for the Routes API so no network requests are made.
+ */
+class RouteSnapshotCacheTests {
+    private static final long ONE_HOUR = 3_600_000L;
+
+    @Test
+    void givenSnapshot_Get_doesNotReload() {
+        //Arrange
+        AtomicInteger loads = new AtomicInteger();
+        RouteSnapshotCache cache = new RouteSnapshotCache(countingLoader(loads, routes("DUB", "SXF")), ONE_HOUR, ONE_HOUR);
+
+        //Act
+        List<Route> first = cache.get();
+        List<Route> second = cache.get();
+
+        //Assert
+        assertEquals(1, loads.get());
+        assertSame(first, second);
+        assertThrows(UnsupportedOperationException.class, () -> first.add(new Route("DUB", "BCN", null, "RYANAIR")));
+    }
+
+    @Test
+    void givenRefreshFails_Get_keepsPreviousSnapshot() {
+        //Arrange
+        List<Route> routes = routes("DUB", "SXF");
+        AtomicInteger loads = new AtomicInteger();
+        RouteSnapshotCache cache = new RouteSnapshotCache(() -> {
+            if (loads.getAndIncrement() > 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream Routes API error");
+            }
+            return routes;
+        }, ONE_HOUR, ONE_HOUR);
+        List<Route> before = cache.get();
+
+        //Act
+        cache.refresh();
+
+        //Assert
+        assertEquals(2, loads.get());
+        assertSame(before, cache.get());
+    }
+
+    @Test
+    void givenRefreshSucceeds_Get_returnsNewSnapshot() {
+        //Arrange
+        AtomicInteger loads = new AtomicInteger();
+        RouteSnapshotCache cache = new RouteSnapshotCache(() -> loads.incrementAndGet() == 1
+                ? routes("DUB", "SXF")
+                : routes("DUB", "BCN"), ONE_HOUR, ONE_HOUR);
+        cache.get();
+
+        //Act
+        cache.refresh();
+
+        //Assert
+        assertEquals("BCN", cache.get().get(0).getAirportTo());
+    }
+
+    @Test
+    void givenNoSnapshotAndLoaderFails_Get_propagatesError() {
+        //Arrange
+        RouteSnapshotCache cache = new RouteSnapshotCache(() -> {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream Routes API error");
+        }, ONE_HOUR, ONE_HOUR);
+
+        //Act & Assert
+        assertThrows(ResponseStatusException.class, cache::get);
+    }
+
+    private static Supplier<List<Route>> countingLoader(AtomicInteger loads, List<Route> routes) {
+        return () -> {
+            loads.incrementAndGet();
+            return routes;
+        };
+    }
+
+    private static List<Route> routes(String airportFrom, String airportTo) {
+        return new ArrayList<>(Collections.singletonList(new Route(airportFrom, airportTo, null, "RYANAIR")));
+    }
+}
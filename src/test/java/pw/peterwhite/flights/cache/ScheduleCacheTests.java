@@ -0,0 +1,146 @@
+package pw.peterwhite.flights.cache;
+
+import org.junit.jupiter.api.Test;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ScheduleCache, using a fake clock to expire entries.
+ */
+class ScheduleCacheTests {
+    private static final ScheduleMonthKey DUB_SXF_JAN = new ScheduleMonthKey("DUB", "SXF", 2030, 1);
+    private static final ScheduleMonthKey DUB_SXF_FEB = new ScheduleMonthKey("DUB", "SXF", 2030, 2);
+    private static final ScheduleMonthKey DUB_BCN_JAN = new ScheduleMonthKey("DUB", "BCN", 2030, 1);
+
+    @Test
+    void givenCachedMonth_Get_returnsFlightsAndCountsHit() {
+        //Arrange
+        ScheduleCache cache = new ScheduleCache(10, 1000, new AtomicLong()::get);
+        cache.put(DUB_SXF_JAN, month("DUB", "SXF"));
+
+        //Act
+        Timetable cachedMonth = cache.get(DUB_SXF_JAN);
+        Timetable missingMonth = cache.get(DUB_SXF_FEB);
+
+        //Assert
+        assertEquals(1, cachedMonth.getFlightCount());
+        assertNull(missingMonth);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void givenExpiredMonth_Get_returnsNull() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        ScheduleCache cache = new ScheduleCache(10, 1000, clock::get);
+        cache.put(DUB_SXF_JAN, month("DUB", "SXF"));
+
+        //Act
+        clock.set(999);
+        Timetable freshMonth = cache.get(DUB_SXF_JAN);
+        clock.set(1000);
+        Timetable expiredMonth = cache.get(DUB_SXF_JAN);
+
+        //Assert
+        assertNotNull(freshMonth);
+        assertNull(expiredMonth);
+    }
+
+    @Test
+    void givenExpiredMonth_GetStale_returnsFlightsWithinStaleness() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        ScheduleCache cache = new ScheduleCache(10, 1000, clock::get);
+        cache.put(DUB_SXF_JAN, month("DUB", "SXF"));
+
+        //Act
+        clock.set(1499);
+        Timetable staleMonth = cache.get(DUB_SXF_JAN) == null ? cache.getStale(DUB_SXF_JAN, 500) : null;
+        clock.set(1500);
+        Timetable tooStaleMonth = cache.getStale(DUB_SXF_JAN, 500);
+
+        //Assert
+        assertNotNull(staleMonth);
+        assertEquals(1, staleMonth.getFlightCount());
+        assertNull(tooStaleMonth);
+        assertNull(cache.getStale(DUB_SXF_FEB, 500));
+    }
+
+    @Test
+    void givenFullCache_Put_evictsLeastRecentlyUsed() {
+        //Arrange
+        ScheduleCache cache = new ScheduleCache(2, 1000, new AtomicLong()::get);
+        cache.put(DUB_SXF_JAN, month("DUB", "SXF"));
+        cache.put(DUB_SXF_FEB, month("DUB", "SXF"));
+        cache.get(DUB_SXF_JAN); // January is now more recently used than February
+
+        //Act
+        cache.put(DUB_BCN_JAN, month("DUB", "BCN"));
+
+        //Assert
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get(DUB_SXF_JAN));
+        assertNull(cache.get(DUB_SXF_FEB));
+        assertNotNull(cache.get(DUB_BCN_JAN));
+    }
+
+    @Test
+    void givenEmptyMonth_Get_returnsEmptyTimetable() {
+        //Arrange
+        ScheduleCache cache = new ScheduleCache(10, 1000, new AtomicLong()::get);
+        cache.put(DUB_SXF_JAN, Timetable.EMPTY);
+
+        //Act
+        Timetable cachedMonth = cache.get(DUB_SXF_JAN);
+
+        //Assert
+        assertNotNull(cachedMonth);
+        assertEquals(0, cachedMonth.getFlightCount());
+    }
+
+    @Test
+    void givenCachedMonths_GetMemoryBytes_sumsTimetables() {
+        //Arrange
+        ScheduleCache cache = new ScheduleCache(10, 1000, new AtomicLong()::get);
+        Timetable january = cache.put(DUB_SXF_JAN, month("DUB", "SXF"));
+        Timetable february = cache.put(DUB_SXF_FEB, month("DUB", "SXF"));
+
+        //Act
+        long memoryBytes = cache.getMemoryBytes();
+
+        //Assert
+        assertEquals(january.getMemoryBytes() + february.getMemoryBytes(), memoryBytes);
+    }
+
+    @Test
+    void givenReplacedEvictedAndClearedMonths_GetMemoryBytes_keepsRunningTotal() {
+        //Arrange
+        ScheduleCache cache = new ScheduleCache(2, 1000, new AtomicLong()::get);
+        Timetable january = cache.put(DUB_SXF_JAN, month("DUB", "SXF"));
+        cache.put(DUB_SXF_FEB, month("DUB", "SXF"));
+        Timetable emptyFebruary = cache.put(DUB_SXF_FEB, Timetable.EMPTY);
+
+        //Act
+        long afterReplace = cache.getMemoryBytes();
+        Timetable bcnJanuary = cache.put(DUB_BCN_JAN, month("DUB", "BCN")); // Evicts January
+        long afterEviction = cache.getMemoryBytes();
+        cache.clear();
+        long afterClear = cache.getMemoryBytes();
+
+        //Assert
+        assertEquals(january.getMemoryBytes() + emptyFebruary.getMemoryBytes(), afterReplace);
+        assertEquals(emptyFebruary.getMemoryBytes() + bcnJanuary.getMemoryBytes(), afterEviction);
+        assertEquals(0, afterClear);
+    }
+
+    private static Timetable month(String airportFrom, String airportTo) {
+        int departure = Timetable.toMinutes(LocalDateTime.of(2030, 1, 15, 12, 0));
+        return new Timetable.Builder().add(airportFrom, airportTo, departure, departure + 120).build();
+    }
+}
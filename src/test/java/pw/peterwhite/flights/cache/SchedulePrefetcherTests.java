@@ -0,0 +1,83 @@
+package pw.peterwhite.flights.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SchedulePrefetcher, using a fake clock to expire months. The fetcher stands in for the Schedules
+ * API so no network requests are made.
+ */
+class SchedulePrefetcherTests {
+    private static final long ONE_MINUTE = 60_000L;
+    private static final ScheduleMonthKey DUB_SXF_JAN = new ScheduleMonthKey("DUB", "SXF", 2030, 1);
+    private static final ScheduleMonthKey DUB_SXF_FEB = new ScheduleMonthKey("DUB", "SXF", 2030, 2);
+    private static final ScheduleMonthKey DUB_BCN_JAN = new ScheduleMonthKey("DUB", "BCN", 2030, 1);
+
+    @Test
+    void givenCachedMonths_Prefetch_fetchesOnlyMissingAndExpiringMonths() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        ScheduleCache scheduleCache = new ScheduleCache(10, 30 * ONE_MINUTE, clock::get);
+        scheduleCache.put(DUB_SXF_JAN, Timetable.EMPTY, 30 * ONE_MINUTE);
+        scheduleCache.put(DUB_SXF_FEB, Timetable.EMPTY, 2 * ONE_MINUTE);
+        List<ScheduleMonthKey> fetched = new ArrayList<>();
+        SchedulePrefetcher prefetcher = new SchedulePrefetcher(() -> Arrays.asList(DUB_SXF_JAN, DUB_SXF_FEB, DUB_BCN_JAN),
+                scheduleCache, fetched::add, ONE_MINUTE, 0, clock::get);
+
+        //Act
+        int fetches = prefetcher.prefetch();
+
+        //Assert
+        assertEquals(2, fetches);
+        assertEquals(Arrays.asList(DUB_SXF_FEB, DUB_BCN_JAN), fetched);
+        assertEquals(2, prefetcher.getFetches());
+        assertEquals(0, scheduleCache.getHits() + scheduleCache.getMisses());
+    }
+
+    @Test
+    void givenFailingFetch_Prefetch_countsFailureAndCarriesOn() {
+        //Arrange
+        ScheduleCache scheduleCache = new ScheduleCache(10, 30 * ONE_MINUTE, new AtomicLong()::get);
+        List<ScheduleMonthKey> fetched = new ArrayList<>();
+        SchedulePrefetcher prefetcher = new SchedulePrefetcher(() -> Arrays.asList(DUB_SXF_JAN, DUB_BCN_JAN), scheduleCache, month -> {
+            if (month.equals(DUB_SXF_JAN)) {
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream Schedules API error");
+            }
+            fetched.add(month);
+        }, ONE_MINUTE, 0);
+
+        //Act
+        int fetches = prefetcher.prefetch();
+
+        //Assert
+        assertEquals(2, fetches);
+        assertEquals(Arrays.asList(DUB_BCN_JAN), fetched);
+        assertEquals(1, prefetcher.getFetches());
+        assertEquals(1, prefetcher.getFailures());
+    }
+
+    @Test
+    void givenRoutesApiFails_Prefetch_fetchesNothing() {
+        //Arrange
+        ScheduleCache scheduleCache = new ScheduleCache(10, 30 * ONE_MINUTE);
+        SchedulePrefetcher prefetcher = new SchedulePrefetcher(() -> {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Upstream Routes API error");
+        }, scheduleCache, month -> fail("No month to fetch"), ONE_MINUTE, 0);
+
+        //Act
+        int fetches = prefetcher.prefetch();
+
+        //Assert
+        assertEquals(0, fetches);
+        assertFalse(prefetcher.isWarmedUp());
+    }
+}
@@ -0,0 +1,121 @@
+package pw.peterwhite.flights.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SingleFlight. A latch holds the first load open so the second caller arrives while it is in flight.
+ */
+class SingleFlightTests {
+
+    @Test
+    void givenLoadInFlight_Load_sharesResultAndCountsCoalesced() throws Exception {
+        //Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loaderCalls = new AtomicInteger();
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> first = executor.submit(() -> singleFlight.load("DUB-SXF", () -> {
+                loaderCalls.incrementAndGet();
+                loadStarted.countDown();
+                await(releaseLoad);
+                return "legs";
+            }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+            //Act
+            releaseWhenWaiting(singleFlight, releaseLoad);
+            String second = singleFlight.load("DUB-SXF", () -> {
+                loaderCalls.incrementAndGet();
+                return "other legs";
+            });
+
+            //Assert
+            assertEquals("legs", first.get(5, TimeUnit.SECONDS));
+            assertEquals("legs", second);
+            assertEquals(1, loaderCalls.get());
+            assertEquals(1, singleFlight.getLoads());
+            assertEquals(1, singleFlight.getCoalesced());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void givenLoadInFlightFails_Load_rethrowsSameException() throws Exception {
+        //Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        IllegalStateException failure = new IllegalStateException("Upstream error");
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            executor.submit(() -> singleFlight.load("DUB-SXF", () -> {
+                loadStarted.countDown();
+                await(releaseLoad);
+                throw failure;
+            }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+            //Act
+            releaseWhenWaiting(singleFlight, releaseLoad);
+            IllegalStateException ex = assertThrows(IllegalStateException.class,
+                    () -> singleFlight.load("DUB-SXF", () -> "legs"));
+
+            //Assert
+            assertSame(failure, ex);
+            assertEquals(1, singleFlight.getCoalesced());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void givenCompletedLoad_Load_callsLoaderAgain() {
+        //Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        singleFlight.load("DUB-SXF", () -> "legs");
+
+        //Act
+        String result = singleFlight.load("DUB-SXF", () -> "new legs");
+
+        //Assert
+        assertEquals("new legs", result);
+        assertEquals(2, singleFlight.getLoads());
+        assertEquals(0, singleFlight.getCoalesced());
+    }
+
+    /**
+     * Releases the in-flight load once the calling thread has joined it, which is when the coalesced counter moves
+     */
+    private static void releaseWhenWaiting(SingleFlight<?, ?> singleFlight, CountDownLatch releaseLoad) {
+        Thread releaser = new Thread(() -> {
+            while (singleFlight.getCoalesced() == 0) {
+                Thread.yield();
+            }
+            releaseLoad.countDown();
+        });
+        releaser.setDaemon(true);
+        releaser.start();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
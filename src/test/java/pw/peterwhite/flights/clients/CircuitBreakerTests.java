@@ -0,0 +1,102 @@
+package pw.peterwhite.flights.clients;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CircuitBreaker. Probes run on the breaker's own background thread every 10ms.
+ */
+class CircuitBreakerTests {
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("Schedules", 3, 10);
+
+    @AfterEach
+    private void teardown() {
+        circuitBreaker.stop();
+    }
+
+    @Test
+    void givenFailuresBelowThreshold_RecordFailure_staysClosed() {
+        //Act
+        circuitBreaker.recordFailure(() -> { });
+        circuitBreaker.recordFailure(() -> { });
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure(() -> { });
+        circuitBreaker.recordFailure(() -> { });
+
+        //Assert
+        // A success in between resets the count, so there were never 3 failures in a row
+        assertFalse(circuitBreaker.isOpen());
+        assertEquals(0, circuitBreaker.getOpened());
+    }
+
+    @Test
+    void givenProbeSucceeds_RecordFailure_opensThenClosesInBackground() throws Exception {
+        //Arrange
+        AtomicBoolean apiDown = new AtomicBoolean(true);
+        AtomicInteger probes = new AtomicInteger();
+        Runnable probe = () -> {
+            probes.incrementAndGet();
+            if (apiDown.get()) {
+                throw new IllegalStateException("Still down");
+            }
+        };
+
+        //Act
+        circuitBreaker.recordFailure(probe);
+        circuitBreaker.recordFailure(probe);
+        circuitBreaker.recordFailure(probe);
+        boolean openedAtThreshold = circuitBreaker.isOpen();
+        awaitProbes(probes, 2);
+        boolean openWhileProbesFail = circuitBreaker.isOpen();
+        apiDown.set(false);
+        awaitClosed();
+
+        //Assert
+        assertTrue(openedAtThreshold);
+        assertTrue(openWhileProbesFail);
+        assertFalse(circuitBreaker.isOpen());
+        assertEquals(1, circuitBreaker.getOpened());
+    }
+
+    @Test
+    void givenOpenBreaker_RecordFailure_doesNotScheduleMoreProbes() throws Exception {
+        //Arrange
+        AtomicInteger firstProbes = new AtomicInteger();
+        AtomicInteger laterProbes = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure(() -> {
+                firstProbes.incrementAndGet();
+                throw new IllegalStateException("Still down");
+            });
+        }
+
+        //Act
+        circuitBreaker.recordFailure(laterProbes::incrementAndGet);
+        awaitProbes(firstProbes, 3);
+
+        //Assert
+        assertEquals(0, laterProbes.get());
+        assertEquals(1, circuitBreaker.getOpened());
+    }
+
+    private static void awaitProbes(AtomicInteger probes, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (probes.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(probes.get() >= count);
+    }
+
+    private void awaitClosed() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (circuitBreaker.isOpen() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package pw.peterwhite.flights.clients;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.dto.Schedule;
+import pw.peterwhite.flights.dto.Schedule.DayFlights;
+import pw.peterwhite.flights.dto.Schedule.FlightDetails;
+import pw.peterwhite.flights.search.Timetable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RyanairApiClient.flattenSchedule and parseMinuteOfDay
+ */
+class FlattenScheduleTests {
+
+    @Test
+    void givenHourMinuteTimes_ParseMinuteOfDay_returnsMinutesSinceMidnight() {
+        //Act & Assert
+        assertEquals(0, RyanairApiClient.parseMinuteOfDay("00:00"));
+        assertEquals(7 * 60 + 5, RyanairApiClient.parseMinuteOfDay("07:05"));
+        assertEquals(23 * 60 + 59, RyanairApiClient.parseMinuteOfDay("23:59"));
+        assertEquals(7 * 60 + 5, RyanairApiClient.parseMinuteOfDay("07:05:30"));
+    }
+
+    @Test
+    void givenMalformedTimes_ParseMinuteOfDay_throws() {
+        //Act & Assert
+        assertThrows(DateTimeParseException.class, () -> RyanairApiClient.parseMinuteOfDay("7:05"));
+        assertThrows(DateTimeParseException.class, () -> RyanairApiClient.parseMinuteOfDay("24:00"));
+        assertThrows(DateTimeParseException.class, () -> RyanairApiClient.parseMinuteOfDay("12:60"));
+        assertThrows(DateTimeParseException.class, () -> RyanairApiClient.parseMinuteOfDay("ab:cd"));
+        assertThrows(DateTimeParseException.class, () -> RyanairApiClient.parseMinuteOfDay(""));
+        assertThrows(DateTimeParseException.class, () -> RyanairApiClient.parseMinuteOfDay(null));
+    }
+
+    @Test
+    void givenMalformedTimeOrDay_FlattenSchedule_throws() {
+        //Arrange
+        Schedule badTime = new Schedule(1, Collections.singletonList(day(2, flight("7:05", "09:00"))));
+        Schedule badDay = new Schedule(2, Collections.singletonList(day(30, flight("07:05", "09:00"))));
+
+        //Act & Assert
+        assertThrows(DateTimeParseException.class, () -> RyanairApiClient.flattenSchedule("DUB", "SXF", 2030, badTime));
+        assertThrows(DateTimeException.class, () -> RyanairApiClient.flattenSchedule("DUB", "SXF", 2030, badDay));
+    }
+
+    @Test
+    void givenFlightsOutOfOrder_FlattenSchedule_sortsThemByDeparture() {
+        // Months are held as Timetables, so flights come back by departure rather than in the order the API lists them
+        //Arrange
+        Schedule schedule = new Schedule(1, Arrays.asList(
+                day(2, flight("18:00", "21:20"), flight("09:50", "13:10")),
+                day(1, flight("14:20", "17:40"))));
+
+        //Act
+        List<Leg> legs = RyanairApiClient.flattenSchedule("DUB", "SXF", 2030, schedule).toLegs();
+
+        //Assert
+        assertEquals(Arrays.asList(
+                new Leg("DUB", "SXF", LocalDateTime.of(2030, 1, 1, 14, 20), LocalDateTime.of(2030, 1, 1, 17, 40)),
+                new Leg("DUB", "SXF", LocalDateTime.of(2030, 1, 2, 9, 50), LocalDateTime.of(2030, 1, 2, 13, 10)),
+                new Leg("DUB", "SXF", LocalDateTime.of(2030, 1, 2, 18, 0), LocalDateTime.of(2030, 1, 2, 21, 20))),
+                legs);
+    }
+
+    @Test
+    void givenEmptyOrMissingDaysOrFlights_FlattenSchedule_hasNoFlightsForThem() {
+        //Arrange
+        Schedule noDays = new Schedule(1, Collections.emptyList());
+        Schedule missingDays = new Schedule(1, null);
+        Schedule emptyAndMissingFlights = new Schedule(1, Arrays.asList(
+                new DayFlights(1, Collections.emptyList()),
+                new DayFlights(2, null),
+                day(3, flight("09:50", "13:10"))));
+
+        //Act
+        Timetable fromNoDays = RyanairApiClient.flattenSchedule("DUB", "SXF", 2030, noDays);
+        Timetable fromMissingDays = RyanairApiClient.flattenSchedule("DUB", "SXF", 2030, missingDays);
+        Timetable fromEmptyAndMissingFlights = RyanairApiClient.flattenSchedule("DUB", "SXF", 2030, emptyAndMissingFlights);
+
+        //Assert
+        assertEquals(0, fromNoDays.getFlightCount());
+        assertEquals(0, fromMissingDays.getFlightCount());
+        assertEquals(Collections.singletonList(
+                new Leg("DUB", "SXF", LocalDateTime.of(2030, 1, 3, 9, 50), LocalDateTime.of(2030, 1, 3, 13, 10))),
+                fromEmptyAndMissingFlights.toLegs());
+    }
+
+    @Test
+    void givenRecordedSchedules_FlattenSchedule_matchesBindingEachTime() throws IOException {
+        //Arrange
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (String route : Arrays.asList("DUB-SXF-2030-1", "DUB-SXF-2030-2", "DUB-BCN-2030-1", "BCN-SXF-2030-2")) {
+            Schedule schedule;
+            try (InputStream json = getClass().getClassLoader().getResourceAsStream("schedule-" + route + ".json")) {
+                schedule = objectMapper.readValue(json, Schedule.class);
+            }
+            String[] airports = route.split("-");
+
+            //Act
+            List<Leg> legs = RyanairApiClient.flattenSchedule(airports[0], airports[1], 2030, schedule).toLegs();
+
+            //Assert
+            assertFalse(legs.isEmpty(), route);
+            assertEquals(flattenWithLocalTimeParse(airports[0], airports[1], 2030, schedule), legs, route);
+        }
+    }
+
+    /**
+     * Flattening as it was done before flattenSchedule, binding each day to a LocalDate and each time to a LocalTime
+     */
+    private static List<Leg> flattenWithLocalTimeParse(String airportFrom, String airportTo, int year, Schedule schedule) {
+        List<Leg> legs = new ArrayList<>();
+        for (DayFlights flightsDay : schedule.getDays()) {
+            LocalDate date = LocalDate.of(year, schedule.getMonth(), flightsDay.getDay());
+            for (FlightDetails details : flightsDay.getFlights()) {
+                legs.add(new Leg(airportFrom,
+                        airportTo,
+                        LocalDateTime.of(date, LocalTime.parse(details.getDepartureTime())),
+                        LocalDateTime.of(date, LocalTime.parse(details.getArrivalTime()))));
+            }
+        }
+        return legs;
+    }
+
+    private static DayFlights day(int day, FlightDetails... flights) {
+        return new DayFlights(day, Arrays.asList(flights));
+    }
+
+    private static FlightDetails flight(String departureTime, String arrivalTime) {
+        return new FlightDetails(departureTime, arrivalTime);
+    }
+}
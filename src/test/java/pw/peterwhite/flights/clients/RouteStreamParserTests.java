@@ -0,0 +1,106 @@
+package pw.peterwhite.flights.clients;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+import pw.peterwhite.flights.dto.Route;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pw.peterwhite.flights.helpers.TestHelper.*;
+
+/**
+ * Unit tests for the RouteStreamParser, checked against binding routes-subset.json to List<Route>
+ */
+class RouteStreamParserTests {
+    private static final String ROUTE_OPERATOR = "RYANAIR";
+
+    private final RouteStreamParser parser = new RouteStreamParser(new JsonFactory(), ROUTE_OPERATOR);
+
+    @Test
+    void givenRoutesSubset_Parse_keepsOnlySearchableRoutesInOrder() throws IOException {
+        //Arrange
+        List<String> expected = new ArrayList<>();
+        for (Route route : generateRoutesHttpResponse().getBody()) {
+            if (route.getConnectingAirport() == null && ROUTE_OPERATOR.equals(route.getOperator())) {
+                expected.add(route.getAirportFrom() + "-" + route.getAirportTo());
+            }
+        }
+
+        //Act
+        List<Route> routes;
+        try (InputStream json = getClass().getClassLoader().getResourceAsStream("routes-subset.json")) {
+            routes = parser.parse(json);
+        }
+
+        //Assert
+        List<String> parsed = new ArrayList<>();
+        for (Route route : routes) {
+            assertNull(route.getConnectingAirport());
+            assertEquals(ROUTE_OPERATOR, route.getOperator());
+            parsed.add(route.getAirportFrom() + "-" + route.getAirportTo());
+        }
+        assertEquals(9, parsed.size()); // AIR_MALTA and connectingAirport routes left out
+        assertEquals(expected, parsed);
+    }
+
+    @Test
+    void givenRepeatedAirports_Parse_sharesOneStringPerAirport() throws IOException {
+        //Arrange
+        String json = "[{\"airportFrom\":\"DUB\",\"airportTo\":\"SXF\",\"connectingAirport\":null,\"operator\":\"RYANAIR\"}," +
+                "{\"airportFrom\":\"SXF\",\"airportTo\":\"DUB\",\"connectingAirport\":null,\"operator\":\"RYANAIR\"}]";
+
+        //Act
+        List<Route> routes = parse(json);
+
+        //Assert
+        assertEquals(2, routes.size());
+        assertSame(routes.get(0).getAirportFrom(), routes.get(1).getAirportTo());
+        assertSame(routes.get(0).getAirportTo(), routes.get(1).getAirportFrom());
+    }
+
+    @Test
+    void givenUnusedFieldsAndUnsearchableRoutes_Parse_skipsThem() throws IOException {
+        //Arrange
+        String json = "[null," +
+                "{\"connectingAirport\":\"BGY\",\"airportFrom\":\"VNO\",\"airportTo\":\"CAG\",\"operator\":\"RYANAIR\"}," +
+                "{\"airportFrom\":\"MLA\",\"airportTo\":\"TUN\",\"operator\":\"AIR_MALTA\",\"tags\":[\"a\",{\"b\":[]}]}," +
+                "{\"airportFrom\":\"DUB\",\"airportTo\":\"SXF\"}," +
+                "{\"airportFrom\":\"DUB\",\"operator\":\"RYANAIR\"}," +
+                "{\"newRoute\":true,\"airportFrom\":\"DUB\",\"group\":{\"name\":\"CITY\",\"ids\":[1,2]}," +
+                "\"airportTo\":\"BCN\",\"operator\":\"RYANAIR\",\"similarArrivalAirportCodes\":[]}]";
+
+        //Act
+        List<Route> routes = parse(json);
+
+        //Assert
+        assertEquals(1, routes.size());
+        assertEquals("DUB", routes.get(0).getAirportFrom());
+        assertEquals("BCN", routes.get(0).getAirportTo());
+    }
+
+    @Test
+    void givenEmptyBody_Parse_returnsNull() throws IOException {
+        //Act & Assert
+        assertNull(parse(""));
+        assertNull(parse("null"));
+        assertTrue(parse("[]").isEmpty());
+    }
+
+    @Test
+    void givenNotAnArray_Parse_throws() {
+        //Act & Assert
+        assertThrows(JsonParseException.class, () -> parse("{\"airportFrom\":\"DUB\"}"));
+        assertThrows(JsonParseException.class, () -> parse("[{\"airportFrom\":\"DUB\",\"airportTo\":\"SXF\""));
+    }
+
+    private List<Route> parse(String json) throws IOException {
+        return parser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,95 @@
+package pw.peterwhite.flights.clients;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the TokenBucket, using a fake clock to refill permits.
+ */
+class TokenBucketTests {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void givenFullBucket_Reserve_allowsBurstWithoutWaiting() {
+        //Arrange
+        TokenBucket bucket = new TokenBucket(10, 3, new AtomicLong()::get);
+
+        //Act & Assert
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE));
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE));
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE));
+        assertEquals(0, bucket.getWaits());
+    }
+
+    @Test
+    void givenEmptyBucket_Reserve_queuesCallersOnePermitApart() {
+        //Arrange
+        TokenBucket bucket = new TokenBucket(10, 1, new AtomicLong()::get);
+        bucket.reserve(Long.MAX_VALUE);
+
+        //Act
+        long firstWait = bucket.reserve(Long.MAX_VALUE);
+        long secondWait = bucket.reserve(Long.MAX_VALUE);
+
+        //Assert
+        assertEquals(SECOND / 10, firstWait);
+        assertEquals(2 * SECOND / 10, secondWait);
+        assertEquals(2, bucket.getWaits());
+        assertEquals(3 * SECOND / 10, bucket.getWaitNanos());
+    }
+
+    @Test
+    void givenWaitLongerThanAllowed_Reserve_rejectsWithoutTakingPermit() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+        bucket.reserve(Long.MAX_VALUE);
+
+        //Act
+        long rejected = bucket.reserve(SECOND / 20);
+        clock.addAndGet(SECOND / 10);
+        long afterRefill = bucket.reserve(0);
+
+        //Assert
+        assertEquals(-1, rejected);
+        assertEquals(0, afterRefill);
+        assertEquals(1, bucket.getRejections());
+    }
+
+    @Test
+    void givenIdleBucket_Reserve_neverRefillsPastBurst() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 2, clock::get);
+
+        //Act
+        clock.addAndGet(60 * SECOND);
+        bucket.reserve(Long.MAX_VALUE);
+        bucket.reserve(Long.MAX_VALUE);
+        long thirdWait = bucket.reserve(Long.MAX_VALUE);
+
+        //Assert
+        assertEquals(SECOND / 10, thirdWait);
+    }
+
+    @Test
+    void givenPause_Reserve_waitsUntilPauseEndsWithoutBurst() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 5, clock::get);
+
+        //Act
+        bucket.pause(2 * SECOND);
+        long firstWait = bucket.reserve(Long.MAX_VALUE);
+        long secondWait = bucket.reserve(Long.MAX_VALUE);
+
+        //Assert
+        // No permits are banked while paused, so the first one is a full permit after the pause ends
+        assertEquals(2 * SECOND + SECOND / 10, firstWait);
+        assertEquals(2 * SECOND + 2 * SECOND / 10, secondWait);
+    }
+}
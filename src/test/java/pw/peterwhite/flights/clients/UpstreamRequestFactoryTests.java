@@ -0,0 +1,150 @@
+package pw.peterwhite.flights.clients;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import pw.peterwhite.flights.config.FlightConfigProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for UpstreamRequestFactory against a local stub server standing in for the Ryanair APIs.
+ * The server records each client connection (by remote address) and gzips its response when asked to.
+ */
+class UpstreamRequestFactoryTests {
+    private static final String BODY = "{\"month\":1,\"days\":[]}";
+
+    private HttpServer server;
+    private URI stubApi;
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private final Set<String> acceptEncodings = ConcurrentHashMap.newKeySet();
+    private volatile long responseDelayMs;
+
+    @BeforeEach
+    private void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::respond);
+        server.setExecutor(Executors.newFixedThreadPool(32));
+        server.start();
+        stubApi = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/timtbl/3/schedules/DUB/SXF/years/2030/months/1");
+    }
+
+    @AfterEach
+    private void teardown() {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    @Test
+    void givenPool_Exchange_reusesOneConnectionAndDecodesGzip() throws Exception {
+        //Arrange
+        ClientHttpRequestFactory requestFactory = UpstreamRequestFactory.create(properties(4, true, 0));
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+
+        try {
+            //Act
+            for (int i = 0; i < 20; i++) {
+                assertEquals(BODY, restTemplate.getForObject(stubApi, String.class));
+            }
+
+            //Assert
+            assertEquals(1, connections.size());
+            assertTrue(acceptEncodings.stream().allMatch(acceptEncoding -> acceptEncoding.contains("gzip")));
+        } finally {
+            ((DisposableBean) requestFactory).destroy();
+        }
+    }
+
+    @Test
+    void givenCompressionDisabled_Exchange_doesNotAskForGzip() throws Exception {
+        //Arrange
+        ClientHttpRequestFactory requestFactory = UpstreamRequestFactory.create(properties(4, false, 0));
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+
+        try {
+            //Act
+            String body = restTemplate.getForObject(stubApi, String.class);
+
+            //Assert
+            assertEquals(BODY, body);
+            assertEquals(1, acceptEncodings.size());
+            assertFalse(acceptEncodings.iterator().next().contains("gzip"));
+        } finally {
+            ((DisposableBean) requestFactory).destroy();
+        }
+    }
+
+    @Test
+    void givenSlowUpstream_Exchange_timesOut() throws Exception {
+        //Arrange
+        responseDelayMs = 2000;
+        ClientHttpRequestFactory pooledRequestFactory = UpstreamRequestFactory.create(properties(4, true, 200));
+        ClientHttpRequestFactory simpleRequestFactory = UpstreamRequestFactory.create(properties(0, true, 200));
+
+        try {
+            //Act & Assert
+            assertThrows(ResourceAccessException.class, () -> new RestTemplate(pooledRequestFactory).getForObject(stubApi, String.class));
+            assertThrows(ResourceAccessException.class, () -> new RestTemplate(simpleRequestFactory).getForObject(stubApi, String.class));
+        } finally {
+            ((DisposableBean) pooledRequestFactory).destroy();
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        connections.add(exchange.getRemoteAddress());
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        acceptEncodings.add(acceptEncoding == null ? "" : acceptEncoding);
+        if (responseDelayMs > 0) {
+            try {
+                Thread.sleep(responseDelayMs);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+                gzip.write(body);
+            }
+            body = gzipped.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static FlightConfigProperties properties(int maxConnections, boolean compressionEnabled, long timeoutMs) {
+        // Every property set, so the Environment is never read
+        FlightConfigProperties flightConfigProperties = new FlightConfigProperties();
+        flightConfigProperties.setUpstreamMaxConnections(maxConnections);
+        flightConfigProperties.setUpstreamMaxConnectionsPerRoute(0);
+        flightConfigProperties.setUpstreamIdleConnectionTimeoutMs(30000L);
+        flightConfigProperties.setUpstreamConnectTimeoutMs(timeoutMs);
+        flightConfigProperties.setUpstreamReadTimeoutMs(timeoutMs);
+        flightConfigProperties.setUpstreamCompressionEnabled(compressionEnabled);
+        return flightConfigProperties;
+    }
+}
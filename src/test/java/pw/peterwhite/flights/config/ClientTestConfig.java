@@ -1,9 +1,13 @@
 package pw.peterwhite.flights.config;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
 import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.metrics.FlightMetrics;
 import pw.peterwhite.flights.services.FlightService;
 
 import static org.mockito.Mockito.mock;
@@ -29,8 +33,29 @@ public class ClientTestConfig {
         return ryanairApiClient;
     }
 
+    @Bean
+    public FlightMetrics flightMetrics() {
+        return new FlightMetrics(new SimpleMeterRegistry());
+    }
+
     @Bean
     public RestTemplate restTemplate() {
         return mock(RestTemplate.class);
     }
+
+    @Bean
+    public TaskExecutor scheduleFetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setThreadNamePrefix("test-schedule-fetch-");
+        return executor;
+    }
+
+    @Bean
+    public TaskExecutor monthFetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setThreadNamePrefix("test-month-fetch-");
+        return executor;
+    }
 }
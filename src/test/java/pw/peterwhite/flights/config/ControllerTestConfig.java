@@ -1,9 +1,12 @@
 package pw.peterwhite.flights.config;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.web.client.RestTemplate;
 import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.metrics.FlightMetrics;
 import pw.peterwhite.flights.services.FlightService;
 
 import static org.mockito.Mockito.mock;
@@ -26,9 +29,23 @@ public class ControllerTestConfig {
         return mock(RyanairApiClient.class);
     }
 
+    @Bean
+    public FlightMetrics flightMetrics() {
+        return new FlightMetrics(new SimpleMeterRegistry());
+    }
+
     @Bean
     public RestTemplate restTemplate() {
         return mock(RestTemplate.class);
     }
 
+    @Bean
+    public TaskExecutor scheduleFetchExecutor() {
+        return mock(TaskExecutor.class);
+    }
+
+    @Bean
+    public TaskExecutor monthFetchExecutor() {
+        return mock(TaskExecutor.class);
+    }
 }
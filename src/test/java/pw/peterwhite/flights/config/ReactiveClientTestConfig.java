@@ -0,0 +1,61 @@
+package pw.peterwhite.flights.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.client.RestTemplate;
+import pw.peterwhite.flights.clients.ReactiveRyanairApiClient;
+import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.metrics.FlightMetrics;
+import pw.peterwhite.flights.services.ReactiveFlightService;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+@TestConfiguration
+public class ReactiveClientTestConfig {
+
+    @Bean
+    public FlightConfigProperties flightConfigProperties() {
+        return spy(FlightConfigProperties.class);
+    }
+
+    @Bean
+    public ReactiveFlightService reactiveFlightService() {
+        return new ReactiveFlightService();
+    }
+
+    @Bean
+    public ReactiveRyanairApiClient reactiveRyanairApiClient() {
+        ReactiveRyanairApiClient reactiveRyanairApiClient = new ReactiveRyanairApiClient(flightConfigProperties());
+        reactiveRyanairApiClient.setBaseUrl("https://my-test-domain.lol");
+        return reactiveRyanairApiClient;
+    }
+
+    @Bean
+    public RyanairApiClient ryanairApiClient() {
+        RyanairApiClient ryanairApiClient = new RyanairApiClient(flightConfigProperties());
+        ryanairApiClient.setBaseUrl("https://my-test-domain.lol");
+        return ryanairApiClient;
+    }
+
+    @Bean
+    public FlightMetrics flightMetrics() {
+        return new FlightMetrics(new SimpleMeterRegistry());
+    }
+
+    @Bean
+    public RestTemplate restTemplate() {
+        return mock(RestTemplate.class);
+    }
+
+    @Bean
+    public TaskExecutor monthFetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setThreadNamePrefix("test-month-fetch-");
+        return executor;
+    }
+}
@@ -2,8 +2,11 @@ package pw.peterwhite.flights.helpers;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.ResourceUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import pw.peterwhite.flights.dto.Route;
 import pw.peterwhite.flights.dto.Schedule;
 
@@ -62,6 +65,30 @@ public class TestHelper {
         return ResponseEntity.ok().body(schedule);
     }
 
+    /**
+     * Answers a Schedules API request with the json file of its route and month, like the API would
+     *
+     * @throws HttpClientErrorException 404 if there is no json file for it
+     */
+    public static ResponseEntity<Schedule> generateScheduleHttpResponse(URI schedulesApi) {
+        // .../schedules/{departure}/{arrival}/years/{year}/months/{month}
+        String[] path = schedulesApi.getPath().split("/");
+        String filename = String.format("schedule-%s-%s-%s-%s.json", path[4], path[5], path[7], path[9]);
+        if (TestHelper.class.getClassLoader().getResource(filename) == null) {
+            throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+        }
+        return generateScheduleHttpResponse(path[4], path[5], Integer.parseInt(path[7]), Integer.parseInt(path[9]));
+    }
+
+    /**
+     * @return an ObjectMapper that can read the journeys returned by the API
+     */
+    public static ObjectMapper generateObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule()); // For Jackson to parse LocalDateTime format
+        return objectMapper;
+    }
+
     private static List<Route> generateRouteList() {
         File file;
         List<Route> routes = new ArrayList<>();
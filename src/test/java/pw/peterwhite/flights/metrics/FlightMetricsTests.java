@@ -0,0 +1,74 @@
+package pw.peterwhite.flights.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for FlightMetrics, against an in-memory registry.
+ */
+class FlightMetricsTests {
+
+    @Test
+    void givenCalls_RecordUpstreamCall_timesEachStatusSeparately() {
+        //Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FlightMetrics flightMetrics = new FlightMetrics(registry);
+
+        //Act
+        flightMetrics.recordUpstreamCall("Schedules", "200", TimeUnit.MILLISECONDS.toNanos(20));
+        flightMetrics.recordUpstreamCall("Schedules", "200", TimeUnit.MILLISECONDS.toNanos(40));
+        flightMetrics.recordUpstreamCall("Schedules", "429", TimeUnit.MILLISECONDS.toNanos(5));
+        flightMetrics.recordUpstreamCall("Routes", FlightMetrics.IO_ERROR, TimeUnit.MILLISECONDS.toNanos(100));
+
+        //Assert
+        Timer ok = registry.get(FlightMetrics.UPSTREAM_REQUESTS).tags("api", "Schedules", "status", "200").timer();
+        assertEquals(2, ok.count());
+        assertEquals(60, ok.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1, registry.get(FlightMetrics.UPSTREAM_REQUESTS).tags("api", "Schedules", "status", "429").timer().count());
+        assertEquals(1, registry.get(FlightMetrics.UPSTREAM_REQUESTS).tags("api", "Routes", "status", "IO_ERROR").timer().count());
+    }
+
+    @Test
+    void givenSearches_RecordSearch_recordsDistributions() {
+        //Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FlightMetrics flightMetrics = new FlightMetrics(registry);
+
+        //Act
+        flightMetrics.recordSearch(3, 1, 4);
+        flightMetrics.recordSearch(7, 3, 0);
+
+        //Assert
+        DistributionSummary calls = registry.get(FlightMetrics.SEARCH_UPSTREAM_CALLS).summary();
+        assertEquals(2, calls.count());
+        assertEquals(10, calls.totalAmount(), 0.001);
+        assertEquals(7, calls.max(), 0.001);
+        assertEquals(4, registry.get(FlightMetrics.SEARCH_HUBS).summary().totalAmount(), 0.001);
+        assertEquals(4, registry.get(FlightMetrics.SEARCH_JOURNEYS).summary().totalAmount(), 0.001);
+    }
+
+    @Test
+    void givenPhases_RecordPhase_tagsEachPhase() {
+        //Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FlightMetrics flightMetrics = new FlightMetrics(registry);
+
+        //Act
+        flightMetrics.recordPhase(FlightMetrics.PHASE_ROUTE_FILTERING, 1000);
+        flightMetrics.recordPhase(FlightMetrics.PHASE_JOIN, 2000);
+        flightMetrics.recordPhase(FlightMetrics.PHASE_JOIN, 3000);
+
+        //Assert
+        assertEquals(1, registry.get(FlightMetrics.SEARCH_PHASE).tag("phase", "route_filtering").timer().count());
+        Timer join = registry.get(FlightMetrics.SEARCH_PHASE).tag("phase", "join").timer();
+        assertEquals(2, join.count());
+        assertEquals(5000, join.totalTime(TimeUnit.NANOSECONDS), 0.001);
+        assertNull(registry.find(FlightMetrics.SEARCH_PHASE).tag("phase", "serialization").timer());
+    }
+}
@@ -0,0 +1,49 @@
+package pw.peterwhite.flights.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TimedJackson2HttpMessageConverter, against an in-memory registry.
+ */
+class TimedJackson2HttpMessageConverterTests {
+
+    @Test
+    void givenList_Write_writesJsonAndTimesSerialization() throws IOException {
+        //Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TimedJackson2HttpMessageConverter converter = new TimedJackson2HttpMessageConverter(new ObjectMapper(), new FlightMetrics(registry));
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+
+        //Act
+        converter.write(Arrays.asList("DUB", "SXF"), MediaType.APPLICATION_JSON, outputMessage);
+
+        //Assert
+        assertEquals("[\"DUB\",\"SXF\"]", outputMessage.getBodyAsString());
+        assertEquals(1, registry.get(FlightMetrics.SEARCH_PHASE).tag("phase", "serialization").timer().count());
+    }
+
+    @Test
+    void givenOtherBody_Write_doesNotTimeIt() throws IOException {
+        //Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TimedJackson2HttpMessageConverter converter = new TimedJackson2HttpMessageConverter(new ObjectMapper(), new FlightMetrics(registry));
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+
+        //Act
+        converter.write(Collections.singletonMap("status", 400), MediaType.APPLICATION_JSON, outputMessage);
+
+        //Assert
+        assertEquals("{\"status\":400}", outputMessage.getBodyAsString());
+        assertNull(registry.find(FlightMetrics.SEARCH_PHASE).tag("phase", "serialization").timer());
+    }
+}
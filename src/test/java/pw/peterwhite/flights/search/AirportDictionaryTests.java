@@ -0,0 +1,92 @@
+package pw.peterwhite.flights.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the AirportDictionary
+ */
+class AirportDictionaryTests {
+
+    @Test
+    void givenRepeatedCodes_Of_givesDenseIdsInCodeOrder() {
+        //Arrange
+        //Act
+        AirportDictionary airports = AirportDictionary.of(Arrays.asList("SXF", "DUB", "BCN", "DUB", "ACE"));
+
+        //Assert
+        assertEquals(4, airports.size());
+        assertEquals(0, airports.getId("ACE"));
+        assertEquals(1, airports.getId("BCN"));
+        assertEquals(2, airports.getId("DUB"));
+        assertEquals(3, airports.getId("SXF"));
+        assertEquals("DUB", airports.getCode(2));
+    }
+
+    @Test
+    void givenUnknownCode_GetId_returnsNone() {
+        //Arrange
+        AirportDictionary airports = AirportDictionary.of(Arrays.asList("DUB", "SXF"));
+
+        //Act
+        //Assert
+        assertEquals(AirportDictionary.NONE, airports.getId("BCN"));
+        assertEquals(AirportDictionary.NONE, airports.getId("dub"));
+        assertEquals(AirportDictionary.NONE, airports.getId(null));
+    }
+
+    @Test
+    void givenCodeThatIsNotIata_GetId_fallsBackToMap() {
+        //Arrange
+        AirportDictionary airports = AirportDictionary.of(Arrays.asList("DUB", "EDDB", "X1"));
+
+        //Act
+        //Assert
+        assertEquals(AirportDictionary.NONE, AirportDictionary.pack("EDDB"));
+        assertEquals(AirportDictionary.NONE, AirportDictionary.pack("X1"));
+        assertEquals(1, airports.getId("EDDB"));
+        assertEquals(2, airports.getId("X1"));
+    }
+
+    @Test
+    void givenManyAirports_GetId_looksUpPackedAndOtherCodes() {
+        //Arrange
+        List<String> codes = new ArrayList<>();
+        for (char letter = 'A'; letter <= 'Z'; letter++) {
+            codes.add("A" + letter + "A");
+            codes.add("B" + letter + "B");
+            codes.add("C" + letter + "1");
+        }
+
+        //Act
+        AirportDictionary airports = AirportDictionary.of(codes);
+
+        //Assert
+        assertEquals(78, airports.size());
+        for (int id = 0; id < airports.size(); id++) {
+            assertEquals(id, airports.getId(airports.getCode(id)));
+        }
+        assertEquals(AirportDictionary.NONE, airports.getId("DUB"));
+        assertEquals(AirportDictionary.NONE, airports.getId("D1"));
+        assertTrue(airports.getMemoryBytes() > 1 << 16);
+        assertTrue(AirportDictionary.of(Arrays.asList("DUB", "SXF")).getMemoryBytes() < 64);
+    }
+
+    @Test
+    void givenIataCodes_Pack_isDistinctWithin15Bits() {
+        //Arrange
+        //Act
+        int first = AirportDictionary.pack("AAA");
+        int last = AirportDictionary.pack("ZZZ");
+
+        //Assert
+        assertEquals(0, first);
+        assertTrue(last < 1 << 15);
+        assertNotEquals(AirportDictionary.pack("ABC"), AirportDictionary.pack("ACB"));
+    }
+}
@@ -0,0 +1,199 @@
+package pw.peterwhite.flights.search;
+
+import org.junit.jupiter.api.Test;
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ConnectionScan search, checked against every journey enumerated by brute force
+ */
+class ConnectionScanTests {
+    private static final LocalDateTime START = LocalDateTime.of(2030, 1, 1, 0, 0);
+    private static final Duration MINIMUM_CONNECTION = Duration.ofHours(2);
+
+    @Test
+    void givenZeroMaxStops_Search_returnsOnlyDirectFlights() {
+        //Arrange
+        List<Leg> legs = Arrays.asList(leg("DUB", "SXF", 60, 200), leg("DUB", "SXF", 300, 420),
+                leg("DUB", "BCN", 0, 60), leg("BCN", "SXF", 180, 240));
+
+        //Act
+        List<Journey> journeys = ConnectionScan.search(legs, "DUB", "SXF", 0, MINIMUM_CONNECTION);
+
+        //Assert
+        assertEquals(2, journeys.size());
+        assertEquals(legs.get(0), journeys.get(0).getLegs().get(0));
+        assertEquals(legs.get(1), journeys.get(1).getLegs().get(0));
+        assertEquals(0, journeys.get(0).getStops());
+    }
+
+    @Test
+    void givenConnectionUnderTwoHours_Search_skipsIt() {
+        //Arrange
+        List<Leg> legs = Arrays.asList(leg("DUB", "BCN", 0, 60), leg("BCN", "SXF", 179, 240), leg("BCN", "SXF", 180, 250));
+
+        //Act
+        List<Journey> journeys = ConnectionScan.search(legs, "DUB", "SXF", 1, MINIMUM_CONNECTION);
+
+        //Assert
+        assertEquals(1, journeys.size());
+        assertEquals(Arrays.asList(legs.get(0), legs.get(2)), journeys.get(0).getLegs());
+    }
+
+    @Test
+    void givenTwoStopRouteOnly_Search_returnsTwoStopJourney() {
+        //Arrange
+        List<Leg> legs = Arrays.asList(leg("DUB", "BCN", 0, 60), leg("BCN", "ACE", 180, 300), leg("ACE", "SXF", 420, 500));
+
+        //Act
+        List<Journey> oneStop = ConnectionScan.search(legs, "DUB", "SXF", 1, MINIMUM_CONNECTION);
+        List<Journey> twoStops = ConnectionScan.search(legs, "DUB", "SXF", 2, MINIMUM_CONNECTION);
+
+        //Assert
+        assertTrue(oneStop.isEmpty());
+        assertEquals(1, twoStops.size());
+        assertEquals(2, twoStops.get(0).getStops());
+        assertEquals(legs, twoStops.get(0).getLegs());
+    }
+
+    @Test
+    void givenFasterJourneyWithMoreStops_Search_keepsBothTradeOffs() {
+        //Arrange
+        // Direct flight departs at the same time but lands after the one stop journey
+        Leg direct = leg("DUB", "SXF", 0, 900);
+        Leg firstLeg = leg("DUB", "BCN", 0, 60);
+        Leg secondLeg = leg("BCN", "SXF", 180, 300);
+        // Departs earlier and lands later than the direct flight, never worth taking
+        Leg dominated = leg("DUB", "ACE", -60, 0);
+        Leg dominatedSecondLeg = leg("ACE", "SXF", 120, 1000);
+
+        //Act
+        List<Journey> journeys = ConnectionScan.search(Arrays.asList(direct, firstLeg, secondLeg, dominated, dominatedSecondLeg),
+                "DUB", "SXF", 1, MINIMUM_CONNECTION);
+
+        //Assert
+        assertEquals(2, journeys.size());
+        assertEquals(Arrays.asList(direct), journeys.get(0).getLegs());
+        assertEquals(Arrays.asList(firstLeg, secondLeg), journeys.get(1).getLegs());
+    }
+
+    @Test
+    void givenRandomNetwork_Search_matchesBruteForceParetoSet() {
+        //Arrange
+        Random random = new Random(42);
+        List<String> airports = Arrays.asList("DUB", "BCN", "ACE", "AMS", "LGW", "SXF");
+        List<Leg> legs = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            String from = airports.get(random.nextInt(airports.size()));
+            String to = airports.get(random.nextInt(airports.size()));
+            if (!from.equals(to)) {
+                int departure = random.nextInt(3000);
+                legs.add(leg(from, to, departure, departure + 60 + random.nextInt(180)));
+            }
+        }
+
+        for (int maxStops = 0; maxStops <= 3; maxStops++) {
+            //Act
+            List<Journey> journeys = ConnectionScan.search(legs, "DUB", "SXF", maxStops, MINIMUM_CONNECTION);
+
+            //Assert
+            List<String> expected = new ArrayList<>();
+            for (Journey journey : bruteForcePareto(legs, "DUB", "SXF", maxStops)) {
+                expected.add(criteria(journey));
+            }
+            List<String> actual = new ArrayList<>();
+            for (Journey journey : journeys) {
+                actual.add(criteria(journey));
+                assertValidJourney(journey, "DUB", "SXF");
+            }
+            expected.sort(null);
+            actual.sort(null);
+            assertEquals(expected, actual, "maxStops=" + maxStops);
+        }
+    }
+
+    private static void assertValidJourney(Journey journey, String departure, String arrival) {
+        List<Leg> legs = journey.getLegs();
+        assertEquals(legs.size() - 1, journey.getStops());
+        assertEquals(departure, legs.get(0).getDepartureAirport());
+        assertEquals(arrival, legs.get(legs.size() - 1).getArrivalAirport());
+        for (int i = 1; i < legs.size(); i++) {
+            assertEquals(legs.get(i - 1).getArrivalAirport(), legs.get(i).getDepartureAirport());
+            assertFalse(legs.get(i).getDepartureTime().isBefore(legs.get(i - 1).getArrivalTime().plus(MINIMUM_CONNECTION)));
+        }
+    }
+
+    /**
+     * Journeys are compared on what makes them optimal, as equally good journeys may take different legs
+     */
+    private static String criteria(Journey journey) {
+        List<Leg> legs = journey.getLegs();
+        return legs.get(0).getDepartureTime() + " " + legs.get(legs.size() - 1).getArrivalTime() + " " + journey.getStops();
+    }
+
+    private static List<Journey> bruteForcePareto(List<Leg> legs, String departure, String arrival, int maxStops) {
+        List<Journey> all = new ArrayList<>();
+        for (Leg leg : legs) {
+            if (leg.getDepartureAirport().equals(departure)) {
+                extend(new ArrayList<>(Arrays.asList(leg)), legs, arrival, maxStops, all);
+            }
+        }
+        List<Journey> pareto = new ArrayList<>();
+        Set<String> kept = new HashSet<>();
+        for (Journey journey : all) {
+            boolean dominated = false;
+            for (Journey other : all) {
+                if (dominates(other, journey) && !dominates(journey, other)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated && kept.add(criteria(journey))) {
+                pareto.add(journey);
+            }
+        }
+        return pareto;
+    }
+
+    private static void extend(List<Leg> journey, List<Leg> legs, String arrival, int maxStops, List<Journey> all) {
+        Leg last = journey.get(journey.size() - 1);
+        if (last.getArrivalAirport().equals(arrival)) {
+            all.add(new Journey(journey.size() - 1, new ArrayList<>(journey)));
+            return;
+        }
+        if (journey.size() > maxStops) {
+            return;
+        }
+        for (Leg leg : legs) {
+            if (leg.getDepartureAirport().equals(last.getArrivalAirport())
+                    && !leg.getDepartureTime().isBefore(last.getArrivalTime().plus(MINIMUM_CONNECTION))) {
+                journey.add(leg);
+                extend(journey, legs, arrival, maxStops, all);
+                journey.remove(journey.size() - 1);
+            }
+        }
+    }
+
+    private static boolean dominates(Journey a, Journey b) {
+        LocalDateTime aDeparture = a.getLegs().get(0).getDepartureTime();
+        LocalDateTime bDeparture = b.getLegs().get(0).getDepartureTime();
+        LocalDateTime aArrival = a.getLegs().get(a.getLegs().size() - 1).getArrivalTime();
+        LocalDateTime bArrival = b.getLegs().get(b.getLegs().size() - 1).getArrivalTime();
+        return !aDeparture.isBefore(bDeparture) && !aArrival.isAfter(bArrival) && a.getStops() <= b.getStops();
+    }
+
+    private static Leg leg(String departureAirport, String arrivalAirport, int departureMinutes, int arrivalMinutes) {
+        return new Leg(departureAirport, arrivalAirport, START.plusMinutes(departureMinutes), START.plusMinutes(arrivalMinutes));
+    }
+}
@@ -0,0 +1,100 @@
+package pw.peterwhite.flights.search;
+
+import org.junit.jupiter.api.Test;
+import pw.peterwhite.flights.dto.Route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pw.peterwhite.flights.helpers.TestHelper.*;
+
+/**
+ * Unit tests for the RouteIndex, built from the routes in routes-subset.json
+ */
+class RouteIndexTests {
+    private static final String ROUTE_OPERATOR = "RYANAIR";
+
+    @Test
+    void givenRoutesSubset_Of_indexesOnlySearchableRoutes() {
+        //Arrange
+        List<Route> routes = generateRoutesHttpResponse().getBody();
+
+        //Act
+        RouteIndex routeIndex = RouteIndex.of(routes, ROUTE_OPERATOR);
+
+        //Assert
+        assertEquals(9, routeIndex.size()); // AIR_MALTA and connectingAirport routes left out
+        assertNotNull(routeIndex.getRoute(TEST_DEPARTURE, TEST_ARRIVAL));
+        assertNull(routeIndex.getRoute(TEST_ARRIVAL, "BCN"));
+        assertNull(routeIndex.getRoute("MLA", "TUN"));
+        assertNull(routeIndex.getRoute("VNO", "CAG"));
+    }
+
+    @Test
+    void givenRoutesSubset_GetIntermediateAirports_returnsSortedHubs() {
+        //Arrange
+        RouteIndex routeIndex = RouteIndex.of(generateRoutesHttpResponse().getBody(), ROUTE_OPERATOR);
+
+        //Act
+        List<String> intermediateAirports = routeIndex.getIntermediateAirports(TEST_DEPARTURE, TEST_ARRIVAL);
+
+        //Assert
+        assertEquals(Arrays.asList("ACE", "BCN"), intermediateAirports);
+        assertTrue(routeIndex.getIntermediateAirports(TEST_ARRIVAL, TEST_DEPARTURE).isEmpty());
+    }
+
+    @Test
+    void givenDuplicateRoute_Of_marksPairAsDuplicated() {
+        //Arrange
+        List<Route> routes = new ArrayList<>(generateRoutesHttpResponse().getBody());
+        routes.add(new Route(TEST_DEPARTURE, "BCN", null, ROUTE_OPERATOR));
+
+        //Act
+        RouteIndex routeIndex = RouteIndex.of(routes, ROUTE_OPERATOR);
+
+        //Assert
+        assertTrue(routeIndex.isDuplicated(TEST_DEPARTURE, "BCN"));
+        assertFalse(routeIndex.isDuplicated(TEST_DEPARTURE, "ACE"));
+    }
+
+    @Test
+    void givenSameNetwork_ReuseOrBuild_onlyRebuildsForNewNetwork() {
+        //Arrange
+        List<Route> routes = generateRoutesHttpResponse().getBody();
+        RouteIndex routeIndex = RouteIndex.of(routes, ROUTE_OPERATOR);
+
+        //Act
+        RouteIndex sameSnapshot = RouteIndex.reuseOrBuild(routeIndex, routes, ROUTE_OPERATOR);
+        RouteIndex newSnapshot = RouteIndex.reuseOrBuild(routeIndex, new ArrayList<>(routes), ROUTE_OPERATOR);
+
+        //Assert
+        assertSame(routeIndex, sameSnapshot);
+        assertNotSame(routeIndex, newSnapshot);
+        assertEquals(routeIndex.size(), newSnapshot.size());
+    }
+
+    @Test
+    void givenChainOfRoutes_GetRoutesOnPaths_returnsRoutesWithinMaxLegs() {
+        //Arrange
+        // DUB-BCN-ACE-SXF takes 3 routes, DUB-SXF 1. SXF-DUB and BCN-DUB lead back, AMS is a dead end
+        List<Route> routes = Arrays.asList(route("DUB", "BCN"), route("BCN", "ACE"), route("ACE", "SXF"),
+                route("DUB", "SXF"), route("SXF", "DUB"), route("BCN", "DUB"), route("DUB", "AMS"));
+        RouteIndex routeIndex = RouteIndex.of(routes, ROUTE_OPERATOR);
+
+        //Act
+        List<Route> direct = routeIndex.getRoutesOnPaths(TEST_DEPARTURE, TEST_ARRIVAL, 1);
+        List<Route> twoLegs = routeIndex.getRoutesOnPaths(TEST_DEPARTURE, TEST_ARRIVAL, 2);
+        List<Route> threeLegs = routeIndex.getRoutesOnPaths(TEST_DEPARTURE, TEST_ARRIVAL, 3);
+
+        //Assert
+        assertEquals(Arrays.asList(routes.get(3)), direct);
+        assertEquals(Arrays.asList(routes.get(3)), twoLegs);
+        assertEquals(Arrays.asList(routes.get(2), routes.get(1), routes.get(0), routes.get(3)), threeLegs);
+    }
+
+    private static Route route(String airportFrom, String airportTo) {
+        return new Route(airportFrom, airportTo, null, ROUTE_OPERATOR);
+    }
+}
@@ -0,0 +1,131 @@
+package pw.peterwhite.flights.search;
+
+import org.junit.jupiter.api.Test;
+import pw.peterwhite.flights.dto.Journey.Leg;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the Timetable columnar store
+ */
+class TimetableTests {
+    private static final LocalDateTime START = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Test
+    void givenLegsOutOfOrder_Of_groupsByRouteSortedByDeparture() {
+        //Arrange
+        List<Leg> legs = Arrays.asList(leg("DUB", "SXF", 300, 420), leg("DUB", "BCN", 0, 60),
+                leg("DUB", "SXF", 60, 200), leg("BCN", "SXF", 180, 240));
+
+        //Act
+        Timetable timetable = Timetable.of(legs);
+
+        //Assert
+        assertEquals(3, timetable.getAirportCount());
+        assertEquals(3, timetable.getRouteCount());
+        assertEquals(4, timetable.getFlightCount());
+        assertEquals(Arrays.asList(legs.get(2), legs.get(0), legs.get(1), legs.get(3)), timetable.toLegs());
+        assertEquals(legs.get(3), timetable.toLeg(3));
+        assertEquals(-1, timetable.getAirportId("ACE"));
+    }
+
+    @Test
+    void givenRoute_FirstDepartingAtOrAfter_findsFirstFlightFromTime() {
+        //Arrange
+        Timetable timetable = Timetable.of(Arrays.asList(leg("DUB", "BCN", 0, 60),
+                leg("DUB", "SXF", 60, 200), leg("DUB", "SXF", 300, 420)));
+        int route = timetable.getRouteOf(1);
+        int departure = Timetable.toMinutes(START.plusMinutes(60));
+
+        //Act
+        int atDeparture = timetable.firstDepartingAtOrAfter(route, departure);
+        int afterDeparture = timetable.firstDepartingAtOrAfter(route, departure + 1);
+        int afterLast = timetable.firstDepartingAtOrAfter(route, departure + 241);
+
+        //Assert
+        assertEquals(1, atDeparture);
+        assertEquals(2, afterDeparture);
+        assertEquals(timetable.getRouteEnd(route), afterLast);
+    }
+
+    @Test
+    void givenTimeRange_Between_keepsFlightsWithinIt() {
+        //Arrange
+        Timetable timetable = Timetable.of(Arrays.asList(leg("DUB", "SXF", 0, 120),
+                leg("DUB", "SXF", 60, 200), leg("DUB", "SXF", 300, 420)));
+
+        //Act
+        Timetable between = timetable.between(Timetable.toMinutes(START.plusMinutes(60)), Timetable.toMinutes(START.plusMinutes(400)));
+
+        //Assert
+        assertEquals(Arrays.asList(leg("DUB", "SXF", 60, 200)), between.toLegs());
+    }
+
+    @Test
+    void givenDictionary_Build_usesItsAirportIds() {
+        //Arrange
+        AirportDictionary airports = AirportDictionary.of(Arrays.asList("ACE", "BCN", "DUB", "SXF"));
+
+        //Act
+        Timetable timetable = new Timetable.Builder(airports)
+                .add(leg("DUB", "SXF", 0, 120))
+                .add(leg("BCN", "DUB", 60, 180))
+                .build();
+
+        //Assert
+        assertSame(airports, timetable.getAirports());
+        assertEquals(4, timetable.getAirportCount());
+        assertEquals(airports.getId("DUB"), timetable.getRouteFrom(0));
+        assertEquals(airports.getId("SXF"), timetable.getRouteTo(0));
+        assertEquals(airports.getId("ACE"), timetable.getAirportId("ACE"));
+        assertEquals(Arrays.asList(leg("DUB", "SXF", 0, 120), leg("BCN", "DUB", 60, 180)), timetable.toLegs());
+    }
+
+    @Test
+    void givenAirportNotInDictionary_Add_throws() {
+        //Arrange
+        Timetable.Builder builder = new Timetable.Builder(AirportDictionary.of(Arrays.asList("DUB", "SXF")));
+
+        //Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> builder.add("DUB", "BCN", 0, 120));
+    }
+
+    @Test
+    void givenSameFlightsOnDifferentDictionaries_HasSameFlights_isTrue() {
+        //Arrange
+        List<Leg> legs = Arrays.asList(leg("DUB", "SXF", 0, 120), leg("DUB", "SXF", 300, 420));
+        Timetable ownAirports = Timetable.of(legs);
+        Timetable.Builder builder = new Timetable.Builder(AirportDictionary.of(Arrays.asList("ACE", "DUB", "SXF")));
+        legs.forEach(builder::add);
+        Timetable sharedAirports = builder.build();
+        Timetable otherRoute = Timetable.of(Arrays.asList(leg("SXF", "DUB", 0, 120), leg("SXF", "DUB", 300, 420)));
+
+        //Act & Assert
+        assertNotEquals(ownAirports.getRouteFrom(0), sharedAirports.getRouteFrom(0));
+        assertTrue(ownAirports.hasSameFlights(sharedAirports));
+        assertFalse(ownAirports.hasSameFlights(otherRoute));
+    }
+
+    @Test
+    void givenManyFlights_GetMemoryBytes_isEightBytesPerFlight() {
+        //Arrange
+        Timetable.Builder builder = new Timetable.Builder();
+        for (int i = 0; i < 1_000_000; i++) {
+            builder.add("DUB", "SXF", i, i + 120);
+        }
+
+        //Act
+        long memoryBytes = builder.build().getMemoryBytes();
+
+        //Assert
+        assertTrue(memoryBytes >= 8_000_000 && memoryBytes < 8_001_000, "memoryBytes=" + memoryBytes);
+    }
+
+    private static Leg leg(String departureAirport, String arrivalAirport, int departureMinutes, int arrivalMinutes) {
+        return new Leg(departureAirport, arrivalAirport, START.plusMinutes(departureMinutes), START.plusMinutes(arrivalMinutes));
+    }
+}
@@ -2,16 +2,17 @@ package pw.peterwhite.flights.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
@@ -21,7 +22,9 @@ import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 import pw.peterwhite.flights.config.ClientTestConfig;
+import pw.peterwhite.flights.config.FlightConfigProperties;
 import pw.peterwhite.flights.controllers.FlightV1Controller;
+import pw.peterwhite.flights.dto.InterconnectionsResult;
 import pw.peterwhite.flights.dto.Journey;
 import pw.peterwhite.flights.dto.Route;
 import pw.peterwhite.flights.dto.Schedule;
@@ -32,9 +35,13 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static pw.peterwhite.flights.helpers.TestHelper.*;
 
@@ -51,6 +58,9 @@ class FlightV1ControllerFullServiceTests {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private FlightConfigProperties flightConfigProperties;
+
     @BeforeEach
     private void setup() {
         reset(restTemplate);
@@ -59,6 +69,7 @@ class FlightV1ControllerFullServiceTests {
     @AfterEach
     private void teardown() {
         reset(restTemplate);
+        reset(flightConfigProperties);
     }
 
     @Test
@@ -85,6 +96,27 @@ class FlightV1ControllerFullServiceTests {
         verify(restTemplate, never()).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
     }
 
+    @Test
+    void givenMaxStopsAboveConfigured_Interconnections_returnsBadRequest() throws Exception {
+        //Arrange
+        // maxStops is not configured for this suite, so only 0 and 1 stops may be asked for
+
+        //Act
+        ResultActions resultActions = mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", TestHelper.TEST_DEPARTURE_DATE_TIME_STRING)
+                .param("arrivalDateTime", TestHelper.TEST_ARRIVAL_DATE_TIME_STRING)
+                .param("maxStops", "2"))
+                .andDo(MockMvcResultHandlers.print());
+
+        //Assert
+        resultActions.andExpect(status().isBadRequest());
+        // No calls to the upstream APIs
+        verify(restTemplate, never()).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), ArgumentMatchers.<ParameterizedTypeReference<List<Route>>>any());
+        verify(restTemplate, never()).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
     @Test
     void givenRoutesApiDown_Interconnections_returnsBadGateway() throws Exception {
         //Arrange
@@ -188,6 +220,35 @@ class FlightV1ControllerFullServiceTests {
         verify(restTemplate, times(6)).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
     }
 
+    @Test
+    void givenSchedulesSlowerThanRequestTimeout_Interconnections_returnsGatewayTimeout() throws Exception {
+        //Arrange
+        when(flightConfigProperties.getRequestTimeoutMs()).thenReturn(200L);
+
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenReturn(TestHelper.generateRoutesHttpResponse());
+
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(300);
+                    return TestHelper.generateBlankScheduleHttpResponse();
+                });
+
+        //Act
+        ResultActions resultActions = mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", TestHelper.TEST_DEPARTURE_DATE_TIME_STRING)
+                .param("arrivalDateTime", TestHelper.TEST_ARRIVAL_DATE_TIME_STRING))
+                .andDo(MockMvcResultHandlers.print());
+
+        //Assert
+        resultActions.andExpect(status().isGatewayTimeout());
+
+        // Expect only the 2 direct calls, made on the request thread. No hub fetches are started past the deadline
+        verify(restTemplate, times(2)).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
     @Test
     void givenRoutesAndSchedulesTwoDays_Interconnections_returnsSevenJourneys() throws Exception {
         /* Given DUB - SXF between 2030-01-31T12:00 and 2030-02-01T23:00.
@@ -278,8 +339,7 @@ class FlightV1ControllerFullServiceTests {
 
         // Parse JSON response
         String jsonResponse = result.getResponse().getContentAsString();
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule()); // For Jackson to parse LocalDateTime format
+        ObjectMapper objectMapper = TestHelper.generateObjectMapper();
         List<Journey> actualJourneys = objectMapper.readValue(jsonResponse, new TypeReference<List<Journey>>() {});
 
         assertEquals(7, actualJourneys.size()); // 7 Journeys
@@ -291,4 +351,126 @@ class FlightV1ControllerFullServiceTests {
         // Expect 10 calls to: 1xDirect, 2x FirstLeg, 2x SecondLeg and each for 2 months
         verify(restTemplate, times(10)).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
     }
+
+    @Test
+    void givenNdjsonAccept_Interconnections_streamsOneJourneyPerLine() throws Exception {
+        // Same data as givenRoutesAndSchedulesTwoDays_Interconnections_returnsSevenJourneys
+        //Arrange
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenReturn(TestHelper.generateRoutesHttpResponse());
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenAnswer(invocation -> generateScheduleHttpResponse(invocation.getArgument(0, URI.class)));
+
+        //Act
+        MvcResult result = mockMvc.perform(get("/api/v1/interconnections")
+                .accept("application/x-ndjson")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", LocalDateTime.of(2030,1,31,12,0).toString())
+                .param("arrivalDateTime", LocalDateTime.of(2030,2,1,23,0).toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Assert
+        String ndjsonResponse = mockMvc.perform(asyncDispatch(result))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        ObjectMapper objectMapper = TestHelper.generateObjectMapper();
+        String[] lines = ndjsonResponse.split("\n");
+        assertEquals(7, lines.length); // 7 Journeys, one per line
+        // Direct journeys come first, then the one-stop journeys
+        assertEquals(0, objectMapper.readValue(lines[0], Journey.class).getStops());
+        assertEquals(0, objectMapper.readValue(lines[1], Journey.class).getStops());
+        for (int i = 2; i < lines.length; i++) {
+            assertEquals(1, objectMapper.readValue(lines[i], Journey.class).getStops());
+        }
+    }
+
+    @Test
+    void givenBatchOfOverlappingSearches_BatchInterconnections_fetchesEachMonthOnce() throws Exception {
+        // Same data as givenRoutesAndSchedulesTwoDays_Interconnections_returnsSevenJourneys, searched twice, with an
+        // invalid search in between
+        //Arrange
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenReturn(TestHelper.generateRoutesHttpResponse());
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenAnswer(invocation -> generateScheduleHttpResponse(invocation.getArgument(0, URI.class)));
+        String search = String.format("{\"departure\": \"%s\", \"arrival\": \"%s\", \"departureDateTime\": \"%s\", \"arrivalDateTime\": \"%s\"}",
+                TestHelper.TEST_DEPARTURE, TestHelper.TEST_ARRIVAL, LocalDateTime.of(2030,1,31,12,0), LocalDateTime.of(2030,2,1,23,0));
+        String invalidSearch = String.format("{\"departure\": \"DUBLIN\", \"arrival\": \"%s\", \"departureDateTime\": \"%s\", \"arrivalDateTime\": \"%s\"}",
+                TestHelper.TEST_ARRIVAL, LocalDateTime.of(2030,1,31,12,0), LocalDateTime.of(2030,2,1,23,0));
+
+        //Act
+        ResultActions resultActions = mockMvc.perform(post("/api/v1/interconnections/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[" + search + ", " + invalidSearch + ", " + search + "]"))
+                .andDo(MockMvcResultHandlers.print());
+
+        //Assert
+        MvcResult result = resultActions.andExpect(status().isOk()).andReturn();
+
+        ObjectMapper objectMapper = TestHelper.generateObjectMapper();
+        List<InterconnectionsResult> results = objectMapper.readValue(result.getResponse().getContentAsString(),
+                new TypeReference<List<InterconnectionsResult>>() {});
+
+        assertEquals(3, results.size());
+        assertEquals(200, results.get(0).getStatus());
+        assertEquals(7, results.get(0).getJourneys().size());
+        assertEquals(400, results.get(1).getStatus());
+        assertNull(results.get(1).getJourneys());
+        assertEquals(200, results.get(2).getStatus());
+        assertEquals(7, results.get(2).getJourneys().size());
+
+        // Expect 1 call to Routes API
+        verify(restTemplate, times(1)).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){}));
+        // Expect the 10 calls of one search, shared by both: 1xDirect, 2x FirstLeg, 2x SecondLeg and each for 2 months
+        verify(restTemplate, times(10)).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    @Test
+    void givenBatchWithNullSearch_BatchInterconnections_rejectsItWithBadRequest() throws Exception {
+        //Arrange
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenReturn(TestHelper.generateRoutesHttpResponse());
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenAnswer(invocation -> generateScheduleHttpResponse(invocation.getArgument(0, URI.class)));
+        String search = String.format("{\"departure\": \"%s\", \"arrival\": \"%s\", \"departureDateTime\": \"%s\", \"arrivalDateTime\": \"%s\"}",
+                TestHelper.TEST_DEPARTURE, TestHelper.TEST_ARRIVAL, LocalDateTime.of(2030,1,31,12,0), LocalDateTime.of(2030,2,1,23,0));
+
+        //Act
+        ResultActions resultActions = mockMvc.perform(post("/api/v1/interconnections/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[null, " + search + "]"))
+                .andDo(MockMvcResultHandlers.print());
+
+        //Assert
+        MvcResult result = resultActions.andExpect(status().isOk()).andReturn();
+
+        ObjectMapper objectMapper = TestHelper.generateObjectMapper();
+        List<InterconnectionsResult> results = objectMapper.readValue(result.getResponse().getContentAsString(),
+                new TypeReference<List<InterconnectionsResult>>() {});
+
+        assertEquals(2, results.size());
+        assertEquals(400, results.get(0).getStatus());
+        assertNull(results.get(0).getJourneys());
+        assertEquals(200, results.get(1).getStatus());
+        assertEquals(7, results.get(1).getJourneys().size());
+    }
+
+    @Test
+    void givenOnlyNullSearches_BatchInterconnections_makesNoUpstreamCalls() throws Exception {
+        //Act
+        ResultActions resultActions = mockMvc.perform(post("/api/v1/interconnections/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[null]"))
+                .andDo(MockMvcResultHandlers.print());
+
+        //Assert
+        resultActions.andExpect(status().isOk())
+                .andExpect(content().json("[{\"status\": 400}]"));
+        verify(restTemplate, never()).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
 }
@@ -0,0 +1,125 @@
+package pw.peterwhite.flights.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.config.ClientTestConfig;
+import pw.peterwhite.flights.controllers.FlightV1Controller;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.dto.Schedule;
+import pw.peterwhite.flights.helpers.TestHelper;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static pw.peterwhite.flights.helpers.TestHelper.*;
+
+/**
+ * Testing stale serving and the circuit breakers of RyanairApiClient when the upstream APIs go down.
+ * Schedule months expire straight away, so every request goes upstream. One failure opens a breaker, and the breakers
+ * are not probed during a test. The context is rebuilt after each test to start with closed breakers and empty caches.
+ * Network requests are mocked out for RestTemplate(...)
+ */
+@WebMvcTest(controllers = FlightV1Controller.class)
+@Import(ClientTestConfig.class)
+@TestPropertySource(properties = {"flight.scheduleCacheMaxEntries=100", "flight.scheduleCacheTtlMs=1",
+        "flight.upstreamMaxStalenessMs=600000", "flight.upstreamCircuitFailureThreshold=1",
+        "flight.upstreamCircuitProbeIntervalMs=600000"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FlightV1ControllerStaleServiceTests {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private RyanairApiClient ryanairApiClient;
+
+    @Test
+    void givenApisDownAfterSuccessfulSearch_Interconnections_servesStaleJourneysWithWarning() throws Exception {
+        //Arrange
+        AtomicBoolean apisDown = new AtomicBoolean();
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenAnswer(invocation -> {
+                    if (apisDown.get()) {
+                        throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+                    }
+                    return TestHelper.generateRoutesHttpResponse();
+                });
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenAnswer(invocation -> {
+                    if (apisDown.get()) {
+                        throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+                    }
+                    return generateScheduleHttpResponse(invocation.getArgument(0, URI.class));
+                });
+
+        String freshResponse = interconnections()
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.WARNING))
+                .andReturn().getResponse().getContentAsString();
+        Thread.sleep(5); // Let the cached months expire
+
+        //Act
+        apisDown.set(true);
+        ResultActions resultActions = interconnections();
+
+        //Assert
+        resultActions.andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.WARNING, "110 - \"Response is Stale\""))
+                .andExpect(content().json(freshResponse, true));
+        assertTrue(ryanairApiClient.getRoutesCircuitBreaker().isOpen());
+        assertTrue(ryanairApiClient.getSchedulesCircuitBreaker().isOpen());
+        assertTrue(ryanairApiClient.getStaleServes() > 0);
+    }
+
+    @Test
+    void givenSchedulesApiDownWithNothingCached_Interconnections_returnsBadGatewayThenStopsCalling() throws Exception {
+        //Arrange
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenReturn(TestHelper.generateRoutesHttpResponse());
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        //Act
+        ResultActions firstResult = interconnections();
+        ResultActions secondResult = interconnections();
+
+        //Assert
+        firstResult.andExpect(status().isBadGateway());
+        secondResult.andExpect(status().isBadGateway());
+        // The first direct month opens the breaker, after which the Schedules API is not called at all
+        verify(restTemplate, times(1)).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    private ResultActions interconnections() throws Exception {
+        return mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", LocalDateTime.of(2030, 1, 31, 12, 0).toString())
+                .param("arrivalDateTime", LocalDateTime.of(2030, 2, 1, 23, 0).toString()))
+                .andDo(MockMvcResultHandlers.print());
+    }
+}
@@ -0,0 +1,248 @@
+package pw.peterwhite.flights.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+import pw.peterwhite.flights.config.FlightConfigProperties;
+import pw.peterwhite.flights.config.ReactiveClientTestConfig;
+import pw.peterwhite.flights.controllers.FlightV1ReactiveController;
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.dto.Schedule;
+import pw.peterwhite.flights.helpers.TestHelper;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Testing the ReactiveFlightService and ReactiveRyanairApiClient levels of code with flight.reactiveClientEnabled=true
+ * Schedule months are cached, and the context is rebuilt after each test to start with an empty cache.
+ * Network requests are mocked out for RestTemplate(...) of the RyanairApiClient the reactive client loads through
+ */
+@WebMvcTest(controllers = FlightV1ReactiveController.class)
+@Import(ReactiveClientTestConfig.class)
+@TestPropertySource(properties = {"flight.reactiveClientEnabled=true", "flight.scheduleCacheMaxEntries=100",
+        "flight.scheduleCacheTtlMs=600000"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FlightV1ReactiveControllerFullServiceTests {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private FlightConfigProperties flightConfigProperties;
+
+    @BeforeEach
+    private void setup() {
+        reset(restTemplate);
+        when(restTemplate.exchange(eq(TestHelper.TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenReturn(TestHelper.generateRoutesHttpResponse());
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenAnswer(invocation -> TestHelper.generateScheduleHttpResponse(invocation.getArgument(0, URI.class)));
+    }
+
+    @AfterEach
+    private void teardown() {
+        reset(restTemplate);
+        reset(flightConfigProperties);
+    }
+
+    @Test
+    void givenRoutesApiDown_Interconnections_returnsBadGateway() throws Exception {
+        //Arrange
+        when(restTemplate.exchange(eq(TestHelper.TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        //Act
+        MvcResult result = mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", TestHelper.TEST_DEPARTURE_DATE_TIME_STRING)
+                .param("arrivalDateTime", TestHelper.TEST_ARRIVAL_DATE_TIME_STRING))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(status().isBadGateway());
+
+        // Expect only the call to the Routes API
+        verify(restTemplate, times(1)).exchange(eq(TestHelper.TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){}));
+        verify(restTemplate, never()).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    @Test
+    void givenRoutesAndSchedulesTwoDays_Interconnections_returnsSevenJourneys() throws Exception {
+        // Same data as FlightV1ControllerFullServiceTests: 2 direct journeys, 5 via BCN and none via ACE
+        //Arrange
+        int year = 2030; int firstMonth = 1; int secondMonth = 2;
+
+        //Act
+        MvcResult result = mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", LocalDateTime.of(year,firstMonth,31,12,0).toString())
+                .param("arrivalDateTime", LocalDateTime.of(year,secondMonth,1,23,0).toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Assert
+        String jsonResponse = mockMvc.perform(asyncDispatch(result))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        ObjectMapper objectMapper = TestHelper.generateObjectMapper();
+        List<Journey> actualJourneys = objectMapper.readValue(jsonResponse, new TypeReference<List<Journey>>() {});
+
+        assertEquals(7, actualJourneys.size()); // 7 Journeys
+        // Direct journeys come first, then the one-stop journeys
+        assertEquals(0, actualJourneys.get(0).getStops());
+        assertEquals(0, actualJourneys.get(1).getStops());
+        assertEquals(5, actualJourneys.stream().filter(journey -> journey.getStops() == 1).count());
+
+        // Expect 1 call to Routes API and 10 to the Schedules API: 1xDirect, 2x FirstLeg, 2x SecondLeg for 2 months
+        verify(restTemplate, times(1)).exchange(eq(TestHelper.TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){}));
+        verify(restTemplate, times(10)).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    @Test
+    void givenSortByStopsAndLimit_Interconnections_returnsBestJourneysFirst() throws Exception {
+        //Arrange
+        int year = 2030; int firstMonth = 1; int secondMonth = 2;
+
+        //Act
+        MvcResult result = mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", LocalDateTime.of(year,firstMonth,31,12,0).toString())
+                .param("arrivalDateTime", LocalDateTime.of(year,secondMonth,1,23,0).toString())
+                .param("sort", "stops")
+                .param("limit", "3"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Assert
+        String jsonResponse = mockMvc.perform(asyncDispatch(result))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        ObjectMapper objectMapper = TestHelper.generateObjectMapper();
+        List<Journey> actualJourneys = objectMapper.readValue(jsonResponse, new TypeReference<List<Journey>>() {});
+
+        assertEquals(3, actualJourneys.size());
+        assertEquals(0, actualJourneys.get(0).getStops());
+        assertEquals(0, actualJourneys.get(1).getStops());
+        assertEquals(1, actualJourneys.get(2).getStops());
+        // Ties on stops are ranked by earliest arrival
+        assertTrue(actualJourneys.get(0).getLegs().get(0).getArrivalTime().isBefore(actualJourneys.get(1).getLegs().get(0).getArrivalTime()));
+    }
+
+    @Test
+    void givenInvalidSortOrLimit_Interconnections_returnsBadRequest() throws Exception {
+        //Act & Assert
+        mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", TestHelper.TEST_DEPARTURE_DATE_TIME_STRING)
+                .param("arrivalDateTime", TestHelper.TEST_ARRIVAL_DATE_TIME_STRING)
+                .param("sort", "price"))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", TestHelper.TEST_DEPARTURE_DATE_TIME_STRING)
+                .param("arrivalDateTime", TestHelper.TEST_ARRIVAL_DATE_TIME_STRING)
+                .param("limit", "0"))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(status().isBadRequest());
+
+        // Rejected before any upstream call
+        verify(restTemplate, never()).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){}));
+        verify(restTemplate, never()).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    @Test
+    void givenSameSearchTwice_Interconnections_servesSchedulesFromCache() throws Exception {
+        //Arrange
+        LocalDateTime departureDateTime = LocalDateTime.of(2030,1,31,12,0);
+        LocalDateTime arrivalDateTime = LocalDateTime.of(2030,2,1,23,0);
+
+        //Act
+        String firstResponse = interconnections(departureDateTime, arrivalDateTime);
+        String secondResponse = interconnections(departureDateTime, arrivalDateTime);
+
+        //Assert
+        assertEquals(firstResponse, secondResponse);
+        // Only the first search calls the Schedules API: 1xDirect, 2x FirstLeg, 2x SecondLeg for 2 months
+        verify(restTemplate, times(10)).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    @Test
+    void givenSearchSlowerThanRequestTimeout_Interconnections_returnsGatewayTimeout() throws Exception {
+        // Journeys come out less than the timeout apart, but the whole search takes longer than it
+        //Arrange
+        when(flightConfigProperties.getRequestTimeoutMs()).thenReturn(500L);
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(200);
+                    return TestHelper.generateScheduleHttpResponse(invocation.getArgument(0, URI.class));
+                });
+
+        //Act
+        MvcResult result = mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", LocalDateTime.of(2030,1,31,12,0).toString())
+                .param("arrivalDateTime", LocalDateTime.of(2030,2,1,23,0).toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(status().isGatewayTimeout());
+    }
+
+    private String interconnections(LocalDateTime departureDateTime, LocalDateTime arrivalDateTime) throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/v1/interconnections")
+                .param("departure", TestHelper.TEST_DEPARTURE)
+                .param("arrival", TestHelper.TEST_ARRIVAL)
+                .param("departureDateTime", departureDateTime.toString())
+                .param("arrivalDateTime", arrivalDateTime.toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+}
@@ -0,0 +1,121 @@
+package pw.peterwhite.flights.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.config.ClientTestConfig;
+import pw.peterwhite.flights.controllers.FlightV1Controller;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.dto.Schedule;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static pw.peterwhite.flights.helpers.TestHelper.*;
+
+/**
+ * Testing RyanairApiClient.getSchedules with months fetched concurrently (monthFetchConcurrency > 1).
+ * Network requests are mocked out for RestTemplate(...)
+ */
+@WebMvcTest(controllers = FlightV1Controller.class)
+@Import(ClientTestConfig.class)
+@TestPropertySource(properties = "flight.monthFetchConcurrency=2")
+class RyanairApiClientConcurrentMonthsServiceTests {
+    private static final Route DIRECT_ROUTE = new Route(TEST_DEPARTURE, TEST_ARRIVAL, null, "RYANAIR");
+    private static final LocalDateTime THIRD_MONTH_DATE_TIME = LocalDateTime.of(2030, 3, 14, 12, 0);
+
+    @Autowired
+    private RyanairApiClient ryanairApiClient;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    private void setup() {
+        reset(restTemplate);
+    }
+
+    @AfterEach
+    private void teardown() {
+        reset(restTemplate);
+    }
+
+    @Test
+    void givenThreeMonthsWithLastNotFound_GetSchedules_returnsLegsInMonthOrder() {
+        //Arrange
+        mockScheduleMonth(1);
+        mockScheduleMonth(2);
+        when(restTemplate.exchange(eq(scheduleUri(3)), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+        //Act
+        List<Leg> legs = ryanairApiClient.getSchedules(DIRECT_ROUTE, TEST_DEPARTURE_DATE_TIME, THIRD_MONTH_DATE_TIME);
+
+        //Assert
+        assertFalse(legs.isEmpty());
+        assertEquals(1, legs.get(0).getDepartureTime().getMonthValue());
+        assertEquals(2, legs.get(legs.size() - 1).getDepartureTime().getMonthValue());
+        for (int i = 1; i < legs.size(); i++) {
+            assertFalse(legs.get(i).getDepartureTime().isBefore(legs.get(i - 1).getDepartureTime()));
+        }
+        verify(restTemplate, times(3)).exchange(any(URI.class), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    @Test
+    void givenOneMonthServerError_GetSchedules_throwsBadGateway() {
+        //Arrange
+        mockScheduleMonth(1);
+        mockScheduleMonth(3);
+        when(restTemplate.exchange(eq(scheduleUri(2)), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        //Act
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> ryanairApiClient.getSchedules(DIRECT_ROUTE, TEST_DEPARTURE_DATE_TIME, THIRD_MONTH_DATE_TIME));
+
+        //Assert
+        assertEquals(HttpStatus.BAD_GATEWAY, ex.getStatus());
+    }
+
+    @Test
+    void givenOneMonthRateLimited_GetSchedules_throwsInternalServerError() {
+        //Arrange
+        mockScheduleMonth(1);
+        mockScheduleMonth(3);
+        when(restTemplate.exchange(eq(scheduleUri(2)), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenThrow(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS));
+
+        //Act
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> ryanairApiClient.getSchedules(DIRECT_ROUTE, TEST_DEPARTURE_DATE_TIME, THIRD_MONTH_DATE_TIME));
+
+        //Assert
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ex.getStatus());
+    }
+
+    private void mockScheduleMonth(int month) {
+        when(restTemplate.exchange(eq(scheduleUri(month)), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenReturn(month <= 2
+                        ? generateScheduleHttpResponse(TEST_DEPARTURE, TEST_ARRIVAL, 2030, month)
+                        : generateBlankScheduleHttpResponse());
+    }
+
+    private static URI scheduleUri(int month) {
+        return URI.create(String.format(TEST_SCHEDULES_API, TEST_DEPARTURE, TEST_ARRIVAL, 2030, month));
+    }
+}
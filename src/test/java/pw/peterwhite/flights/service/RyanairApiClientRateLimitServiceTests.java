@@ -0,0 +1,117 @@
+package pw.peterwhite.flights.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.config.ClientTestConfig;
+import pw.peterwhite.flights.controllers.FlightV1Controller;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.dto.Schedule;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static pw.peterwhite.flights.helpers.TestHelper.*;
+
+/**
+ * Testing RyanairApiClient with the rate limiter and retries of rate-limited (429) calls enabled.
+ * Network requests are mocked out for RestTemplate(...)
+ */
+@WebMvcTest(controllers = FlightV1Controller.class)
+@Import(ClientTestConfig.class)
+@TestPropertySource(properties = {"flight.upstreamRequestsPerSecond=1000", "flight.upstreamMaxRetries=2", "flight.upstreamRetryBackoffMs=1"})
+class RyanairApiClientRateLimitServiceTests {
+    private static final Route DIRECT_ROUTE = new Route(TEST_DEPARTURE, TEST_ARRIVAL, null, "RYANAIR");
+    private static final LocalDateTime END_OF_JANUARY = LocalDateTime.of(2030, 1, 31, 23, 59);
+    private static final URI JANUARY_SCHEDULE = URI.create(String.format(TEST_SCHEDULES_API, TEST_DEPARTURE, TEST_ARRIVAL, 2030, 1));
+
+    @Autowired
+    private RyanairApiClient ryanairApiClient;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    private void setup() {
+        reset(restTemplate);
+    }
+
+    @AfterEach
+    private void teardown() {
+        reset(restTemplate);
+    }
+
+    @Test
+    void givenRateLimitedOnceWithRetryAfter_GetSchedules_retriesAndReturnsLegs() {
+        //Arrange
+        long retriesBefore = ryanairApiClient.getRetries();
+        when(restTemplate.exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenThrow(tooManyRequests("0"))
+                .thenReturn(generateScheduleHttpResponse(TEST_DEPARTURE, TEST_ARRIVAL, 2030, 1));
+
+        //Act
+        List<Leg> legs = ryanairApiClient.getSchedules(DIRECT_ROUTE, TEST_DEPARTURE_DATE_TIME, END_OF_JANUARY);
+
+        //Assert
+        assertFalse(legs.isEmpty());
+        assertEquals(retriesBefore + 1, ryanairApiClient.getRetries());
+        verify(restTemplate, times(2)).exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    @Test
+    void givenAlwaysRateLimited_GetSchedules_throwsInternalServerErrorAfterRetries() {
+        //Arrange
+        long throttledBefore = ryanairApiClient.getThrottledResponses();
+        when(restTemplate.exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenThrow(tooManyRequests(null));
+
+        //Act
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> ryanairApiClient.getSchedules(DIRECT_ROUTE, TEST_DEPARTURE_DATE_TIME, END_OF_JANUARY));
+
+        //Assert
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ex.getStatus());
+        // First attempt and 2 retries
+        assertEquals(throttledBefore + 3, ryanairApiClient.getThrottledResponses());
+        verify(restTemplate, times(3)).exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    @Test
+    void givenNotFound_GetSchedules_doesNotRetry() {
+        //Arrange
+        when(restTemplate.exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+        //Act
+        List<Leg> legs = ryanairApiClient.getSchedules(DIRECT_ROUTE, TEST_DEPARTURE_DATE_TIME, END_OF_JANUARY);
+
+        //Assert
+        // Only 429 is retried
+        assertTrue(legs.isEmpty());
+        verify(restTemplate, times(1)).exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+    }
+
+    private static HttpClientErrorException tooManyRequests(String retryAfter) {
+        HttpHeaders headers = new HttpHeaders();
+        if (retryAfter != null) {
+            headers.set(HttpHeaders.RETRY_AFTER, retryAfter);
+        }
+        return new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", headers, null, StandardCharsets.UTF_8);
+    }
+}
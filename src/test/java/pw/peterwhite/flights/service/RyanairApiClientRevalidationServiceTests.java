@@ -0,0 +1,114 @@
+package pw.peterwhite.flights.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.client.RestTemplate;
+import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.config.ClientTestConfig;
+import pw.peterwhite.flights.controllers.FlightV1Controller;
+import pw.peterwhite.flights.dto.Journey.Leg;
+import pw.peterwhite.flights.dto.Route;
+import pw.peterwhite.flights.dto.Schedule;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static pw.peterwhite.flights.helpers.TestHelper.*;
+
+/**
+ * Testing RyanairApiClient revalidating cached routes and schedule months with conditional requests. The schedule
+ * cache expires months after 1ms so every lookup revalidates.
+ * Network requests are mocked out for RestTemplate(...)
+ */
+@WebMvcTest(controllers = FlightV1Controller.class)
+@Import(ClientTestConfig.class)
+@TestPropertySource(properties = {"flight.scheduleCacheMaxEntries=100", "flight.scheduleCacheTtlMs=1"})
+class RyanairApiClientRevalidationServiceTests {
+    private static final Route DIRECT_ROUTE = new Route(TEST_DEPARTURE, TEST_ARRIVAL, null, "RYANAIR");
+    private static final LocalDateTime END_OF_JANUARY = LocalDateTime.of(2030, 1, 31, 23, 59);
+    private static final URI JANUARY_SCHEDULE = URI.create(String.format(TEST_SCHEDULES_API, TEST_DEPARTURE, TEST_ARRIVAL, 2030, 1));
+    private static final String ETAG = "\"v1\"";
+
+    @Autowired
+    private RyanairApiClient ryanairApiClient;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    private void setup() {
+        reset(restTemplate);
+        ryanairApiClient.getScheduleCache().clear();
+    }
+
+    @AfterEach
+    private void teardown() {
+        reset(restTemplate);
+    }
+
+    @Test
+    void givenExpiredMonthWithETag_GetSchedules_revalidatesAndReusesCachedFlights() throws InterruptedException {
+        //Arrange
+        long notModifiedBefore = ryanairApiClient.getNotModifiedResponses();
+        when(restTemplate.exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), eq(null), eq(Schedule.class)))
+                .thenReturn(withETag(generateScheduleHttpResponse(TEST_DEPARTURE, TEST_ARRIVAL, 2030, 1)));
+        when(restTemplate.exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), argThat(RyanairApiClientRevalidationServiceTests::isConditional), eq(Schedule.class)))
+                .thenReturn(new ResponseEntity<>(HttpStatus.NOT_MODIFIED));
+        List<Leg> fetchedLegs = ryanairApiClient.getSchedules(DIRECT_ROUTE, TEST_DEPARTURE_DATE_TIME, END_OF_JANUARY);
+        Thread.sleep(5);
+
+        //Act
+        List<Leg> revalidatedLegs = ryanairApiClient.getSchedules(DIRECT_ROUTE, TEST_DEPARTURE_DATE_TIME, END_OF_JANUARY);
+
+        //Assert
+        assertFalse(fetchedLegs.isEmpty());
+        assertEquals(fetchedLegs, revalidatedLegs);
+        assertEquals(notModifiedBefore + 1, ryanairApiClient.getNotModifiedResponses());
+        verify(restTemplate, times(1)).exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), eq(null), eq(Schedule.class));
+        verify(restTemplate, times(1)).exchange(eq(JANUARY_SCHEDULE), eq(HttpMethod.GET), argThat(RyanairApiClientRevalidationServiceTests::isConditional), eq(Schedule.class));
+    }
+
+    @Test
+    void givenRoutesWithETag_GetRoutes_revalidatesAndKeepsSameList() {
+        //Arrange
+        long notModifiedBefore = ryanairApiClient.getNotModifiedResponses();
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenReturn(withETag(generateRoutesHttpResponse()));
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), argThat(RyanairApiClientRevalidationServiceTests::isConditional),
+                eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenReturn(new ResponseEntity<>(HttpStatus.NOT_MODIFIED));
+        List<Route> fetchedRoutes = ryanairApiClient.getRoutes();
+
+        //Act
+        List<Route> revalidatedRoutes = ryanairApiClient.getRoutes();
+
+        //Assert
+        assertFalse(fetchedRoutes.isEmpty());
+        assertSame(fetchedRoutes, revalidatedRoutes);
+        assertEquals(notModifiedBefore + 1, ryanairApiClient.getNotModifiedResponses());
+    }
+
+    private static <T> ResponseEntity<T> withETag(ResponseEntity<T> response) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(ETAG);
+        return new ResponseEntity<>(response.getBody(), headers, HttpStatus.OK);
+    }
+
+    private static boolean isConditional(HttpEntity<?> request) {
+        return request != null && request.getHeaders().getIfNoneMatch().contains(ETAG);
+    }
+}
@@ -0,0 +1,83 @@
+package pw.peterwhite.flights.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import pw.peterwhite.flights.cache.RouteSnapshot;
+import pw.peterwhite.flights.clients.RyanairApiClient;
+import pw.peterwhite.flights.config.ClientTestConfig;
+import pw.peterwhite.flights.controllers.FlightV1Controller;
+import pw.peterwhite.flights.dto.Route;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static pw.peterwhite.flights.helpers.TestHelper.*;
+
+/**
+ * Testing RyanairApiClient serving stale routes from the route snapshot cache when the Routes API fails.
+ * Snapshots are reloaded by readers after 10 minutes and may then be served stale for 10 more. The background refresh
+ * does not run during a test, and the context is rebuilt after each test to start with an empty snapshot cache.
+ * Network requests are mocked out for RestTemplate(...)
+ */
+@WebMvcTest(controllers = FlightV1Controller.class)
+@Import(ClientTestConfig.class)
+@TestPropertySource(properties = {"flight.routesRefreshPeriodMs=600000", "flight.routesMaxStalenessMs=600000",
+        "flight.upstreamMaxStalenessMs=600000"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class RyanairApiClientStaleRoutesServiceTests {
+    private static final long ELEVEN_MINUTES = 660_000L;
+    private static final long TWENTY_ONE_MINUTES = 1_260_000L;
+
+    @Autowired
+    private RyanairApiClient ryanairApiClient;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @AfterEach
+    private void teardown() {
+        reset(restTemplate);
+    }
+
+    @Test
+    void givenSnapshotPastRefreshAgeAndRoutesApiDown_GetRoutes_servesStaleSnapshot() {
+        //Arrange
+        List<Route> routes = generateRoutesHttpResponse().getBody();
+        ryanairApiClient.getRouteSnapshotCache().seed(new RouteSnapshot(routes, System.currentTimeMillis() - ELEVEN_MINUTES));
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+
+        //Act
+        List<Route> staleRoutes = ryanairApiClient.getRoutes(null);
+
+        //Assert
+        assertEquals(routes.size(), staleRoutes.size());
+        assertEquals(1, ryanairApiClient.getStaleServes());
+        verify(restTemplate, times(1)).exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){}));
+    }
+
+    @Test
+    void givenSnapshotPastStalenessAndRoutesApiDown_GetRoutes_throws() {
+        //Arrange
+        List<Route> routes = generateRoutesHttpResponse().getBody();
+        ryanairApiClient.getRouteSnapshotCache().seed(new RouteSnapshot(routes, System.currentTimeMillis() - TWENTY_ONE_MINUTES));
+        when(restTemplate.exchange(eq(TEST_ROUTES_API), eq(HttpMethod.GET), eq(null), eq(new ParameterizedTypeReference<List<Route>>(){})))
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+
+        //Act & Assert
+        assertThrows(ResponseStatusException.class, () -> ryanairApiClient.getRoutes(null));
+        assertEquals(0, ryanairApiClient.getStaleServes());
+    }
+}
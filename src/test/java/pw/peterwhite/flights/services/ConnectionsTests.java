@@ -0,0 +1,102 @@
+package pw.peterwhite.flights.services;
+
+import org.junit.jupiter.api.Test;
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the one-stop join, checked against the pairwise comparison it replaced
+ */
+class ConnectionsTests {
+    private static final LocalDateTime START = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Test
+    void givenSecondLegExactlyTwoHoursAfterArrival_JoinOneStop_returnsJourney() {
+        //Arrange
+        Leg firstLeg = leg("DUB", "BCN", 60, 180);
+        List<Leg> secondLegs = Arrays.asList(leg("BCN", "SXF", 299, 400), leg("BCN", "SXF", 300, 400));
+
+        //Act
+        List<Journey> journeys = Connections.joinOneStop(Collections.singletonList(firstLeg), secondLegs);
+
+        //Assert
+        assertEquals(1, journeys.size());
+        assertEquals(1, journeys.get(0).getStops());
+        assertSame(secondLegs.get(1), journeys.get(0).getLegs().get(1));
+    }
+
+    @Test
+    void givenLegsInDepartureOrder_JoinOneStop_matchesPairwiseJoin() {
+        //Arrange
+        Random random = new Random(42);
+        List<Leg> firstLegs = randomLegs(random, "DUB", "BCN", 200, true);
+        List<Leg> secondLegs = randomLegs(random, "BCN", "SXF", 200, true);
+
+        //Act
+        List<Journey> journeys = Connections.joinOneStop(firstLegs, secondLegs);
+
+        //Assert
+        assertSameJourneys(pairwiseJoin(firstLegs, secondLegs), journeys);
+    }
+
+    @Test
+    void givenLegsOutOfDepartureOrder_JoinOneStop_matchesPairwiseJoin() {
+        //Arrange
+        Random random = new Random(7);
+        List<Leg> firstLegs = randomLegs(random, "DUB", "BCN", 200, false);
+        List<Leg> secondLegs = randomLegs(random, "BCN", "SXF", 200, false);
+
+        //Act
+        List<Journey> journeys = Connections.joinOneStop(firstLegs, secondLegs);
+
+        //Assert
+        assertSameJourneys(pairwiseJoin(firstLegs, secondLegs), journeys);
+    }
+
+    private static List<Journey> pairwiseJoin(List<Leg> departureLegs, List<Leg> arrivalLegs) {
+        List<Journey> journeys = new ArrayList<>();
+        for (Leg firstLeg : departureLegs) {
+            for (Leg secondLeg : arrivalLegs) {
+                if (!secondLeg.getDepartureTime().isBefore(firstLeg.getArrivalTime().plusHours(2))) {
+                    journeys.add(new Journey(1, Arrays.asList(firstLeg, secondLeg)));
+                }
+            }
+        }
+        return journeys;
+    }
+
+    private static void assertSameJourneys(List<Journey> expected, List<Journey> actual) {
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).getLegs().get(0), actual.get(i).getLegs().get(0));
+            assertSame(expected.get(i).getLegs().get(1), actual.get(i).getLegs().get(1));
+        }
+    }
+
+    private static List<Leg> randomLegs(Random random, String airportFrom, String airportTo, int count, boolean sorted) {
+        List<Leg> legs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Within a month, in 5 minute steps so equal departure times come up
+            int departureMinute = random.nextInt(30 * 24 * 12) * 5;
+            legs.add(leg(airportFrom, airportTo, departureMinute, departureMinute + 60 + random.nextInt(180)));
+        }
+        if (sorted) {
+            legs.sort((a, b) -> a.getDepartureTime().compareTo(b.getDepartureTime()));
+        }
+        return legs;
+    }
+
+    private static Leg leg(String airportFrom, String airportTo, int departureMinute, int arrivalMinute) {
+        return new Leg(airportFrom, airportTo, START.plusMinutes(departureMinute), START.plusMinutes(arrivalMinute));
+    }
+}
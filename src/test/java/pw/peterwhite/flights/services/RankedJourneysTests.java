@@ -0,0 +1,128 @@
+package pw.peterwhite.flights.services;
+
+import org.junit.jupiter.api.Test;
+import pw.peterwhite.flights.dto.Journey;
+import pw.peterwhite.flights.dto.Journey.Leg;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the bounded ranking of journeys, checked against sorting every journey
+ */
+class RankedJourneysTests {
+    private static final LocalDateTime START = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Test
+    void givenMoreJourneysThanLimit_ToList_matchesSortedPrefix() {
+        //Arrange
+        Random random = new Random(42);
+        List<Journey> journeys = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int departure = random.nextInt(24 * 60);
+            int arrival = departure + 30 + random.nextInt(6 * 60);
+            journeys.add(random.nextBoolean()
+                    ? direct(departure, arrival)
+                    : oneStop(departure, departure + 60, arrival));
+        }
+
+        for (JourneySort sort : JourneySort.values()) {
+            RankedJourneys ranking = new RankedJourneys(sort, 10);
+            List<Journey> expected = new ArrayList<>(journeys);
+            expected.sort(sort.comparator());
+
+            //Act
+            ranking.offerAll(journeys);
+
+            //Assert
+            assertEquals(expected.subList(0, 10), ranking.toList(), sort.name());
+        }
+    }
+
+    @Test
+    void givenJourneysTiedOnTimesAndStops_ToList_ranksThemByLegsWhateverTheOfferOrder() {
+        //Arrange
+        Journey viaBcn = new Journey(1, Arrays.asList(leg("DUB", "BCN", 60, 180), leg("BCN", "SXF", 300, 420)));
+        Journey viaStn = new Journey(1, Arrays.asList(leg("DUB", "STN", 60, 120), leg("STN", "SXF", 300, 420)));
+        Journey viaStnLater = new Journey(1, Arrays.asList(leg("DUB", "STN", 60, 120), leg("STN", "SXF", 330, 420)));
+
+        for (JourneySort sort : JourneySort.values()) {
+            RankedJourneys forwards = new RankedJourneys(sort, 2);
+            RankedJourneys backwards = new RankedJourneys(sort, 2);
+
+            //Act
+            forwards.offerAll(Arrays.asList(viaBcn, viaStn, viaStnLater));
+            backwards.offerAll(Arrays.asList(viaStnLater, viaStn, viaBcn));
+
+            //Assert
+            assertEquals(Arrays.asList(viaBcn, viaStn), forwards.toList(), sort.name());
+            assertEquals(forwards.toList(), backwards.toList(), sort.name());
+        }
+    }
+
+    @Test
+    void givenFullRanking_CanRank_onlyAcceptsKeysNoWorseThanWorstKept() {
+        //Arrange
+        RankedJourneys ranking = new RankedJourneys(JourneySort.ARRIVAL, 2);
+        Journey early = direct(60, 120);
+        Journey late = direct(60, 300);
+
+        //Act
+        boolean canRankWhenEmpty = ranking.canRank(Integer.MAX_VALUE);
+        ranking.offerAll(Arrays.asList(late, early));
+
+        //Assert
+        assertTrue(canRankWhenEmpty);
+        assertTrue(ranking.canRank(JourneySort.ARRIVAL.getKey(late)));
+        assertFalse(ranking.canRank(JourneySort.ARRIVAL.getKey(late) + 1));
+    }
+
+    @Test
+    void givenLimitOfDirectFlights_CanRankOneStop_prunesHubsWhenSortingByStops() {
+        //Arrange
+        RankedJourneys ranking = new RankedJourneys(JourneySort.STOPS, 1);
+        ranking.offer(direct(60, 120));
+
+        //Act
+        boolean canRankOneStop = ranking.canRankOneStop(START, null);
+
+        //Assert
+        assertFalse(canRankOneStop);
+    }
+
+    @Test
+    void givenFirstLegsLandingLate_CanRankOneStop_prunesHubOnlyOnceLegsAreKnown() {
+        //Arrange
+        RankedJourneys ranking = new RankedJourneys(JourneySort.ARRIVAL, 1);
+        ranking.offer(direct(60, 180));
+        List<Leg> lateFirstLegs = Collections.singletonList(leg("DUB", "STN", 600, 660));
+
+        //Act
+        boolean canRankBeforeFetch = ranking.canRankOneStop(START, null);
+        boolean canRankAfterFetch = ranking.canRankOneStop(START, lateFirstLegs);
+
+        //Assert
+        assertTrue(canRankBeforeFetch);
+        assertFalse(canRankAfterFetch);
+    }
+
+    private static Journey direct(int departureMinute, int arrivalMinute) {
+        return new Journey(0, Collections.singletonList(leg("DUB", "SXF", departureMinute, arrivalMinute)));
+    }
+
+    private static Journey oneStop(int departureMinute, int connectionMinute, int arrivalMinute) {
+        return new Journey(1, Arrays.asList(
+                leg("DUB", "STN", departureMinute, connectionMinute),
+                leg("STN", "SXF", connectionMinute + 120, arrivalMinute + 120)));
+    }
+
+    private static Leg leg(String airportFrom, String airportTo, int departureMinute, int arrivalMinute) {
+        return new Leg(airportFrom, airportTo, START.plusMinutes(departureMinute), START.plusMinutes(arrivalMinute));
+    }
+}